@@ -0,0 +1,22 @@
+-- next scheduled delivery of a subscription, maintained by SubscriptionDao on create and on every delivery
+alter table subscription add column next_delivery_at timestamp(6) with time zone;
+
+-- last scheduled slot at or before now, due again unless delivered since or created after it
+with slots as (
+    select s.id,
+        (date_trunc('day', now() at time zone s.timezone) + cast(s.time as time)
+            - case when cast(now() at time zone s.timezone as time) > cast(s.time as time)
+                then interval '0' else interval '1 day' end
+        ) at time zone s.timezone as last_slot
+    from subscription s
+)
+update subscription s
+set next_delivery_at = slots.last_slot + case
+    when s.created > slots.last_slot
+        or exists (select 1 from delivery d where d.subscription_id = s.id and d.created > slots.last_slot)
+    then interval '1 day' else interval '0' end
+from slots
+where slots.id = s.id;
+
+create index subscription_next_delivery_at_idx on subscription (next_delivery_at)
+    where active = true and deleted = false and frequency = 'DAILY';
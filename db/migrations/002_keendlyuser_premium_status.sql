@@ -0,0 +1,5 @@
+-- last known stripe subscription status, see PremiumCache
+alter table keendlyuser add column premium_active boolean;
+alter table keendlyuser add column premium_cancellable boolean;
+alter table keendlyuser add column premium_expires timestamp(6) with time zone;
+alter table keendlyuser add column premium_checked_at timestamp(6) with time zone;
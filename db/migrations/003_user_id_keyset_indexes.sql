@@ -0,0 +1,3 @@
+-- keyset pagination of deliveries and subscriptions, newest first
+create index delivery_user_id_id_idx on delivery (user_id, id desc);
+create index subscription_user_id_id_idx on subscription (user_id, id desc) where active = true and deleted = false;
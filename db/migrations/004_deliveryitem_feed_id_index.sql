@@ -0,0 +1,2 @@
+-- last deliveries of feeds, see DeliveryDao.getLastDeliveries
+create index deliveryitem_feed_id_delivery_id_idx on deliveryitem (feed_id, delivery_id);
@@ -0,0 +1,9 @@
+-- provider feed lists and unread counts shared by all instances, see FeedCache
+create table feedcache (
+    user_id bigint not null references keendlyuser (id),
+    provider character varying(255) not null,
+    kind character varying(50) not null,
+    value text not null,
+    expires_at timestamp(6) with time zone not null,
+    primary key (user_id, provider, kind)
+);
@@ -0,0 +1,16 @@
+-- feeds of finished deliveries still to be marked as read with the provider, see MarkReadWorker
+create table markreadjob (
+    id bigint not null,
+    delivery_id bigint not null references delivery (id),
+    user_id bigint not null references keendlyuser (id),
+    mark_before timestamp(6) with time zone not null,
+    attempts integer not null default 0,
+    next_attempt_at timestamp(6) with time zone,
+    last_error text,
+    created timestamp(6) with time zone not null,
+    primary key (id),
+    unique (delivery_id)
+);
+
+-- due jobs, given up ones have no next attempt
+create index markreadjob_next_attempt_at_idx on markreadjob (next_attempt_at) where next_attempt_at is not null;
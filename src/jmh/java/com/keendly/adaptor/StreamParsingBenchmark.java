@@ -0,0 +1,92 @@
+package com.keendly.adaptor;
+
+import static com.keendly.utils.JsonUtils.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Strings;
+import com.keendly.adaptor.model.FeedEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a {@code /stream/contents} page into a tree first with mapping it while streaming.
+ * Run with {@code gradle jmh}, allocation rates are reported by the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreamParsingBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"100"})
+    private int items;
+
+    @Param({"20000"})
+    private int contentLength;
+
+    private byte[] page;
+
+    @Setup
+    public void setup() throws IOException {
+        ArrayNode itemsNode = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i < items; i++) {
+            ObjectNode item = itemsNode.addObject();
+            item.put("id", "tag:google.com,2005:reader/item/" + i);
+            item.put("title", "Article " + i);
+            item.put("author", "Author");
+            item.put("published", 1483228800L + i);
+            item.putArray("categories").add("user/-/state/com.google/reading-list").add("user/-/label/News");
+            item.putArray("alternate").addObject().put("href", "http://example.com/" + i).put("type", "text/html");
+            item.putObject("summary").put("direction", "ltr")
+                .put("content", "<p>" + Strings.repeat("Lorem ipsum dolor sit amet. ", contentLength / 28) + "</p>");
+            item.putObject("origin").put("streamId", "feed/http://example.com/rss").put("title", "Example");
+        }
+        ObjectNode root = JsonNodeFactory.instance.objectNode();
+        root.put("direction", "ltr");
+        root.put("id", "feed/http://example.com/rss");
+        root.set("items", itemsNode);
+        root.put("continuation", "continuation");
+        page = MAPPER.writeValueAsBytes(root);
+    }
+
+    @Benchmark
+    public List<FeedEntry> tree() throws IOException {
+        // what JsonUtils.asJson does: whole body as a string, then the whole tree
+        JsonNode json = MAPPER.readTree(new String(page, StandardCharsets.UTF_8));
+        List<FeedEntry> entries = new ArrayList<>();
+        for (JsonNode item : json.get("items")) {
+            entries.add(GoogleReaderTypeAdaptor.toFeedEntry(item));
+        }
+        return entries;
+    }
+
+    @Benchmark
+    public List<FeedEntry> streaming() {
+        return asStreamPage(new ByteArrayInputStream(page), "items", GoogleReaderTypeAdaptor.ITEM_FIELDS,
+            GoogleReaderTypeAdaptor::toFeedEntry).getItems();
+    }
+}
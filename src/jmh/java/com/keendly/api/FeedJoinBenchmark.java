@@ -0,0 +1,109 @@
+package com.keendly.api;
+
+import com.keendly.adaptor.model.ExternalFeed;
+import com.keendly.model.Delivery;
+import com.keendly.model.Feed;
+import com.keendly.model.Subscription;
+import com.keendly.model.SubscriptionItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares joining feeds with their subscriptions, last deliveries and unread counts by scanning all subscription
+ * items for every feed, as {@code getFeeds} used to, with the grouped join of {@link FeedResource#toFeeds}.
+ * Run with {@code gradle jmh -Pbenchmark=FeedJoin}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FeedJoinBenchmark {
+
+    @Param({"1000"})
+    private int feeds;
+
+    // 5 subscriptions with 25 feeds each is the most a user can have
+    @Param({"125"})
+    private int subscriptionItems;
+
+    private List<ExternalFeed> subscribedFeeds;
+    private List<SubscriptionItem> items;
+    private Map<String, Delivery> lastDeliveries;
+    private Map<String, Integer> unreadCounts;
+
+    @Setup
+    public void setup() {
+        subscribedFeeds = new ArrayList<>();
+        lastDeliveries = new HashMap<>();
+        unreadCounts = new HashMap<>();
+        for (int i = 0; i < feeds; i++) {
+            ExternalFeed feed = new ExternalFeed();
+            feed.setFeedId("feed/http://example.com/" + i);
+            feed.setTitle("Feed " + i);
+            feed.setCategories(Collections.singletonList("News"));
+            subscribedFeeds.add(feed);
+            lastDeliveries.put(feed.getFeedId(), Delivery.builder().id((long) i).build());
+            unreadCounts.put(feed.getFeedId(), i);
+        }
+        items = new ArrayList<>();
+        for (int i = 0; i < subscriptionItems; i++) {
+            items.add(SubscriptionItem.builder()
+                .feedId("feed/http://example.com/" + (i * 7 % feeds))
+                .subscription(Subscription.builder().id((long) i / 25).time("08:00").timezone("UTC").build())
+                .build());
+        }
+    }
+
+    @Benchmark
+    public List<Feed> linearScan() {
+        // what getFeeds did before
+        List<Feed> result = new ArrayList<>();
+        for (ExternalFeed subscribedFeed : subscribedFeeds) {
+            List<SubscriptionItem> feedSubscriptionItems = items.stream()
+                .filter(s -> s.getFeedId().equals(subscribedFeed.getFeedId()))
+                .collect(Collectors.toList());
+
+            List<Subscription> subscriptions = new ArrayList<>();
+            for (SubscriptionItem item : feedSubscriptionItems) {
+                subscriptions.add(Subscription.builder()
+                    .id(item.getSubscription().getId())
+                    .time(item.getSubscription().getTime())
+                    .timezone(item.getSubscription().getTimezone())
+                    .build());
+            }
+            result.add(Feed.builder()
+                .title(subscribedFeed.getTitle())
+                .feedId(subscribedFeed.getFeedId())
+                .subscriptions(subscriptions)
+                .lastDelivery(lastDeliveries.get(subscribedFeed.getFeedId()))
+                .categories(subscribedFeed.getCategories())
+                .unreadCount(unreadCounts.get(subscribedFeed.getFeedId()))
+                .build());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Feed> grouped() {
+        return FeedResource.toFeeds(subscribedFeeds, items, lastDeliveries, unreadCounts);
+    }
+}
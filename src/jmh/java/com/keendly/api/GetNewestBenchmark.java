@@ -0,0 +1,91 @@
+package com.keendly.api;
+
+import com.keendly.adaptor.model.FeedEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares selecting the newest articles of an over-limit delivery with a tree map and a list lookup per entry, as
+ * {@link FeedUtils#getNewest} used to, with the bounded heap. Run with {@code gradle jmh -Pbenchmark=GetNewest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GetNewestBenchmark {
+
+    // 25 feeds with 100 articles each is the most a delivery can have
+    @Param({"25"})
+    private int feeds;
+
+    @Param({"100"})
+    private int articlesPerFeed;
+
+    @Param({"200"})
+    private int number;
+
+    private Map<String, List<FeedEntry>> unread;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        unread = new HashMap<>();
+        for (int f = 0; f < feeds; f++) {
+            List<FeedEntry> entries = new ArrayList<>();
+            for (int i = 0; i < articlesPerFeed; i++) {
+                FeedEntry entry = new FeedEntry();
+                entry.setId(f + "-" + i);
+                // unique dates, the tree map would drop the others
+                entry.setPublished(new Date(random.nextInt(1_000_000) * 10_000L + f * articlesPerFeed + i));
+                entries.add(entry);
+            }
+            unread.put("feed/" + f, entries);
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<FeedEntry>> treeMap() {
+        // what getNewest did before
+        Map<Date, String> sorted = new TreeMap<>((Comparator<Date>) (o1, o2) -> o2.compareTo(o1));
+        unread.forEach((feedId, entries) -> entries.forEach(entry ->
+            sorted.put(entry.getPublished(), feedId + ":" + entry.getId())));
+
+        Map<String, List<FeedEntry>> ret = new HashMap<>();
+        List<String> sortedIds = sorted.values().stream().limit(number).collect(Collectors.toList());
+        for (Map.Entry<String, List<FeedEntry>> entry : unread.entrySet()) {
+            for (FeedEntry feedEntry : entry.getValue()) {
+                if (sortedIds.contains(entry.getKey() + ":" + feedEntry.getId())) {
+                    ret.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(feedEntry);
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public Map<String, List<FeedEntry>> boundedHeap() {
+        return FeedUtils.getNewest(unread, number);
+    }
+}
@@ -0,0 +1,86 @@
+package com.keendly.auth;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.DefaultClaims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares an invocation of {@link AuthorizerHandler} as it used to be, parsing the token with a new parser and
+ * building the policy every time, with a token authorized before and one seen for the first time. Run with
+ * {@code gradle jmh -Pbenchmark=Authorizer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AuthorizerBenchmark {
+
+    private static final String KEY = "dGVzdC1zaWduaW5nLWtleS10ZXN0LXNpZ25pbmcta2V5";
+
+    private Map<String, Object> event;
+    private AuthorizerHandler cached;
+    private AuthorizerHandler uncached;
+
+    @Setup
+    public void setup() {
+        DefaultClaims claims = new DefaultClaims();
+        claims.put("userId", "12345");
+        claims.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+        String token = Jwts.builder().setClaims(claims).signWith(SignatureAlgorithm.HS512, KEY).compact();
+
+        event = new HashMap<>();
+        event.put("authorizationToken", token);
+        event.put("methodArn", "arn:aws:execute-api:eu-west-1:123456789012:abcdef/dev/GET/feeds");
+
+        // no user, so no user context
+        cached = new AuthorizerHandler(KEY, 10_000, System::currentTimeMillis, id -> null);
+        uncached = new AuthorizerHandler(KEY, 0, System::currentTimeMillis, id -> null);
+    }
+
+    @Benchmark
+    public Map<String, Object> before() {
+        // what handleRequest did before, without the logging
+        String token = (String) event.get("authorizationToken");
+        Claims claims = Jwts.parser().setSigningKey(KEY).parseClaimsJws(token).getBody();
+
+        Map<String, Object> authResponse = new HashMap();
+        authResponse.put("principalId", claims.get("userId", String.class));
+        Map<String, Object> policyDocument = new HashMap();
+        policyDocument.put("Version", "2012-10-17");
+        Map<String, String> statementOne = new HashMap();
+        statementOne.put("Action", "execute-api:Invoke");
+        statementOne.put("Effect", "Allow");
+        statementOne.put("Resource", "arn:aws:execute-api:*:*:*");
+        policyDocument.put("Statement", new Object[] {statementOne});
+        authResponse.put("policyDocument", policyDocument);
+        return authResponse;
+    }
+
+    @Benchmark
+    public Map<String, Object> authorizedBefore() {
+        return cached.handleRequest(event, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> firstSeen() {
+        return uncached.handleRequest(event, null);
+    }
+}
@@ -0,0 +1,119 @@
+package com.keendly.dao;
+
+import static com.keendly.utils.DbUtils.*;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous {@code getLastDeliveries} query, over all deliveries of the user, with the one restricted
+ * to the requested feeds. Seeds a user with {@code deliveries} deliveries of 3 feeds each, out of {@code feeds}.
+ * <p>
+ * Needs a postgres database given by {@code DB_URL}, {@code DB_USER} and {@code DB_PASSWORD}, everything is
+ * created in the {@code keendly_benchmark} schema, dropped afterwards. Run with
+ * {@code gradle jmh -Pbenchmark=LastDeliveriesBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LastDeliveriesBenchmark {
+
+    private static final String SCHEMA = "keendly_benchmark";
+
+    private static final String PREVIOUS_SELECT = new StringBuilder()
+        .append("select ")
+        .append("di.feed_id, d.id, d.created, d.last_modified, d.date, d.errordescription ")
+        .append("from deliveryitem di join delivery d on d.id = di.delivery_id ")
+        .append("where d.user_id = :userId ")
+        .append("and (di.feed_id, d.date) IN ")
+        .append("(select di.feed_id, max(d.date) from delivery d join deliveryitem di on di.delivery_id = d.id where d.user_id = :userId group by di.feed_id)")
+        .toString();
+
+    @Param({"100000"})
+    private int deliveries;
+
+    @Param({"500"})
+    private int feeds;
+
+    @Param({"25"})
+    private int requestedFeeds;
+
+    private Handle handle;
+    private List<String> feedIds;
+
+    @Setup
+    public void setup() {
+        handle = new DBI(defaultEnvironment().getUrl(), defaultEnvironment().getUser(),
+            defaultEnvironment().getPassword()).open();
+        handle.execute("drop schema if exists " + SCHEMA + " cascade");
+        handle.execute("create schema " + SCHEMA);
+        handle.execute("set search_path to " + SCHEMA);
+
+        handle.execute("create table delivery (id bigint primary key, created timestamptz, last_modified timestamptz, "
+            + "date timestamptz, user_id bigint not null, errordescription varchar(255))");
+        handle.execute("create table deliveryitem (id bigint primary key, feed_id varchar(255) not null, "
+            + "delivery_id bigint not null references delivery (id))");
+        handle.execute("create index on delivery (user_id, id desc)");
+        handle.execute("create index on deliveryitem (delivery_id)");
+        handle.execute("create index on deliveryitem (feed_id, delivery_id)");
+
+        handle.createStatement("insert into delivery (id, created, last_modified, date, user_id) "
+            + "select i, now() - i * interval '1 hour', now(), now() - i * interval '1 hour', 1 "
+            + "from generate_series(1, :deliveries) i")
+            .bind("deliveries", deliveries)
+            .execute();
+        handle.createStatement("insert into deliveryitem (id, feed_id, delivery_id) "
+            + "select d * 3 + n, 'feed/' || ((d * 7 + n * 131) % :feeds), d "
+            + "from generate_series(1, :deliveries) d, generate_series(0, 2) n")
+            .bind("deliveries", deliveries)
+            .bind("feeds", feeds)
+            .execute();
+        handle.execute("analyze");
+
+        feedIds = new ArrayList<>();
+        for (int i = 0; i < requestedFeeds; i++) {
+            feedIds.add("feed/" + i * (feeds / requestedFeeds));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        handle.execute("drop schema " + SCHEMA + " cascade");
+        handle.close();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> allFeeds() {
+        return handle.createQuery(PREVIOUS_SELECT)
+            .bind("userId", 1L)
+            .list();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> requestedFeeds() {
+        return handle.createQuery(DeliveryDao.LAST_DELIVERIES_SELECT)
+            .bind("userId", 1L)
+            .bind("feedIds", textArray(feedIds))
+            .list();
+    }
+}
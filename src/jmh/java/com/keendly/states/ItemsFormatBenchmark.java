@@ -0,0 +1,110 @@
+package com.keendly.states;
+
+import com.keendly.model.DeliveryArticle;
+import com.keendly.model.DeliveryItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding the items of a full delivery in each {@link ItemsFormat}, printing the encoded
+ * size of each. Run with {@code gradle jmh -Pbenchmark=ItemsFormat}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ItemsFormatBenchmark {
+
+    @Param({"JSON", "JSON_GZIP"})
+    private ItemsFormat format;
+
+    // 25 feeds with 20 articles each, 500 is the most a delivery can have
+    @Param({"25"})
+    private int feeds;
+
+    @Param({"20"})
+    private int articlesPerFeed;
+
+    private List<DeliveryItem> items;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        items = new ArrayList<>();
+        for (int f = 0; f < feeds; f++) {
+            List<DeliveryArticle> articles = new ArrayList<>();
+            for (int i = 0; i < articlesPerFeed; i++) {
+                articles.add(DeliveryArticle.builder()
+                    .id("tag:google.com,2005:reader/item/" + Long.toHexString(random.nextLong()))
+                    .url("https://example.com/" + f + "/posts/" + i)
+                    .title("Article " + i + " of feed " + f)
+                    .author("Author " + random.nextInt(100))
+                    .timestamp(1500000000000L + random.nextInt(1_000_000) * 1000L)
+                    .content(content(random))
+                    .build());
+            }
+            items.add(DeliveryItem.builder()
+                .id((long) f)
+                .feedId("feed/https://example.com/" + f + "/feed")
+                .title("Feed " + f)
+                .includeImages(true)
+                .fullArticle(false)
+                .markAsRead(true)
+                .articles(articles)
+                .build());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.encode(items, out);
+        encoded = out.toByteArray();
+        System.out.println(format + " encoded size: " + encoded.length + " bytes");
+    }
+
+    private static String content(Random random) {
+        StringBuilder content = new StringBuilder();
+        int paragraphs = 3 + random.nextInt(10);
+        for (int p = 0; p < paragraphs; p++) {
+            content.append("<p>");
+            int words = 40 + random.nextInt(80);
+            for (int w = 0; w < words; w++) {
+                content.append(random.nextInt(20) == 0
+                    ? "<a href=\"https://example.com/link\">link</a>"
+                    : "word" + random.nextInt(500)).append(' ');
+            }
+            content.append("</p><img src=\"https://example.com/img/").append(random.nextInt()).append(".png\"/>");
+        }
+        return content.toString();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.encode(items, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public List<DeliveryItem> decode() throws IOException {
+        return format.decode(new ByteArrayInputStream(encoded));
+    }
+}
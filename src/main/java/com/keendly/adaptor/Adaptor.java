@@ -1,26 +1,67 @@
 package com.keendly.adaptor;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
 import com.keendly.adaptor.model.ExternalFeed;
 import com.keendly.adaptor.model.ExternalUser;
 import com.keendly.adaptor.model.FeedEntry;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
+import com.keendly.utils.JsonUtils.StreamPage;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public abstract class Adaptor {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Adaptor.class);
+
     protected static final int MAX_ARTICLES_PER_FEED = 100;
     protected static final long TIMEOUT_IN_SECONDS = 10;
+    protected static final long UNREAD_DEADLINE_IN_SECONDS = 40;
+    protected static final long BATCH_DEADLINE_IN_SECONDS = 30;
+    protected static final int DEFAULT_FETCH_CONCURRENCY = 5;
+    protected static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Newer first, articles without a publish date are the oldest.
+     */
+    private static final Comparator<StreamHead> NEWEST_HEAD_FIRST =
+        Comparator.comparing((StreamHead head) -> head.getEntry().getPublished(),
+            Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(StreamHead::getFeedId);
 
     public abstract Token login(Credentials credentials);
     public abstract ExternalUser getUser();
     public abstract List<ExternalFeed> getFeeds();
     public abstract Map<String, List<FeedEntry>> getUnread(List<String> feedIds);
-    public abstract Map<String, Integer> getUnreadCount(List<String> feedIds);
+    /**
+     * Unread articles of a single feed, newest first, at most {@code unreadCount} of them.
+     */
+    protected abstract PageIterator<FeedEntry> unreadStream(String feedId, int unreadCount);
+    /**
+     * Unread counts of all the subscribed feeds.
+     */
+    protected abstract Map<String, Integer> fetchUnreadCount();
     public abstract Boolean markFeedRead(List<String> feedIds, long timestamp);
     public abstract Boolean markArticleRead(List<String> articleIds);
     public abstract Boolean markArticleUnread(List<String> articleIds);
@@ -28,6 +69,14 @@ public abstract class Adaptor {
 
     protected Token token;
 
+    protected List<String> timedOutFeeds = new ArrayList<>();
+
+    protected List<String> failedFeeds = new ArrayList<>();
+
+    protected List<String> notMarkedFeeds = new ArrayList<>();
+
+    private Map<String, Integer> unreadCount;
+
     protected Adaptor(Token token) {
         this.token = token;
     }
@@ -36,6 +85,111 @@ public abstract class Adaptor {
 
     }
 
+    /**
+     * Unread counts of all the subscribed feeds. Fetched once per adaptor, which lives for a single request,
+     * so e.g. {@link #getUnread(List)} after {@code getUnreadCount} doesn't fetch them again.
+     */
+    public Map<String, Integer> getUnreadCount() {
+        if (unreadCount == null) {
+            unreadCount = fetchUnreadCount();
+        }
+        return new HashMap<>(unreadCount);
+    }
+
+    /**
+     * To be called when unread counts fetched before are no longer valid, e.g. after marking articles as read.
+     */
+    protected void forgetUnreadCount() {
+        unreadCount = null;
+    }
+
+    public Map<String, Integer> getUnreadCount(List<String> feedIds) {
+        Map<String, Integer> unreadCounts = getUnreadCount();
+        unreadCounts.keySet().retainAll(new HashSet<>(feedIds));
+        return unreadCounts;
+    }
+
+    /**
+     * Unread articles of the feeds, only the {@code budget} newest of all of them. Feed streams are newest first,
+     * so they are merged as they are read and no more pages are requested once the newest articles are in.
+     */
+    public Map<String, List<FeedEntry>> getUnread(List<String> feedIds, int budget){
+        Map<String, Integer> unreadCounts = getUnreadCount(feedIds);
+        Map<String, List<FeedEntry>> unread = removeFeedsWithoutUnread(unreadCounts);
+        int articles = unreadCounts.values().stream().mapToInt(Adaptor::articlesToFetch).sum();
+        if (articles <= budget){
+            // all of them are needed anyway
+            return getUnread(feedIds);
+        }
+        Map<String, List<FeedEntry>> batched = getUnreadBatched(unreadCounts, budget);
+        unread.putAll(batched != null ? batched : mergeNewest(unreadCounts, budget));
+        return unread;
+    }
+
+    private Map<String, List<FeedEntry>> mergeNewest(Map<String, Integer> unreadCounts, int budget){
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(UNREAD_DEADLINE_IN_SECONDS);
+        FetchExecutor executor = fetchExecutor();
+        FetchExecutor.Result<String, StreamHead> firstPages = executor.fetchAll(unreadCounts.keySet(),
+            feedId -> new StreamHead(feedId, unreadStream(feedId, unreadCounts.get(feedId)).withoutPrefetch()),
+            UNREAD_DEADLINE_IN_SECONDS, TimeUnit.SECONDS);
+        timedOutFeeds = new ArrayList<>(firstPages.getTimedOut());
+        failedFeeds = new ArrayList<>(firstPages.getFailed());
+
+        Map<String, List<FeedEntry>> unread = new HashMap<>();
+        PriorityQueue<StreamHead> heads = new PriorityQueue<>(NEWEST_HEAD_FIRST);
+        firstPages.getCompleted().forEach((feedId, head) -> {
+            unread.put(feedId, new ArrayList<>());
+            if (advance(head, executor, deadline)){
+                heads.add(head);
+            }
+        });
+
+        // every stream is newest first, so the newest head is the newest article not taken yet
+        for (int taken = 0; taken < budget && !heads.isEmpty(); taken++){
+            StreamHead head = heads.poll();
+            unread.get(head.getFeedId()).add(head.getEntry());
+            int left = budget - taken - 1;
+            if (left > 0 && advance(head, executor, deadline)){
+                head.prefetch(executor, left);
+                heads.add(head);
+            }
+        }
+        return unread;
+    }
+
+    /**
+     * @return {@code false} at the end of the stream or if its next page didn't come before the deadline or failed
+     */
+    private boolean advance(StreamHead head, FetchExecutor executor, long deadline){
+        try {
+            return head.advance(executor, deadline);
+        } catch (TimeoutException e){
+            timedOutFeeds.add(head.getFeedId());
+            return false;
+        } catch (RuntimeException e){
+            LOG.warn("Couldn't fetch next page of {}", head.getFeedId(), e);
+            failedFeeds.add(head.getFeedId());
+            return false;
+        }
+    }
+
+    /**
+     * Removes feeds without unread articles from {@code unreadCounts}, so that their streams aren't requested at all.
+     *
+     * @return the removed feeds, with no articles
+     */
+    protected static Map<String, List<FeedEntry>> removeFeedsWithoutUnread(Map<String, Integer> unreadCounts){
+        Map<String, List<FeedEntry>> withoutUnread = new HashMap<>();
+        unreadCounts.entrySet().removeIf(feedCount -> {
+            if (feedCount.getValue() > 0){
+                return false;
+            }
+            withoutUnread.put(feedCount.getKey(), new ArrayList<>());
+            return true;
+        });
+        return withoutUnread;
+    }
+
     protected static boolean isOk(int status){
         return status == 200;
     }
@@ -47,6 +201,17 @@ public abstract class Adaptor {
         return false;
     }
 
+    /**
+     * Releases the connection of a response which body is not needed, a failure to read the rest of it doesn't matter.
+     */
+    protected static void discard(Response response){
+        try {
+            response.close();
+        } catch (ProcessingException e){
+            LOG.debug("Error discarding response", e);
+        }
+    }
+
     protected static String asText(JsonNode node, String field){
         JsonNode j = node.get(field);
         if (j != null){
@@ -65,7 +230,255 @@ public abstract class Adaptor {
         return null;
     }
 
+    /**
+     * Maximum number of concurrent requests made to the provider while fetching unread articles.
+     */
+    protected int getFetchConcurrency(){
+        return DEFAULT_FETCH_CONCURRENCY;
+    }
+
+    /**
+     * Batched strategy: fetches unread articles of all the feeds with a few large paged requests over a stream
+     * covering all of them (e.g. all unread articles of the user) and splits them by feed locally.
+     * Returns {@code null} when the provider doesn't support it or it would take more requests than fetching
+     * every feed separately.
+     *
+     * @param budget maximum number of articles of all the feeds, the newest ones are kept
+     */
+    protected Map<String, List<FeedEntry>> getUnreadBatched(Map<String, Integer> unreadCounts, int budget){
+        return null;
+    }
+
+    /**
+     * Number of requests needed to fetch unread articles with one stream per feed.
+     */
+    protected static int perFeedRequests(Map<String, Integer> unreadCounts){
+        return unreadCounts.values().stream()
+            .mapToInt(count -> pages(articlesToFetch(count), DEFAULT_PAGE_SIZE))
+            .sum();
+    }
+
+    protected static int articlesToFetch(int unreadCount){
+        return unreadCount > MAX_ARTICLES_PER_FEED ? MAX_ARTICLES_PER_FEED : unreadCount; // TODO inform user
+    }
+
+    protected static int pages(int items, int pageSize){
+        return (items + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Reads pages of a stream covering many feeds until each of the feeds has all its unread articles
+     * or the stream ends.
+     *
+     * @param feedOf feed of the item, if it's one of {@code unreadCounts}
+     * @param budget maximum number of items of all the feeds, the stream is newest first so the newest are kept
+     */
+    protected <T> Map<String, List<T>> collectByFeed(Function<String, StreamPage<JsonNode>> fetch,
+                                                     Function<JsonNode, String> feedOf,
+                                                     Function<JsonNode, T> mapper,
+                                                     Map<String, Integer> unreadCounts,
+                                                     int budget){
+        Map<String, List<T>> byFeed = new HashMap<>();
+        unreadCounts.keySet().forEach(feedId -> byFeed.put(feedId, new ArrayList<>()));
+        int total = Math.min(budget, unreadCounts.values().stream().mapToInt(Adaptor::articlesToFetch).sum());
+
+        PageIterator<T> pages = new PageIterator<>(fetch, item -> {
+            String feedId = feedOf.apply(item);
+            if (feedId == null || !byFeed.containsKey(feedId)
+                || byFeed.get(feedId).size() >= articlesToFetch(unreadCounts.get(feedId))){
+                return null;
+            }
+            T mapped = mapper.apply(item);
+            if (mapped != null){
+                byFeed.get(feedId).add(mapped);
+            }
+            return mapped;
+        }, total, fetchExecutor());
+        while (pages.hasNext()){
+            pages.next();
+        }
+        return byFeed;
+    }
+
+    /**
+     * Marks feeds as read with up to {@code batchSize} feeds per call, see {@link #callInBatches}. Feeds which
+     * couldn't be marked are kept in {@link #getNotMarkedFeeds()}, the first failure is rethrown.
+     *
+     * @return whether all the feeds are marked
+     */
+    protected Boolean markFeedsReadInBatches(List<String> feedIds, int batchSize,
+                                             Function<List<String>, Boolean> markBatch){
+        forgetUnreadCount();
+        BatchResult result = callInBatches(feedIds, batchSize, markBatch);
+        notMarkedFeeds = result.getFailed();
+        if (!notMarkedFeeds.isEmpty()){
+            LOG.warn("{} of {} feeds not marked as read: {}", notMarkedFeeds.size(), feedIds.size(), notMarkedFeeds);
+        }
+        result.rethrowFailure();
+        return notMarkedFeeds.isEmpty();
+    }
+
+    /**
+     * Calls the provider with up to {@code batchSize} ids per call, running the calls concurrently until all of
+     * them finish or the deadline passes. A failing call doesn't stop the others.
+     */
+    protected BatchResult callInBatches(List<String> ids, int batchSize, Function<List<String>, Boolean> call){
+        List<List<String>> batches = Lists.partition(ids, batchSize);
+        List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+        FetchExecutor.Result<Integer, Boolean> result = fetchExecutor().fetchAll(
+            IntStream.range(0, batches.size()).boxed().collect(Collectors.toList()),
+            batch -> {
+                try {
+                    return Boolean.TRUE.equals(call.apply(batches.get(batch)));
+                } catch (RuntimeException e){
+                    failures.add(e);
+                    return false;
+                }
+            },
+            BATCH_DEADLINE_IN_SECONDS, TimeUnit.SECONDS);
+
+        List<String> failed = new ArrayList<>();
+        result.getTimedOut().forEach(batch -> failed.addAll(batches.get(batch)));
+        result.getCompleted().forEach((batch, done) -> {
+            if (!done){
+                failed.addAll(batches.get(batch));
+            }
+        });
+        return new BatchResult(failed, failures.isEmpty() ? null : failures.get(0));
+    }
+
+    protected FetchExecutor fetchExecutor(){
+        return FetchExecutor.forProvider(getClass().getSimpleName(), getFetchConcurrency());
+    }
+
+    @Value
+    protected static class BatchResult {
+
+        /**
+         * Ids of calls which failed, returned {@code false} or didn't finish before the deadline.
+         */
+        private List<String> failed;
+        /**
+         * First exception thrown by a call, if any.
+         */
+        private RuntimeException failure;
+
+        public void rethrowFailure(){
+            if (failure != null){
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Current article of a feed stream, read a page at a time. The next page is requested ahead of time
+     * when the current one runs low, at most one page at a time.
+     */
+    private static class StreamHead {
+
+        private final String feedId;
+        private final PageIterator<FeedEntry> stream;
+        private List<FeedEntry> page = Collections.emptyList();
+        private int position;
+        private CompletableFuture<List<FeedEntry>> nextPage;
+        private FeedEntry entry;
+
+        /**
+         * Reads the first page.
+         */
+        StreamHead(String feedId, PageIterator<FeedEntry> stream){
+            this.feedId = feedId;
+            this.stream = stream;
+            if (stream.hasNext()){
+                page = stream.next();
+            }
+        }
+
+        String getFeedId(){
+            return feedId;
+        }
+
+        FeedEntry getEntry(){
+            return entry;
+        }
+
+        /**
+         * Requests the next page if the current one runs low and more than what's left of it may be taken, unless
+         * the provider's limit is reached.
+         *
+         * @param left number of articles which may still be taken from all the streams
+         */
+        void prefetch(FetchExecutor executor, int left){
+            int inPage = page.size() - position;
+            if (nextPage == null && inPage <= Math.max(1, page.size() / 4) && left > inPage && stream.hasNext()){
+                nextPage = executor.tryStart(stream::next);
+            }
+        }
+
+        /**
+         * Moves to the next article, waiting for the next page if needed, but not past the deadline.
+         *
+         * @return {@code false} at the end of the stream
+         * @throws TimeoutException if the next page didn't come before the deadline
+         */
+        boolean advance(FetchExecutor executor, long deadline) throws TimeoutException{
+            while (position == page.size()){
+                if (nextPage == null){
+                    if (!stream.hasNext()){
+                        entry = null;
+                        return false;
+                    }
+                    nextPage = executor.start(stream::next, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (nextPage == null){
+                        throw new TimeoutException();
+                    }
+                }
+                page = await(nextPage, deadline);
+                nextPage = null;
+                position = 0;
+            }
+            entry = page.get(position++);
+            return true;
+        }
+
+        private static <V> V await(CompletableFuture<V> future, long deadline) throws TimeoutException{
+            try {
+                return future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e){
+                if (e.getCause() instanceof RuntimeException){
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while fetching unread articles", e);
+            }
+        }
+    }
+
     public Token getToken(){
         return token;
     }
+
+    /**
+     * Feeds which unread articles couldn't be fetched before the deadline during the last {@link #getUnread(List)}.
+     */
+    public List<String> getTimedOutFeeds(){
+        return timedOutFeeds;
+    }
+
+    /**
+     * Feeds which unread articles couldn't be fetched, or only partly, because the provider failed during the last
+     * {@link #getUnread(List)}.
+     */
+    public List<String> getFailedFeeds(){
+        return failedFeeds;
+    }
+
+    /**
+     * Feeds which couldn't be marked as read during the last {@link #markFeedRead(List, long)}.
+     */
+    public List<String> getNotMarkedFeeds(){
+        return notMarkedFeeds;
+    }
 }
@@ -1,16 +1,20 @@
 package com.keendly.adaptor;
 
+import static com.keendly.utils.ConfigUtils.*;
+
 import com.keendly.adaptor.feedly.FeedlyAdaptor;
 import com.keendly.adaptor.inoreader.InoreaderAdaptor;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
 import com.keendly.adaptor.newsblur.NewsblurAdaptor;
 import com.keendly.adaptor.oldreader.OldReaderAdaptor;
+import com.keendly.dao.FeedCacheDao;
 import com.keendly.model.Provider;
 import com.keendly.model.User;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class AdaptorFactory {
 
@@ -22,6 +26,11 @@ public class AdaptorFactory {
         ADAPTORS.put(Provider.FEEDLY, FeedlyAdaptor.class);
     }
 
+    private static final FeedCache FEED_CACHE = new FeedCache(
+        TimeUnit.SECONDS.toMillis(parameter("FEED_CACHE_FEEDS_TTL_SECONDS", 300)),
+        TimeUnit.SECONDS.toMillis(parameter("FEED_CACHE_UNREAD_COUNT_TTL_SECONDS", 60)),
+        Boolean.parseBoolean(parameter("FEED_CACHE_SHARED")) ? new FeedCacheDao() : null);
+
     public static Adaptor getInstance(Provider provider, Credentials credentials){
         for (Provider p : ADAPTORS.keySet()){
             if (p == provider){
@@ -40,7 +49,7 @@ public class AdaptorFactory {
             .accessToken(user.getAccessToken())
             .refreshToken(user.getRefreshToken())
             .build();
-        return AdaptorFactory.getInstance(user.getProvider(), token);
+        return new CachingAdaptor(AdaptorFactory.getInstance(user.getProvider(), token), user, FEED_CACHE);
     }
 
     private static Adaptor getInstance(Provider provider, Token token){
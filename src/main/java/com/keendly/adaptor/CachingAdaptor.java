@@ -0,0 +1,128 @@
+package com.keendly.adaptor;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.keendly.adaptor.FeedCache.Kind;
+import com.keendly.adaptor.model.ExternalFeed;
+import com.keendly.adaptor.model.ExternalUser;
+import com.keendly.adaptor.model.FeedEntry;
+import com.keendly.adaptor.model.auth.Credentials;
+import com.keendly.adaptor.model.auth.Token;
+import com.keendly.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves feed lists and unread counts of a user from {@link FeedCache}, marking articles or feeds as read or unread
+ * invalidates the unread counts. Everything else goes straight to the provider.
+ */
+public class CachingAdaptor extends Adaptor {
+
+    private static final TypeReference<List<ExternalFeed>> FEEDS = new TypeReference<List<ExternalFeed>>() {};
+    private static final TypeReference<Map<String, Integer>> UNREAD_COUNTS =
+        new TypeReference<Map<String, Integer>>() {};
+
+    private final Adaptor delegate;
+    private final User user;
+    private final FeedCache cache;
+
+    public CachingAdaptor(Adaptor delegate, User user, FeedCache cache) {
+        this.delegate = delegate;
+        this.user = user;
+        this.cache = cache;
+    }
+
+    @Override
+    public Token login(Credentials credentials) {
+        return delegate.login(credentials);
+    }
+
+    @Override
+    public ExternalUser getUser() {
+        return delegate.getUser();
+    }
+
+    @Override
+    public List<ExternalFeed> getFeeds() {
+        return new ArrayList<>(cache.get(user.getId(), user.getProvider(), Kind.FEEDS, FEEDS, delegate::getFeeds));
+    }
+
+    @Override
+    public Map<String, List<FeedEntry>> getUnread(List<String> feedIds) {
+        return delegate.getUnread(feedIds);
+    }
+
+    @Override
+    public Map<String, List<FeedEntry>> getUnread(List<String> feedIds, int budget) {
+        return delegate.getUnread(feedIds, budget);
+    }
+
+    @Override
+    protected PageIterator<FeedEntry> unreadStream(String feedId, int unreadCount) {
+        return delegate.unreadStream(feedId, unreadCount);
+    }
+
+    @Override
+    protected Map<String, Integer> fetchUnreadCount() {
+        return cache.get(user.getId(), user.getProvider(), Kind.UNREAD_COUNTS, UNREAD_COUNTS,
+            delegate::getUnreadCount);
+    }
+
+    @Override
+    public Boolean markFeedRead(List<String> feedIds, long timestamp) {
+        try {
+            return delegate.markFeedRead(feedIds, timestamp);
+        } finally {
+            invalidateUnreadCounts();
+        }
+    }
+
+    @Override
+    public Boolean markArticleRead(List<String> articleIds) {
+        try {
+            return delegate.markArticleRead(articleIds);
+        } finally {
+            invalidateUnreadCounts();
+        }
+    }
+
+    @Override
+    public Boolean markArticleUnread(List<String> articleIds) {
+        try {
+            return delegate.markArticleUnread(articleIds);
+        } finally {
+            invalidateUnreadCounts();
+        }
+    }
+
+    @Override
+    public Boolean saveArticle(List<String> articleIds) {
+        return delegate.saveArticle(articleIds);
+    }
+
+    @Override
+    public Token getToken() {
+        return delegate.getToken();
+    }
+
+    @Override
+    public List<String> getTimedOutFeeds() {
+        return delegate.getTimedOutFeeds();
+    }
+
+    @Override
+    public List<String> getFailedFeeds() {
+        return delegate.getFailedFeeds();
+    }
+
+    @Override
+    public List<String> getNotMarkedFeeds() {
+        return delegate.getNotMarkedFeeds();
+    }
+
+    private void invalidateUnreadCounts() {
+        cache.invalidate(user.getId(), user.getProvider(), Kind.UNREAD_COUNTS);
+        forgetUnreadCount();
+    }
+}
@@ -0,0 +1,160 @@
+package com.keendly.adaptor;
+
+import static com.keendly.utils.ConfigUtils.*;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.ProcessingException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide HTTP clients, one per provider. Clients keep their connections alive between requests,
+ * so warm lambdas don't pay for TCP/TLS handshakes on every call, and every provider has its own
+ * connection pool, so a slow provider can't starve the others.
+ */
+public class ClientFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClientFactory.class);
+
+    /**
+     * Request property marking a call safe to send again, e.g. marking articles read, see {@link #retrying}.
+     */
+    public static final String IDEMPOTENT = "keendly.idempotent";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_READ_TIMEOUT = (int) Adaptor.TIMEOUT_IN_SECONDS * 1000;
+    private static final int VALIDATE_AFTER_INACTIVITY = 100;
+    // providers close idle keep-alive connections after a while, don't reuse ours for that long
+    private static final int DEFAULT_IDLE_TIMEOUT = 15000;
+    private static final int DEFAULT_CONNECTION_TTL = 60000;
+
+    private static final Map<String, JerseyClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<String, PoolingHttpClientConnectionManager> CONNECTION_MANAGERS =
+        new ConcurrentHashMap<>();
+
+    public static JerseyClient forProvider(String provider) {
+        return forProvider(provider, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Timeouts (in milliseconds) and pool size can be overridden with {@code HTTP_CONNECT_TIMEOUT},
+     * {@code HTTP_READ_TIMEOUT}, {@code HTTP_MAX_CONNECTIONS}, or per provider, e.g. {@code FEEDLY_HTTP_READ_TIMEOUT}.
+     */
+    public static JerseyClient forProvider(String provider, int defaultReadTimeout) {
+        JerseyClient client = CLIENTS.computeIfAbsent(provider, p -> createClient(p, defaultReadTimeout));
+        // no background thread evicting them, lambda is frozen between requests anyway
+        PoolingHttpClientConnectionManager connectionManager = CONNECTION_MANAGERS.get(provider);
+        if (connectionManager != null) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(
+                providerParameter(provider, "HTTP_IDLE_TIMEOUT", DEFAULT_IDLE_TIMEOUT), TimeUnit.MILLISECONDS);
+        }
+        return client;
+    }
+
+    /**
+     * Closes all idle connections, so that tests don't reuse the ones to a stopped server.
+     */
+    public static void closeIdle() {
+        CONNECTION_MANAGERS.values().forEach(connectionManager -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private static JerseyClient createClient(String provider, int defaultReadTimeout) {
+        int maxConnections = providerParameter(provider, "HTTP_MAX_CONNECTIONS", DEFAULT_MAX_CONNECTIONS);
+        int connectTimeout = providerParameter(provider, "HTTP_CONNECT_TIMEOUT", DEFAULT_CONNECT_TIMEOUT);
+        int readTimeout = providerParameter(provider, "HTTP_READ_TIMEOUT", defaultReadTimeout);
+        int connectionTtl = providerParameter(provider, "HTTP_CONNECTION_TTL", DEFAULT_CONNECTION_TTL);
+
+        PoolingHttpClientConnectionManager connectionManager =
+            new PoolingHttpClientConnectionManager(connectionTtl, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectionRequestTimeout(readTimeout)
+            .build();
+
+        ClientConfig config = new ClientConfig()
+            .connectorProvider(retrying(new ApacheConnectorProvider()))
+            .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+            .property(ApacheClientProperties.REQUEST_CONFIG, requestConfig)
+            // clients are shared between users, never keep provider cookies
+            .property(ApacheClientProperties.DISABLE_COOKIES, true)
+            .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED)
+            .property(ClientProperties.CONNECT_TIMEOUT, connectTimeout)
+            .property(ClientProperties.READ_TIMEOUT, readTimeout);
+
+        CONNECTION_MANAGERS.put(provider, connectionManager);
+        return JerseyClientBuilder.createClient(config);
+    }
+
+    /**
+     * Sends a request marked {@link #IDEMPOTENT} once more if the connection it went out on was closed by the
+     * provider before answering, which happens when a pooled connection is reused just as the provider drops it.
+     * Apache client already does that for requests without a body, but never for POSTs.
+     */
+    static ConnectorProvider retrying(ConnectorProvider connectorProvider) {
+        return (client, runtimeConfig) -> {
+            Connector connector = connectorProvider.getConnector(client, runtimeConfig);
+            return new Connector() {
+                @Override
+                public ClientResponse apply(ClientRequest request) {
+                    try {
+                        return connector.apply(request);
+                    } catch (ProcessingException e) {
+                        if (!(e.getCause() instanceof NoHttpResponseException)
+                            || !Boolean.TRUE.equals(request.getProperty(IDEMPOTENT))) {
+                            throw e;
+                        }
+                        LOG.warn("No response from {}, retrying", request.getUri().getHost());
+                        // the entity of the original is already written
+                        return connector.apply(new ClientRequest(request));
+                    }
+                }
+
+                @Override
+                public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+                    return connector.apply(request, callback);
+                }
+
+                @Override
+                public String getName() {
+                    return connector.getName();
+                }
+
+                @Override
+                public void close() {
+                    connector.close();
+                }
+            };
+        };
+    }
+
+    private static int providerParameter(String provider, String key, int defaultValue) {
+        return parameter(provider.toUpperCase() + "_" + key, parameter(key, defaultValue));
+    }
+}
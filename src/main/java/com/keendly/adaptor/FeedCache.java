@@ -0,0 +1,132 @@
+package com.keendly.adaptor;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.keendly.dao.FeedCacheDao;
+import com.keendly.model.Provider;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Provider data of a user, kept for a short time so that reloading the feeds page doesn't hit the provider every
+ * time. Entries are held in memory for as long as the instance stays warm and, when a {@link FeedCacheDao} is given,
+ * in the {@code feedcache} table shared by all instances. Invalidation reaches the memory of this instance and the
+ * table only, the TTL bounds how stale other instances can be.
+ */
+public class FeedCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FeedCache.class);
+
+    private static final int MAX_SIZE = 10_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public enum Kind {
+        FEEDS, UNREAD_COUNTS
+    }
+
+    private final Map<Kind, Long> ttlMillis = new EnumMap<>(Kind.class);
+    private final FeedCacheDao dao;
+
+    private final Cache<Key, Entry> cache;
+
+    /**
+     * @param dao shared tier, {@code null} to keep entries in memory only
+     */
+    public FeedCache(long feedsTtlMillis, long unreadCountsTtlMillis, FeedCacheDao dao) {
+        this.ttlMillis.put(Kind.FEEDS, feedsTtlMillis);
+        this.ttlMillis.put(Kind.UNREAD_COUNTS, unreadCountsTtlMillis);
+        this.dao = dao;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterWrite(Math.max(feedsTtlMillis, unreadCountsTtlMillis), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * Returns the cached value, or loads and caches it. The value is shared, callers must not modify it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long userId, Provider provider, Kind kind, TypeReference<T> type, Supplier<T> load) {
+        Key key = new Key(userId, provider, kind);
+        long now = System.currentTimeMillis();
+
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null && cached.getExpiresAt() > now) {
+            return (T) cached.getValue();
+        }
+
+        if (dao != null) {
+            Optional<T> stored = findStored(key, type);
+            if (stored.isPresent()) {
+                return stored.get();
+            }
+        }
+
+        T value = load.get();
+        long expiresAt = now + ttlMillis.get(kind);
+        cache.put(key, new Entry(value, expiresAt));
+        if (dao != null) {
+            store(key, value, expiresAt);
+        }
+        return value;
+    }
+
+    public void invalidate(Long userId, Provider provider, Kind kind) {
+        Key key = new Key(userId, provider, kind);
+        cache.invalidate(key);
+        if (dao != null) {
+            try {
+                dao.delete(userId, provider, kind.name());
+            } catch (Exception e) {
+                LOG.warn("Couldn't invalidate stored {} of user {}", kind, userId, e);
+            }
+        }
+    }
+
+    private <T> Optional<T> findStored(Key key, TypeReference<T> type) {
+        try {
+            Optional<FeedCacheDao.Entry> stored = dao.find(key.getUserId(), key.getProvider(), key.getKind().name());
+            if (!stored.isPresent()) {
+                return Optional.empty();
+            }
+            T value = MAPPER.readValue(stored.get().getValue(), type);
+            cache.put(key, new Entry(value, stored.get().getExpiresAt().getTime()));
+            return Optional.of(value);
+        } catch (Exception e) {
+            LOG.warn("Couldn't read stored {} of user {}", key.getKind(), key.getUserId(), e);
+            return Optional.empty();
+        }
+    }
+
+    private void store(Key key, Object value, long expiresAt) {
+        try {
+            dao.put(key.getUserId(), key.getProvider(), key.getKind().name(), MAPPER.writeValueAsString(value),
+                new Date(expiresAt));
+        } catch (Exception e) {
+            LOG.warn("Couldn't store {} of user {}", key.getKind(), key.getUserId(), e);
+        }
+    }
+
+    @Value
+    private static class Key {
+        private Long userId;
+        private Provider provider;
+        private Kind kind;
+    }
+
+    @Value
+    private static class Entry {
+        private Object value;
+        private long expiresAt;
+    }
+}
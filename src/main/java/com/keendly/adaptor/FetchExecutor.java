@@ -0,0 +1,181 @@
+package com.keendly.adaptor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent provider calls concurrently. Every provider gets its own pool, so the number of
+ * calls in flight against a single provider never exceeds its limit, no matter how many requests
+ * share the process. Calls started ahead of time, see {@link #tryStart(Supplier)}, count towards the
+ * limit too.
+ */
+public class FetchExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FetchExecutor.class);
+
+    private static final long IDLE_THREAD_TIMEOUT_IN_SECONDS = 60;
+
+    private static final Map<String, FetchExecutor> EXECUTORS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ThreadPoolExecutor pool;
+    private final ThreadPoolExecutor prefetchPool;
+    // one per call in flight, including the ones started ahead of time
+    private final Semaphore permits;
+
+    FetchExecutor(String name, int concurrency) {
+        this.name = name;
+        this.pool = pool(name + "-fetch-%d", concurrency);
+        this.prefetchPool = pool(name + "-prefetch-%d", concurrency);
+        this.permits = new Semaphore(concurrency);
+    }
+
+    private static ThreadPoolExecutor pool(String nameFormat, int size) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size,
+            IDLE_THREAD_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+        // don't keep idle threads around between (possibly frozen) lambda invocations
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public static FetchExecutor forProvider(String provider, int concurrency) {
+        return EXECUTORS.computeIfAbsent(provider, p -> new FetchExecutor(p, concurrency));
+    }
+
+    /**
+     * Applies {@code task} to every key and waits until all of them finish or the deadline passes.
+     * Calls still running at the deadline are cancelled and their keys reported as timed out, keys of
+     * failed calls are reported as failed. Only if no call succeeded, the first failure is rethrown.
+     */
+    public <K, V> Result<K, V> fetchAll(Collection<K> keys, Function<K, V> task, long timeout, TimeUnit unit) {
+        if (keys.isEmpty()) {
+            return new Result<>(Collections.emptyMap(), Collections.emptyList(), Collections.emptyList());
+        }
+        List<K> orderedKeys = new ArrayList<>(keys);
+        List<Callable<V>> tasks = new ArrayList<>();
+        for (K key : orderedKeys) {
+            tasks.add(() -> {
+                permits.acquire();
+                try {
+                    return task.apply(key);
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        List<Future<V>> futures;
+        try {
+            futures = pool.invokeAll(tasks, timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching from " + name, e);
+        }
+
+        Map<K, V> completed = new LinkedHashMap<>();
+        List<K> timedOut = new ArrayList<>();
+        List<K> failed = new ArrayList<>();
+        RuntimeException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            K key = orderedKeys.get(i);
+            try {
+                completed.put(key, futures.get(i).get());
+            } catch (CancellationException e) {
+                timedOut.add(key);
+            } catch (ExecutionException e) {
+                LOG.warn("{} call for {} failed", name, key, e.getCause());
+                failed.add(key);
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while fetching from " + name, e);
+            }
+        }
+        if (!timedOut.isEmpty()) {
+            LOG.warn("{} of {} {} calls didn't finish in {} {}", timedOut.size(), keys.size(), name, timeout, unit);
+        }
+        if (failure != null && completed.isEmpty()) {
+            throw failure;
+        }
+        return new Result<>(completed, timedOut, failed);
+    }
+
+    /**
+     * Starts {@code call} in the background, unless the limit is reached. It never waits for a call to finish, so
+     * it's safe to use from within {@link #fetchAll} calls.
+     *
+     * @return {@code null} if the limit is reached
+     */
+    public <V> CompletableFuture<V> tryStart(Supplier<V> call) {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        return startWithPermit(call);
+    }
+
+    /**
+     * Starts {@code call} in the background, waiting up to the timeout for the limit to allow it. Not to be used
+     * from within {@link #fetchAll} calls, they could wait for each other.
+     *
+     * @return {@code null} if the limit is still reached at the timeout
+     */
+    public <V> CompletableFuture<V> start(Supplier<V> call, long timeout, TimeUnit unit) {
+        try {
+            if (!permits.tryAcquire(timeout, unit)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching from " + name, e);
+        }
+        return startWithPermit(call);
+    }
+
+    private <V> CompletableFuture<V> startWithPermit(Supplier<V> call) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return call.get();
+                } finally {
+                    permits.release();
+                }
+            }, prefetchPool);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Value
+    public static class Result<K, V> {
+
+        private Map<K, V> completed;
+        private List<K> timedOut;
+        private List<K> failed;
+    }
+}
@@ -3,18 +3,22 @@ package com.keendly.adaptor;
 import static com.keendly.utils.JsonUtils.*;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableSet;
 import com.keendly.adaptor.model.FeedEntry;
 import com.keendly.adaptor.model.auth.Token;
 
 import javax.ws.rs.core.Response;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public abstract class GoogleReaderTypeAdaptor extends Adaptor {
 
+    protected static final Set<String> ITEM_FIELDS =
+        ImmutableSet.of("id", "title", "author", "published", "alternate", "canonical", "content", "summary");
+
     protected GoogleReaderTypeAdaptor(Token token) {
         super(token);
     }
@@ -30,44 +34,35 @@ public abstract class GoogleReaderTypeAdaptor extends Adaptor {
     @Override
     public Map<String, List<FeedEntry>> getUnread(List<String> feedIds) {
         Map<String, Integer> unreadCounts = getUnreadCount(feedIds);
-        Map<String, List<FeedEntry>> unreads = new HashMap<String, List<FeedEntry>>();
-        for (Map.Entry<String, Integer> entry : unreadCounts.entrySet()){
-            List<FeedEntry> unread = doGetUnread(entry.getKey(), entry.getValue(), null);
-            unreads.put(entry.getKey(), unread);
+        Map<String, List<FeedEntry>> unread = removeFeedsWithoutUnread(unreadCounts);
+        if (unreadCounts.isEmpty()) {
+            return unread;
+        }
+        Map<String, List<FeedEntry>> batched = getUnreadBatched(unreadCounts, Integer.MAX_VALUE);
+        if (batched != null) {
+            unread.putAll(batched);
+            return unread;
         }
-        return unreads;
+        FetchExecutor.Result<String, List<FeedEntry>> result = fetchExecutor().fetchAll(unreadCounts.keySet(),
+            feedId -> doGetUnread(feedId, unreadCounts.get(feedId)), UNREAD_DEADLINE_IN_SECONDS, TimeUnit.SECONDS);
+        timedOutFeeds = result.getTimedOut();
+        failedFeeds = result.getFailed();
+        unread.putAll(result.getCompleted());
+        return unread;
     }
 
-    private List<FeedEntry> doGetUnread(String feedId, int unreadCount, String continuation){
-        //int count = unreadCount > MAX_ARTICLES_PER_FEED ? MAX_ARTICLES_PER_FEED : unreadCount; // TODO inform user
-        int count = unreadCount;
-        String url ="/stream/contents/" +normalizeFeedId(feedId) + "?xt=user/-/state/com.google/read";
-        url = continuation == null ? url : url + "&c=" + continuation;
-        Response response = get(url);
-        JsonNode jsonResponse = asJson(response);
-        JsonNode items = jsonResponse.get("items");
-        if (items == null){
-            return Collections.emptyList();
-        }
-        List<FeedEntry> entries = new ArrayList();
-        for (JsonNode item : items){
-            FeedEntry entry = toFeedEntry(item);
-            entries.add(entry);
-        }
-        List<FeedEntry> ret = new ArrayList();
-        ret.addAll(entries);
-        if (ret.size() < count){
-            JsonNode continuationNode = jsonResponse.get("continuation");
-            boolean hasContinuation = continuationNode != null;
-            if (hasContinuation){
-                List<FeedEntry> nextPage =
-                        doGetUnread(feedId, count - ret.size(), continuationNode.asText());
-                ret.addAll(nextPage);
-                return ret;
-            }
-        }
+    private List<FeedEntry> doGetUnread(String feedId, int unreadCount){
+        return unreadStream(feedId, unreadCount).toList();
+    }
 
-        return ret;
+    @Override
+    protected PageIterator<FeedEntry> unreadStream(String feedId, int unreadCount){
+        int count = articlesToFetch(unreadCount);
+        String url ="/stream/contents/" + normalizeFeedId(feedId) + "?xt=user/-/state/com.google/read";
+        return new PageIterator<>(
+            continuation -> asStreamPage(get(continuation == null ? url : url + "&c=" + continuation),
+                "items", ITEM_FIELDS, Function.identity()),
+            GoogleReaderTypeAdaptor::toFeedEntry, count, fetchExecutor());
     }
 
     protected static FeedEntry toFeedEntry(JsonNode item){
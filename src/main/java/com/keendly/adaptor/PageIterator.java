@@ -0,0 +1,117 @@
+package com.keendly.adaptor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.keendly.utils.JsonUtils.StreamPage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Iterates over pages of a paginated stream, at most {@code limit} items in total. With a {@link FetchExecutor},
+ * while a page is being mapped the next one is already requested, if it's certain it will be needed and the
+ * provider's limit allows it.
+ */
+public class PageIterator<T> implements Iterator<List<T>> {
+
+    private final Function<String, StreamPage<JsonNode>> fetch;
+    private final Function<JsonNode, T> mapper;
+    private int remaining;
+    private FetchExecutor prefetchExecutor;
+
+    private String continuation;
+    private boolean finished;
+    private CompletableFuture<StreamPage<JsonNode>> prefetched;
+
+    /**
+     * @param fetch fetches a page for the given continuation ({@code null} for the first page), items are mapped
+     *              later so they should be only parsed
+     * @param mapper maps an item, items mapped to {@code null} are skipped
+     */
+    public PageIterator(Function<String, StreamPage<JsonNode>> fetch, Function<JsonNode, T> mapper, int limit) {
+        this(fetch, mapper, limit, null);
+    }
+
+    /**
+     * @param prefetchExecutor executor of the provider the next pages are requested on, {@code null} not to
+     *                         request them before they're asked for
+     */
+    public PageIterator(Function<String, StreamPage<JsonNode>> fetch, Function<JsonNode, T> mapper, int limit,
+                        FetchExecutor prefetchExecutor) {
+        this.fetch = fetch;
+        this.mapper = mapper;
+        this.remaining = limit;
+        this.finished = limit <= 0;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Doesn't request a page until it's asked for, for readers which may stop before the limit.
+     */
+    public PageIterator<T> withoutPrefetch() {
+        this.prefetchExecutor = null;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !finished;
+    }
+
+    @Override
+    public List<T> next() {
+        if (finished) {
+            throw new NoSuchElementException();
+        }
+        StreamPage<JsonNode> page = prefetched != null ? join(prefetched) : fetch.apply(continuation);
+        prefetched = null;
+        continuation = page.getContinuation();
+
+        int items = page.getItems().size();
+        finished = items == 0 || continuation == null;
+        if (prefetchExecutor != null && !finished && items < remaining) {
+            // even if all of them are mapped there won't be enough, if the limit is reached it's requested later
+            String next = continuation;
+            prefetched = prefetchExecutor.tryStart(() -> fetch.apply(next));
+        }
+
+        List<T> mapped = new ArrayList<>();
+        for (JsonNode item : page.getItems()) {
+            T entry = mapper.apply(item);
+            if (entry != null) {
+                mapped.add(entry);
+                if (mapped.size() == remaining) {
+                    break;
+                }
+            }
+        }
+        remaining -= mapped.size();
+        if (remaining == 0) {
+            finished = true;
+        }
+        return mapped;
+    }
+
+    public List<T> toList() {
+        List<T> all = new ArrayList<>();
+        while (hasNext()) {
+            all.addAll(next());
+        }
+        return all;
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -9,7 +9,10 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.google.common.collect.ImmutableSet;
 import com.keendly.adaptor.Adaptor;
+import com.keendly.adaptor.ClientFactory;
+import com.keendly.adaptor.PageIterator;
 import com.keendly.adaptor.exception.ApiException;
 import com.keendly.adaptor.model.ExternalFeed;
 import com.keendly.adaptor.model.ExternalUser;
@@ -17,7 +20,6 @@ import com.keendly.adaptor.model.FeedEntry;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
 import org.glassfish.jersey.client.JerseyClient;
-import org.glassfish.jersey.client.JerseyClientBuilder;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
 
@@ -35,6 +37,9 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 
 public class FeedlyAdaptor extends Adaptor {
 
@@ -45,9 +50,18 @@ public class FeedlyAdaptor extends Adaptor {
         REDIRECT_URL
     }
 
+    private static final Set<String> ITEM_FIELDS =
+        ImmutableSet.of("id", "unread", "originId", "alternate", "title", "author", "published", "content", "summary",
+            "origin");
+    private static final String GLOBAL_ALL = "/category/global.all";
+    private static final int BATCH_PAGE_SIZE = 250;
+
     protected Map<FeedlyAdaptor.FeedlyParam, String> config;
 
-    private JerseyClient client = JerseyClientBuilder.createClient();
+    private JerseyClient client = ClientFactory.forProvider("feedly");
+
+    private String globalStreamId;
+    private int globalUnreadCount;
 
     public FeedlyAdaptor(Token token) {
         this(token, defaultConfig());
@@ -111,16 +125,16 @@ public class FeedlyAdaptor extends Adaptor {
             target = target.queryParam(param.getKey(), param.getValue());
         }
 
+        String accessToken = token.getAccessToken();
         Response response = target.request()
-            .header("Authorization", "Bearer " + token.getAccessToken())
+            .header("Authorization", "Bearer " + accessToken)
             .get();
 
         if (isOk(response.getStatus())) {
             return response;
         } else if (refreshIfNeeded && isUnauthorized(response.getStatus())) {
-            String refreshedToken = refreshAccessToken();
-            token.setAccessToken(refreshedToken);
-            token.setRefreshed(true);
+            discard(response);
+            refreshToken(accessToken);
             return get(url, params, false);
         } else {
             throw new ApiException(response.getStatus(), response.readEntity(String.class));
@@ -131,6 +145,16 @@ public class FeedlyAdaptor extends Adaptor {
         return get(url, Collections.EMPTY_MAP, true);
     }
 
+    // requests run concurrently, only the first one rejected with a given token refreshes it
+    private synchronized void refreshToken(String rejectedAccessToken){
+        if (!Objects.equals(rejectedAccessToken, token.getAccessToken())){
+            return;
+        }
+        String refreshedToken = refreshAccessToken();
+        token.setAccessToken(refreshedToken);
+        token.setRefreshed(true);
+    }
+
     private String refreshAccessToken(){
         JsonNode json = JsonNodeFactory.instance.objectNode()
             .put("grant_type", "refresh_token")
@@ -191,78 +215,83 @@ public class FeedlyAdaptor extends Adaptor {
 
     @Override
     public Map<String, List<FeedEntry>> getUnread(List<String> feedIds) {
-        Response response = get("/markers/counts");
-        JsonNode json = asJson(response);
-        Map<String, List<FeedEntry>> unreads = new HashMap<String, List<FeedEntry>>();
-        for(JsonNode feedCount : json.get("unreadcounts")) {
-            String feedId = feedCount.get("id").asText();
-            if (feedIds.contains(feedId)) {
-                int count = feedCount.get("count").asInt();
-                List<FeedEntry> unread = doGetUnread(feedId, count, null);
-                unreads.put(feedId, unread);
-            }
+        Map<String, Integer> unreadCounts = getUnreadCount(feedIds);
+        Map<String, List<FeedEntry>> unreads = removeFeedsWithoutUnread(unreadCounts);
+        if (unreadCounts.isEmpty()) {
+            return unreads;
+        }
+        Map<String, List<FeedEntry>> batched = getUnreadBatched(unreadCounts, Integer.MAX_VALUE);
+        if (batched != null) {
+            unreads.putAll(batched);
+            return unreads;
+        }
+        for (Map.Entry<String, Integer> feedCount : unreadCounts.entrySet()) {
+            List<FeedEntry> unread = doGetUnread(feedCount.getKey(), feedCount.getValue());
+            unreads.put(feedCount.getKey(), unread);
         }
 
         return unreads;
     }
 
-    private List<FeedEntry> doGetUnread(String feedId, int unreadCount, String continuation) {
-        int count = unreadCount > MAX_ARTICLES_PER_FEED ? MAX_ARTICLES_PER_FEED : unreadCount; // TODO inform user
+    @Override
+    protected Map<String, List<FeedEntry>> getUnreadBatched(Map<String, Integer> unreadCounts, int budget) {
+        if (globalStreamId == null
+            || pages(globalUnreadCount, BATCH_PAGE_SIZE) >= perFeedRequests(unreadCounts)) {
+            return null;
+        }
+        String url = "/streams/" + urlEncode(globalStreamId) + "/contents?unreadOnly=true&count=" + BATCH_PAGE_SIZE;
+        return collectByFeed(
+            continuation -> asStreamPage(get(continuation == null ? url : url + "&continuation=" + continuation),
+                "items", ITEM_FIELDS, Function.identity()),
+            item -> item.has("origin") ? asText(item.get("origin"), "streamId") : null,
+            FeedlyAdaptor::toUnreadFeedEntry, unreadCounts, budget);
+    }
+
+    private List<FeedEntry> doGetUnread(String feedId, int unreadCount) {
+        return unreadStream(feedId, unreadCount).toList();
+    }
+
+    @Override
+    protected PageIterator<FeedEntry> unreadStream(String feedId, int unreadCount) {
+        int count = articlesToFetch(unreadCount);
         String url = "/streams/" + urlEncode(feedId) + "/contents";
-        url = continuation == null ? url : url + "?continuation=" + continuation;
-        Response response = get(url);
-        JsonNode jsonResponse = asJson(response);
-        JsonNode items = jsonResponse.get("items");
-        if (items == null){
-            return Collections.emptyList();
+        return new PageIterator<>(
+            continuation -> asStreamPage(get(continuation == null ? url : url + "?continuation=" + continuation),
+                "items", ITEM_FIELDS, Function.identity()),
+            FeedlyAdaptor::toUnreadFeedEntry, count, fetchExecutor());
+    }
+
+    private static FeedEntry toUnreadFeedEntry(JsonNode item) {
+        if (!item.has("unread") || !item.get("unread").asBoolean()) {
+            return null;
         }
-        List<FeedEntry> entries = new ArrayList<>();
-        for (JsonNode item : items) {
-            if (item.get("unread").asBoolean()) {
-                String articleUrl = null;
-                String originIdString = null;
-                JsonNode originId = item.get("originId");
-                if (originId != null) {
-                    originIdString = item.get("originId").asText();
-                }
-                if (isURL(originIdString)) {
-                    articleUrl = originIdString;
-                } else {
-                    for (JsonNode alternate : item.get("alternate")) {
-                        if (alternate.get("type").asText().equals("text/html")) {
-                            articleUrl = alternate.get("href").asText();
-                        }
-                    }
-                }
-                if (articleUrl != null) {
-                    FeedEntry entry = new FeedEntry();
-                    String content = extractContent(item);
-                    entry.setId(asText(item, "id"));
-                    entry.setUrl(articleUrl);
-                    entry.setTitle(getTitle(item, content));
-                    entry.setAuthor(asText(item, "author"));
-                    entry.setPublished(asDate(item, "published"));
-                    entry.setContent(content);
-                    entries.add(entry);
-                }
-                if (entries.size() >= count) {
-                    break;
+        String articleUrl = null;
+        String originIdString = null;
+        JsonNode originId = item.get("originId");
+        if (originId != null) {
+            originIdString = item.get("originId").asText();
+        }
+        if (isURL(originIdString)) {
+            articleUrl = originIdString;
+        } else if (item.get("alternate") != null) {
+            for (JsonNode alternate : item.get("alternate")) {
+                if (alternate.get("type").asText().equals("text/html")) {
+                    articleUrl = alternate.get("href").asText();
                 }
             }
         }
-        List<FeedEntry> ret = new ArrayList();
-        ret.addAll(entries);
-        if (ret.size() < count){
-            JsonNode continuationNode = jsonResponse.get("continuation");
-            boolean hasContinuation = continuationNode != null;
-            if (hasContinuation){
-                List<FeedEntry> nextPage =
-                    doGetUnread(feedId, count - ret.size(), continuationNode.asText());
-                ret.addAll(nextPage);
-                return ret;
-            }
+        if (articleUrl == null) {
+            return null;
         }
-        return ret;
+        FeedEntry entry = new FeedEntry();
+        String content = extractContent(item);
+        entry.setId(asText(item, "id"));
+        entry.setUrl(articleUrl);
+        entry.setTitle(getTitle(item, content));
+        entry.setAuthor(asText(item, "author"));
+        entry.setPublished(asDate(item, "published"));
+        entry.setContent(content);
+        return entry;
     }
 
     protected static Date asDate(JsonNode node, String field){
@@ -304,7 +333,7 @@ public class FeedlyAdaptor extends Adaptor {
         }
     }
 
-    private String extractContent(JsonNode item){
+    private static String extractContent(JsonNode item){
         if (item.get("content") != null && item.get("content").get("content") != null){
             return item.get("content").get("content").asText();
         } else if (item.get("summary") != null && item.get("summary").get("content") != null){
@@ -314,15 +343,18 @@ public class FeedlyAdaptor extends Adaptor {
     }
 
     @Override
-    public Map<String, Integer> getUnreadCount(List<String> feedIds) {
+    protected Map<String, Integer> fetchUnreadCount() {
         Response response = get("/markers/counts");
         JsonNode json = asJson(response);
         Map<String, Integer> unreadCount = new HashMap<>();
         for (JsonNode feedCount : json.get("unreadcounts")) {
             String feedId = feedCount.get("id").asText();
-            if (feedIds.contains(feedId)) {
-                int count = feedCount.get("count").asInt();
+            int count = feedCount.get("count").asInt();
+            if (!feedId.startsWith("user/")) {
                 unreadCount.put(feedId, count);
+            } else if (feedId.endsWith(GLOBAL_ALL)) {
+                globalStreamId = feedId;
+                globalUnreadCount = count;
             }
         }
         return unreadCount;
@@ -330,6 +362,7 @@ public class FeedlyAdaptor extends Adaptor {
 
     @Override
     public Boolean markFeedRead(List<String> feedIds, long timestamp) {
+        forgetUnreadCount();
         ArrayNode feedsArr = JsonNodeFactory.instance.arrayNode();
         feedIds.forEach(f -> {
             TextNode node = JsonNodeFactory.instance.textNode(f);
@@ -345,6 +378,7 @@ public class FeedlyAdaptor extends Adaptor {
             .addAll(feedsArr);
 
         Response response = post("/markers", json, true);
+        discard(response);
         if (isOk(response.getStatus())){
             return Boolean.TRUE;
         } else {
@@ -354,11 +388,13 @@ public class FeedlyAdaptor extends Adaptor {
 
     @Override
     public Boolean markArticleRead(List<String> articleIds) {
+        forgetUnreadCount();
         return mark(markerJson(articleIds, "markAsRead"));
     }
 
     @Override
     public Boolean markArticleUnread(List<String> articleIds) {
+        forgetUnreadCount();
         return mark(markerJson(articleIds, "keepUnread"));
     }
 
@@ -385,6 +421,7 @@ public class FeedlyAdaptor extends Adaptor {
 
     private boolean mark(JsonNode json) {
         Response response = post("/markers", json, true);
+        discard(response);
         if (isOk(response.getStatus())){
             return Boolean.TRUE;
         } else {
@@ -402,16 +439,18 @@ public class FeedlyAdaptor extends Adaptor {
             target = target.queryParam(param.getKey(), param.getValue());
         }
 
+        String accessToken = token.getAccessToken();
         Response response = target.request()
-            .header("Authorization", "Bearer " + token.getAccessToken())
+            .header("Authorization", "Bearer " + accessToken)
+            // only markers are posted, safe to send again
+            .property(ClientFactory.IDEMPOTENT, true)
             .post(Entity.json(content));
 
         if (isOk(response.getStatus())) {
             return response;
         } else if (refreshIfNeeded && isUnauthorized(response.getStatus())) {
-            String refreshedToken = refreshAccessToken();
-            token.setAccessToken(refreshedToken);
-            token.setRefreshed(true);
+            discard(response);
+            refreshToken(accessToken);
             return post(url, params, content,false);
         } else {
             throw new ApiException(response.getStatus(), response.readEntity(String.class));
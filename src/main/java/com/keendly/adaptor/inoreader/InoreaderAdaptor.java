@@ -5,16 +5,21 @@ import static com.keendly.utils.ConfigUtils.*;
 import static com.keendly.utils.JsonUtils.*;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.net.UrlEscapers;
+import com.keendly.adaptor.Adaptor;
+import com.keendly.adaptor.ClientFactory;
+import com.keendly.adaptor.FetchExecutor;
 import com.keendly.adaptor.GoogleReaderMapper;
 import com.keendly.adaptor.GoogleReaderTypeAdaptor;
 import com.keendly.adaptor.exception.ApiException;
 import com.keendly.adaptor.model.ExternalFeed;
 import com.keendly.adaptor.model.ExternalUser;
+import com.keendly.adaptor.model.FeedEntry;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
 import org.glassfish.jersey.client.JerseyClient;
-import org.glassfish.jersey.client.JerseyClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,10 +30,16 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
 
@@ -45,7 +56,16 @@ public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
 
     protected Map<InoreaderParam, String> config;
 
-    private JerseyClient client = JerseyClientBuilder.createClient();
+    private static final String READING_LIST = "/state/com.google/reading-list";
+    private static final Set<String> ITEM_REF_FIELDS = ImmutableSet.of("id", "directStreamIds");
+    private static final int IDS_PAGE_SIZE = 1000;
+    private static final int CONTENTS_BATCH_SIZE = 250;
+    // ids go in the form body, so there's no URL length limit, same as for contents
+    private static final int EDIT_TAG_BATCH_SIZE = 250;
+
+    private JerseyClient client = ClientFactory.forProvider("inoreader");
+
+    private Integer totalUnreadCount;
 
     public InoreaderAdaptor(Token token) {
         this(token, defaultConfig());
@@ -86,8 +106,8 @@ public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
         return get(url, params, true);
     }
 
-    protected Response post(String url) {
-        return post(url, true);
+    protected Response post(String url, Form form) {
+        return post(url, Entity.form(form), true);
     }
 
     private Response get(String url, Map<String, String> params, boolean refreshIfNeeded) {
@@ -96,35 +116,37 @@ public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
             target = target.queryParam(param.getKey(), param.getValue());
         }
 
+        String accessToken = token.getAccessToken();
         Response response = target.request()
-            .header("Authorization", "Bearer " + token.getAccessToken())
+            .header("Authorization", "Bearer " + accessToken)
             .get();
 
         if (isOk(response.getStatus())) {
             return response;
         } else if (refreshIfNeeded && isUnauthorized(response.getStatus())) {
-            String refreshedToken = refreshAccessToken(token.getRefreshToken());
-            token.setAccessToken(refreshedToken);
-            token.setRefreshed(true);
+            discard(response);
+            refreshToken(accessToken);
             return get(url, params, false);
         } else {
             throw new ApiException(response.getStatus(), response.readEntity(String.class));
         }
     }
 
-    private Response post(String url, boolean refreshIfNeeded) {
+    private Response post(String url, Entity<?> entity, boolean refreshIfNeeded) {
+        String accessToken = token.getAccessToken();
         Response response = client.target(config.get(URL) + url)
             .request()
-            .header("Authorization", "Bearer " + token.getAccessToken())
-            .post(Entity.text(""));
+            .header("Authorization", "Bearer " + accessToken)
+            // reading contents and editing tags, safe to send again
+            .property(ClientFactory.IDEMPOTENT, true)
+            .post(entity);
 
         if (isOk(response.getStatus())) {
             return response;
         } else if (refreshIfNeeded && isUnauthorized(response.getStatus())) {
-            String refreshedToken = refreshAccessToken(token.getRefreshToken());
-            token.setAccessToken(refreshedToken);
-            token.setRefreshed(true);
-            return post(url, false);
+            discard(response);
+            refreshToken(accessToken);
+            return post(url, entity, false);
         } else {
             throw new ApiException(response.getStatus(), response.readEntity(String.class));
         }
@@ -171,27 +193,108 @@ public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
     }
 
     @Override
-    public Map<String, Integer> getUnreadCount(List<String> feedIds) {
+    protected Map<String, Integer> fetchUnreadCount() {
         Map<String, Integer> unreadCount = new HashMap<>();
         Response response = get("/unread-count");
         JsonNode node = asJson(response);
         for (JsonNode unread : node.get("unreadcounts")){
-            if (feedIds.contains(unread.get("id").asText())){
-                unreadCount.put(unread.get("id").asText(), unread.get("count").asInt());
+            String id = unread.get("id").asText();
+            if (!id.startsWith("user/")){
+                unreadCount.put(id, unread.get("count").asInt());
+            } else if (id.endsWith(READING_LIST)){
+                totalUnreadCount = unread.get("count").asInt();
             }
         }
         return unreadCount;
     }
 
+    /**
+     * Gets ids of unread articles of all the feeds from the whole reading list, with feeds they belong to,
+     * then their contents in batches.
+     */
+    @Override
+    protected Map<String, List<FeedEntry>> getUnreadBatched(Map<String, Integer> unreadCounts, int budget) {
+        int articles = Math.min(budget, unreadCounts.values().stream().mapToInt(Adaptor::articlesToFetch).sum());
+        if (totalUnreadCount == null
+            || pages(totalUnreadCount, IDS_PAGE_SIZE) + pages(articles, CONTENTS_BATCH_SIZE) >= perFeedRequests(unreadCounts)){
+            return null;
+        }
+
+        String url = "/stream/items/ids?s=user/-/state/com.google/reading-list&xt=user/-/state/com.google/read"
+            + "&includeAllDirectStreamIds=true&n=" + IDS_PAGE_SIZE;
+        Map<String, List<String>> idsByFeed = collectByFeed(
+            continuation -> asStreamPage(get(continuation == null ? url : url + "&c=" + continuation),
+                "itemRefs", ITEM_REF_FIELDS, Function.identity()),
+            ref -> {
+                for (JsonNode streamId : ref.path("directStreamIds")){
+                    if (unreadCounts.containsKey(streamId.asText())){
+                        return streamId.asText();
+                    }
+                }
+                return null;
+            },
+            ref -> ref.get("id").asText(), unreadCounts, budget);
+
+        Map<String, String> feedById = new HashMap<>();
+        idsByFeed.forEach((feedId, ids) -> ids.forEach(id -> feedById.put(id, feedId)));
+        List<List<String>> batches = Lists.partition(new ArrayList<>(feedById.keySet()), CONTENTS_BATCH_SIZE);
+
+        FetchExecutor.Result<List<String>, Map<String, FeedEntry>> result = fetchExecutor().fetchAll(batches,
+            this::getContents, UNREAD_DEADLINE_IN_SECONDS, TimeUnit.SECONDS);
+        Map<String, FeedEntry> entries = new HashMap<>();
+        result.getCompleted().values().forEach(entries::putAll);
+        timedOutFeeds = result.getTimedOut().stream()
+            .flatMap(List::stream)
+            .map(feedById::get)
+            .distinct()
+            .collect(Collectors.toList());
+        failedFeeds = result.getFailed().stream()
+            .flatMap(List::stream)
+            .map(feedById::get)
+            .distinct()
+            .filter(feedId -> !timedOutFeeds.contains(feedId))
+            .collect(Collectors.toList());
+
+        Map<String, List<FeedEntry>> unread = new HashMap<>();
+        idsByFeed.forEach((feedId, ids) -> {
+            if (!timedOutFeeds.contains(feedId) && !failedFeeds.contains(feedId)){
+                unread.put(feedId, ids.stream()
+                    .map(id -> entries.get(longItemId(id)))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
+            }
+        });
+        return unread;
+    }
+
+    private Map<String, FeedEntry> getContents(List<String> ids){
+        Form form = new Form();
+        ids.forEach(id -> form.param("i", id));
+        List<FeedEntry> entries = asStreamPage(post("/stream/items/contents", form),
+            "items", ITEM_FIELDS, GoogleReaderTypeAdaptor::toFeedEntry).getItems();
+        Map<String, FeedEntry> byId = new HashMap<>();
+        entries.forEach(entry -> byId.put(entry.getId(), entry));
+        return byId;
+    }
+
+    // item ids endpoint returns short (decimal) ids, contents long ones
+    private static String longItemId(String id){
+        if (id.startsWith("tag:")){
+            return id;
+        }
+        return String.format("tag:google.com,2005:reader/item/%016x", Long.parseLong(id));
+    }
+
     @Override
     public Boolean markFeedRead(List<String> feedIds, long timestamp) {
-        for (String feedId : feedIds){
+        // one stream per call
+        return markFeedsReadInBatches(feedIds, 1, batch -> {
             Map<String, String> params = new HashMap<>();
-            params.put("s", encode(feedId));
+            params.put("s", encode(batch.get(0)));
             params.put("ts", Long.toString(timestamp * 1000));
-            get("/mark-all-as-read", params);
-        }
-        return Boolean.TRUE;
+            discard(get("/mark-all-as-read", params));
+            return Boolean.TRUE;
+        });
     }
 
     private static String encode(String s) {
@@ -208,6 +311,16 @@ public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
         return UrlEscapers.urlPathSegmentEscaper().escape(feedId);
     }
 
+    // unread feeds are fetched concurrently, only the first request rejected with a given token refreshes it
+    private synchronized void refreshToken(String rejectedAccessToken){
+        if (!Objects.equals(rejectedAccessToken, token.getAccessToken())){
+            return;
+        }
+        String refreshedToken = refreshAccessToken(token.getRefreshToken());
+        token.setAccessToken(refreshedToken);
+        token.setRefreshed(true);
+    }
+
     private String refreshAccessToken(String refreshToken){
         Form form = new Form();
         form.param("client_id", config.get(CLIENT_ID));
@@ -238,11 +351,13 @@ public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
 
     @Override
     public Boolean markArticleRead(List<String> articleIds){
+        forgetUnreadCount();
         return editTag(true, "user/-/state/com.google/read", articleIds);
     }
 
     @Override
     public Boolean markArticleUnread(List<String> articleIds){
+        forgetUnreadCount();
         return editTag(false, "user/-/state/com.google/read", articleIds);
     }
 
@@ -252,16 +367,18 @@ public class InoreaderAdaptor extends GoogleReaderTypeAdaptor {
     }
 
     private Boolean editTag(boolean add, String tag, List<String> ids){
-        String action = add ? "a" : "r";
-        String url = "/edit-tag?" + action + "=" + tag;
-        for (String id : ids){
-            url = url + "&i=" + id;
-        }
-        Response response = post(url);
-        if (isOk(response.getStatus())){
+        BatchResult result = callInBatches(ids, EDIT_TAG_BATCH_SIZE, batch -> {
+            Form form = new Form();
+            form.param(add ? "a" : "r", tag);
+            batch.forEach(id -> form.param("i", id));
+            discard(post("/edit-tag", form));
             return Boolean.TRUE;
-        } else {
-            return Boolean.FALSE;
+        });
+        if (!result.getFailed().isEmpty()){
+            LOG.warn("{} of {} articles not {} {}", result.getFailed().size(), ids.size(),
+                add ? "tagged" : "untagged", tag);
         }
+        result.rethrowFailure();
+        return result.getFailed().isEmpty();
     }
 }
@@ -7,15 +7,16 @@ import static com.keendly.utils.JsonUtils.*;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.net.UrlEscapers;
 import com.keendly.adaptor.Adaptor;
+import com.keendly.adaptor.ClientFactory;
+import com.keendly.adaptor.PageIterator;
 import com.keendly.adaptor.exception.ApiException;
 import com.keendly.adaptor.model.ExternalFeed;
 import com.keendly.adaptor.model.ExternalUser;
 import com.keendly.adaptor.model.FeedEntry;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
-import org.glassfish.jersey.client.ClientProperties;
+import com.keendly.utils.JsonUtils.StreamPage;
 import org.glassfish.jersey.client.JerseyClient;
-import org.glassfish.jersey.client.JerseyClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +38,8 @@ public class NewsblurAdaptor extends Adaptor {
     private static final Logger LOG = LoggerFactory.getLogger(NewsblurAdaptor.class);
 
     private static final int TIMEOUT = 5000;
+    // mark_feed_as_read takes feed_id repeated
+    private static final int MARK_READ_BATCH_SIZE = 10;
 
     enum NewsblurParam {
         URL,
@@ -47,13 +50,7 @@ public class NewsblurAdaptor extends Adaptor {
 
     protected Map<NewsblurParam, String> config;
 
-    private JerseyClient client = createClient();
-
-    private JerseyClient createClient() {
-        JerseyClient client = JerseyClientBuilder.createClient();
-        client.property(ClientProperties.READ_TIMEOUT, TIMEOUT);
-        return client;
-    }
+    private JerseyClient client = ClientFactory.forProvider("newsblur", TIMEOUT);
 
     public NewsblurAdaptor(Token token){
         this(token, defaultConfig());
@@ -179,46 +176,35 @@ public class NewsblurAdaptor extends Adaptor {
     @Override
     public Map<String, List<FeedEntry>> getUnread(List<String> feedIds) {
         Map<String, Integer> unreadCounts = getUnreadCount(feedIds);
-        List<Map<String, List<FeedEntry>>> results = new ArrayList<>();
+        Map<String, List<FeedEntry>> entries = removeFeedsWithoutUnread(unreadCounts);
         for (Map.Entry<String, Integer> entry : unreadCounts.entrySet()){
-            Map<String, List<FeedEntry>> entries = doGetUnread(entry.getKey(), entry.getValue(), 1);
-            results.add(entries);
-        }
-
-        Map<String, List<FeedEntry>> entries = new HashMap<>();
-        for (Map<String, List<FeedEntry>> entry : results) {
-            for (Map.Entry<String, List<FeedEntry>> mapEntry : entry.entrySet()) {
-                entries.put(mapEntry.getKey(), mapEntry.getValue());
-            }
+            entries.put(entry.getKey(), doGetUnread(entry.getKey(), entry.getValue()));
         }
         return entries;
     }
 
-    private Map<String, List<FeedEntry>> doGetUnread(String feedId, int unreadCount, int page) {
-        int count = unreadCount > MAX_ARTICLES_PER_FEED ? MAX_ARTICLES_PER_FEED : unreadCount; // TODO inform user
-        String url = "/reader/feed/" + UrlEscapers.urlPathSegmentEscaper().escape(feedId) + "?page=" + Integer.toString(page);
-        JsonNode jsonResponse = get(url);
-        JsonNode items = jsonResponse.get("stories");
-        if (items == null){
-            return Collections.emptyMap();
-        }
-        List<FeedEntry> entries = new ArrayList<>();
-        for (JsonNode item : items){
-            if (item.get("read_status").asInt() == 0){
-                FeedEntry entry = mapToFeedEntry(item);
-                entries.add(entry);
-            }
-        }
+    private List<FeedEntry> doGetUnread(String feedId, int unreadCount) {
+        return unreadStream(feedId, unreadCount).toList();
+    }
 
-        Map<String, List<FeedEntry>> ret = new HashMap<>();
-        ret.put(feedId, entries);
-        if (ret.get(feedId).size() < count){
-            Map<String, List<FeedEntry>> nextPage =
-                    doGetUnread(feedId, count - ret.get(feedId).size(), page+1);
-            ret.get(feedId).addAll(nextPage.get(feedId));
-        }
+    @Override
+    protected PageIterator<FeedEntry> unreadStream(String feedId, int unreadCount) {
+        int count = articlesToFetch(unreadCount);
+        String url = "/reader/feed/" + UrlEscapers.urlPathSegmentEscaper().escape(feedId) + "?page=";
+        return new PageIterator<>(page -> {
+                int pageNumber = page == null ? 1 : Integer.parseInt(page);
+                JsonNode stories = get(url + pageNumber).get("stories");
+                if (stories == null){
+                    return new StreamPage<JsonNode>(Collections.emptyList(), null);
+                }
+                List<JsonNode> items = new ArrayList<>();
+                stories.forEach(items::add);
+                return new StreamPage<>(items, Integer.toString(pageNumber + 1));
+            }, NewsblurAdaptor::toUnreadFeedEntry, count, fetchExecutor());
+    }
 
-        return ret;
+    private static FeedEntry toUnreadFeedEntry(JsonNode story){
+        return story.get("read_status").asInt() == 0 ? mapToFeedEntry(story) : null;
     }
 
     private static boolean isURL(String s){
@@ -234,45 +220,47 @@ public class NewsblurAdaptor extends Adaptor {
     }
 
     @Override
-    public Map<String, Integer> getUnreadCount(List<String> feedIds) {
+    protected Map<String, Integer> fetchUnreadCount() {
         JsonNode response = get("/reader/refresh_feeds");
         Map<String, Integer> unreadCount = new HashMap<>();
         Iterator<Map.Entry<String, JsonNode>> it = response.get("feeds").fields();
         while (it.hasNext()){
             Map.Entry<String, JsonNode> feed = it.next();
-            if (feedIds.contains(feed.getKey())){
-                unreadCount.put(feed.getKey(), feed.getValue().get("nt").asInt());
-            }
+            unreadCount.put(feed.getKey(), feed.getValue().get("nt").asInt());
         }
         return unreadCount;
     }
 
     @Override
     public Boolean markFeedRead(List<String> feedIds, long timestamp) {
-        for (String feedId : feedIds){
+        return markFeedsReadInBatches(feedIds, MARK_READ_BATCH_SIZE, batch -> {
             Form form = new Form();
-            form.param("feed_id", feedId);
+            batch.forEach(feedId -> form.param("feed_id", feedId));
             form.param("cutoff_timestamp",  String.valueOf(timestamp / 1000)); // to seconds
 
             Response response = client.target(config.get(URL) + "/reader/mark_feed_as_read")
                 .request(MediaType.APPLICATION_FORM_URLENCODED_TYPE)
                 .header("Authorization", "Bearer " + token.getAccessToken())
+                .property(ClientFactory.IDEMPOTENT, true)
                 .post(Entity.form(form));
 
             if (!isOk(response.getStatus())) {
                 throw new ApiException(response.getStatus(), response.readEntity(String.class));
             }
-        }
-        return Boolean.TRUE;
+            discard(response);
+            return Boolean.TRUE;
+        });
     }
 
     @Override
     public Boolean markArticleRead(List<String> articleHashes) {
+        forgetUnreadCount();
         return markArticle(articleHashes, "mark_story_hashes_as_read");
     }
 
     @Override
     public Boolean markArticleUnread(List<String> articleHashes) {
+        forgetUnreadCount();
         return markArticle(articleHashes, "mark_story_hash_as_unread");
     }
 
@@ -290,9 +278,11 @@ public class NewsblurAdaptor extends Adaptor {
         Response response = client.target(config.get(URL) +  "/reader/" + path)
             .request(MediaType.APPLICATION_FORM_URLENCODED_TYPE)
             .header("Authorization", "Bearer " + token.getAccessToken())
+            .property(ClientFactory.IDEMPOTENT, true)
             .post(Entity.form(form));
 
         if (isOk(response.getStatus())) {
+            discard(response);
             return Boolean.TRUE;
         } else {
             throw new ApiException(response.getStatus(), response.readEntity(String.class));
@@ -5,6 +5,7 @@ import static com.keendly.utils.ConfigUtils.*;
 import static com.keendly.utils.JsonUtils.*;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.keendly.adaptor.ClientFactory;
 import com.keendly.adaptor.GoogleReaderMapper;
 import com.keendly.adaptor.GoogleReaderTypeAdaptor;
 import com.keendly.adaptor.exception.ApiException;
@@ -13,7 +14,6 @@ import com.keendly.adaptor.model.ExternalUser;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
 import org.glassfish.jersey.client.JerseyClient;
-import org.glassfish.jersey.client.JerseyClientBuilder;
 
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
@@ -36,7 +36,7 @@ public class OldReaderAdaptor extends GoogleReaderTypeAdaptor {
 
     protected Map<OldReaderParam, String> config;
 
-    private JerseyClient client = JerseyClientBuilder.createClient();
+    private JerseyClient client = ClientFactory.forProvider("oldreader");
 
     public OldReaderAdaptor(Token token){
         this(token, defaultConfig());
@@ -115,12 +115,12 @@ public class OldReaderAdaptor extends GoogleReaderTypeAdaptor {
     }
 
     @Override
-    public Map<String, Integer> getUnreadCount(List<String> feedIds) {
+    protected Map<String, Integer> fetchUnreadCount() {
         Map<String, Integer> unreadCount = new HashMap<>();
         Response response = get("/unread-count");
         JsonNode node = asJson(response);
         for (JsonNode unread : node.get("unreadcounts")){
-            if (feedIds.contains(unread.get("id").asText())){
+            if (!unread.get("id").asText().startsWith("user/")){
                 unreadCount.put(unread.get("id").asText(), unread.get("count").asInt());
             }
         }
@@ -129,18 +129,19 @@ public class OldReaderAdaptor extends GoogleReaderTypeAdaptor {
 
     @Override
     public Boolean markFeedRead(List<String> feedIds, long timestamp) {
-        for (String feedId : feedIds){
+        // one stream per call
+        return markFeedsReadInBatches(feedIds, 1, batch -> {
             Form form = new Form();
-            form.param("s", feedId);
+            form.param("s", batch.get(0));
             form.param("ts", String.valueOf(timestamp * 1000000));
 
-            client.target(config.get(URL) + "/mark-all-as-read")
+            Response response = client.target(config.get(URL) + "/mark-all-as-read")
                 .request(MediaType.APPLICATION_FORM_URLENCODED_TYPE)
                 .header("Authorization", "GoogleLogin auth=" + token.getAccessToken())
                 .post(Entity.form(form));
-        }
-
-        return Boolean.TRUE;
+            discard(response);
+            return isOk(response.getStatus());
+        });
     }
 
     @Override
@@ -169,6 +170,7 @@ public class OldReaderAdaptor extends GoogleReaderTypeAdaptor {
         Response response = client.target(config.get(URL) + normalizeURL(url))
             .request(MediaType.APPLICATION_FORM_URLENCODED_TYPE)
             .header("Authorization", "GoogleLogin auth=" + token.getAccessToken())
+            .property(ClientFactory.IDEMPOTENT, true)
             .post(Entity.form(form));
 
         if (isOk(response.getStatus())) {
@@ -188,11 +190,13 @@ public class OldReaderAdaptor extends GoogleReaderTypeAdaptor {
 
     @Override
     public Boolean markArticleRead(List<String> articleIds){
+        forgetUnreadCount();
         return editTag(true, "user/-/state/com.google/read", articleIds);
     }
 
     @Override
     public Boolean markArticleUnread(List<String> articleIds){
+        forgetUnreadCount();
         return editTag(false, "user/-/state/com.google/read", articleIds);
     }
 
@@ -209,6 +213,7 @@ public class OldReaderAdaptor extends GoogleReaderTypeAdaptor {
         }
 
         Response response =  post("/edit-tag", form);
+        discard(response);
         if (isOk(response.getStatus())){
             return Boolean.TRUE;
         } else {
@@ -1,6 +1,7 @@
 package com.keendly.api;
 
 import static com.keendly.premium.PremiumUtils.*;
+import static com.keendly.utils.ConfigUtils.*;
 
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
@@ -8,7 +9,6 @@ import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
 import com.amazonaws.services.lambda.invoke.LambdaInvokerFactory;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.stepfunctions.AWSStepFunctions;
 import com.amazonaws.services.stepfunctions.AWSStepFunctionsClient;
 import com.amazonaws.services.stepfunctions.model.StartExecutionRequest;
@@ -17,19 +17,25 @@ import com.amazonaws.util.json.Jackson;
 import com.keendly.adaptor.Adaptor;
 import com.keendly.adaptor.AdaptorFactory;
 import com.keendly.adaptor.model.FeedEntry;
+import com.keendly.auth.UserContext;
 import com.keendly.dao.DeliveryDao;
 import com.keendly.dao.UserDao;
 import com.keendly.model.Delivery;
 import com.keendly.model.DeliveryItem;
+import com.keendly.model.Page;
+import com.keendly.model.Premium;
 import com.keendly.model.Subscription;
 import com.keendly.model.User;
 import com.keendly.perun.PerunRequest;
 import com.keendly.perun.PerunService;
+import com.keendly.premium.PremiumUtils;
 import com.keendly.push_notifier.PushNotifierRequest;
 import com.keendly.push_notifier.PushNotifierService;
 import com.keendly.states.DeliveryRequest;
+import com.keendly.states.ItemsFormat;
 import com.keendly.states.Mapper;
 import com.keendly.states.S3Object;
+import com.keendly.states.S3Upload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,7 +50,6 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
-import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -59,6 +64,7 @@ public class DeliveryResource {
     private static int MAX_FEEDS_IN_DELIVERY = 25;
     private static int MAX_ARTICLES_IN_DELIVERY = 500;
     private static String BUCKET = "keendly";
+    private static final ItemsFormat ITEMS_FORMAT = itemsFormat(parameter("DELIVERY_ITEMS_FORMAT"));
     private static final String STATE_MACHINE_ARN = "arn:aws:states:eu-west-1:625416862388:stateMachine:Delivery";
 
     private DeliveryDao deliveryDAO;
@@ -68,6 +74,16 @@ public class DeliveryResource {
     private PerunService perunService;
     private PushNotifierService pushNotifierService;
 
+    // same marker as DeliveryRequest#getItemsFormat, a typo falls back to JSON rather than breaking the resource
+    static ItemsFormat itemsFormat(String marker) {
+        try {
+            return ItemsFormat.fromMarker(marker);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Unknown DELIVERY_ITEMS_FORMAT {}, using {}", marker, ItemsFormat.JSON.getMarker());
+            return ItemsFormat.JSON;
+        }
+    }
+
     public DeliveryResource() {
         this.deliveryDAO = new DeliveryDao();
         this.userDAO = new UserDao();
@@ -111,15 +127,38 @@ public class DeliveryResource {
     public Response getDeliveries(@Context SecurityContext securityContext,
         @QueryParam("subscriptionId") String subscriptionId,
         @QueryParam("page") String page,
-        @QueryParam("pageSize") String pageSize) {
+        @QueryParam("pageSize") String pageSize,
+        @QueryParam("before") String before,
+        @QueryParam("limit") String limit) {
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
         List<Delivery> deliveries;
 
         if (subscriptionId != null) {
             deliveries = deliveryDAO.getSubscriptionDeliveries(userId, Long.valueOf(subscriptionId));
-        } else {
+        } else if (page != null) {
             deliveries =
                 deliveryDAO.getDeliveries(userId, Integer.valueOf(page), Integer.valueOf(pageSize));
+        } else {
+            int pageLimit;
+            Long beforeId;
+            try {
+                pageLimit = Page.limit(limit);
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Error.WRONG_LIMIT.asEntity(limit))
+                    .build();
+            }
+            try {
+                beforeId = before != null ? Page.fromCursor(before) : null;
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Error.WRONG_CURSOR.asEntity(before))
+                    .build();
+            }
+            Page<Delivery> deliveriesPage = deliveryDAO.getDeliveries(userId, beforeId, pageLimit);
+            return Response.ok(deliveriesPage.getItems())
+                .header(Page.NEXT_CURSOR_HEADER, deliveriesPage.getNextCursor())
+                .build();
         }
         return Response.ok(deliveries).build();
     }
@@ -130,8 +169,8 @@ public class DeliveryResource {
     public Response createDelivery(@Context SecurityContext securityContext, Delivery delivery) {
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
 
-        // validate user
-        User user = userDAO.findById(userId);
+        // validate user, tokens are needed anyway
+        User user = userDAO.findAccount(userId);
         if (user.getDeliveryEmail() == null || user.getDeliveryEmail().isEmpty()) {
             LOG.error("Delivery email not configured for user {}", userId);
             return Response.status(Response.Status.BAD_REQUEST)
@@ -148,7 +187,11 @@ public class DeliveryResource {
         }
 
         // check if user has active premium
-        if (!delivery.getManual() && !getPremiumStatus(user).isActive()) {
+        boolean premiumInContext = UserContext.of(securityContext)
+            .flatMap(PremiumUtils::getPremiumStatus)
+            .map(Premium::isActive)
+            .orElse(false);
+        if (!delivery.getManual() && !premiumInContext && !getPremiumStatus(user).isActive()) {
             LOG.error("Scheduled deliveries are available for Premium users");
             return Response.status(Response.Status.PAYMENT_REQUIRED)
                 .entity(Error.NO_PREMIUM.asEntity())
@@ -158,9 +201,22 @@ public class DeliveryResource {
         // fetch unread articles
         Adaptor adaptor = AdaptorFactory.getInstance(user);
         Map<String, List<FeedEntry>> unread =
-            adaptor.getUnread(delivery.getItems().stream().map(DeliveryItem::getFeedId).collect(Collectors.toList()));
+            adaptor.getUnread(delivery.getItems().stream().map(DeliveryItem::getFeedId).collect(Collectors.toList()),
+                MAX_ARTICLES_IN_DELIVERY);
         LOG.debug("Fetched {} unread articles for {} feeds", 
             unread.values().stream().flatMap(List::stream).collect(Collectors.toList()), unread.size());
+        // feeds not fetched in time or failing, or only partly, are delivered without (all) their articles, so they
+        // mustn't be marked as read afterwards
+        List<String> timedOutFeeds = new ArrayList<>(adaptor.getTimedOutFeeds());
+        if (!timedOutFeeds.isEmpty()) {
+            LOG.warn("Unread articles not fetched in time for feeds: {}", timedOutFeeds);
+            delivery = withoutMarkAsRead(delivery, timedOutFeeds);
+        }
+        List<String> failedFeeds = new ArrayList<>(adaptor.getFailedFeeds());
+        if (!failedFeeds.isEmpty()) {
+            LOG.warn("Unread articles not fetched for feeds: {}", failedFeeds);
+            delivery = withoutMarkAsRead(delivery, failedFeeds);
+        }
         
         // check if articles number is not above the limit
         int allArticles = unread.values().stream()
@@ -223,7 +279,7 @@ public class DeliveryResource {
 
         List<DeliveryItem> deliveryItems = Mapper.toDeliveryItems(delivery, unread);
         S3Object s3Items = storeItems(deliveryItems);
-        DeliveryRequest request = Mapper.toDeliveryRequest(delivery, s3Items, deliveryId, user, false);
+        DeliveryRequest request = Mapper.toDeliveryRequest(delivery, s3Items, ITEMS_FORMAT, deliveryId, user, false);
 
         String executionArn = startStateMachine(request);
         deliveryDAO.setExecutionArn(deliveryId, executionArn);
@@ -231,15 +287,51 @@ public class DeliveryResource {
         return Response.status(Response.Status.CREATED)
             .entity(Delivery.builder()
                 .id(deliveryId)
+                .error(fetchError(timedOutFeeds, failedFeeds))
                 .build())
             .build();
     }
 
+    private static String fetchError(List<String> timedOutFeeds, List<String> failedFeeds) {
+        List<String> errors = new ArrayList<>();
+        if (!timedOutFeeds.isEmpty()) {
+            errors.add("NOT FETCHED IN TIME: " + String.join(", ", timedOutFeeds));
+        }
+        if (!failedFeeds.isEmpty()) {
+            errors.add("NOT FETCHED: " + String.join(", ", failedFeeds));
+        }
+        return errors.isEmpty() ? null : String.join("; ", errors);
+    }
+
+    private static Delivery withoutMarkAsRead(Delivery delivery, List<String> feedIds) {
+        List<DeliveryItem> items = delivery.getItems().stream()
+            .map(item -> !feedIds.contains(item.getFeedId()) ? item : DeliveryItem.builder()
+                .id(item.getId())
+                .feedId(item.getFeedId())
+                .title(item.getTitle())
+                .includeImages(item.getIncludeImages())
+                .fullArticle(item.getFullArticle())
+                .markAsRead(false)
+                .articles(item.getArticles())
+                .build())
+            .collect(Collectors.toList());
+        return Delivery.builder()
+            .id(delivery.getId())
+            .items(items)
+            .deliveryDate(delivery.getDeliveryDate())
+            .error(delivery.getError())
+            .manual(delivery.getManual())
+            .subscription(delivery.getSubscription())
+            .created(delivery.getCreated())
+            .lastModified(delivery.getLastModified())
+            .timezone(delivery.getTimezone())
+            .build();
+    }
+
     private S3Object storeItems(List<DeliveryItem> items) {
-        String key = "messages/" + UUID.randomUUID().toString().replace("-", "") + ".json";
-        amazonS3Client.putObject(BUCKET, key,
-            new ByteArrayInputStream(
-                Jackson.toJsonString(items).getBytes()), new ObjectMetadata());
+        String key = "messages/" + UUID.randomUUID().toString().replace("-", "") + ITEMS_FORMAT.getExtension();
+        S3Upload.upload(amazonS3Client, BUCKET, key, ITEMS_FORMAT.getContentType(), ITEMS_FORMAT.getContentEncoding(),
+            out -> ITEMS_FORMAT.encode(items, out));
         LOG.debug("Items stored in s3 with key: {}", key);
 
         return S3Object.builder()
@@ -271,29 +363,9 @@ public class DeliveryResource {
 
     @PATCH
     @Path("/{id}")
-    public Response updateDelivery(@Context SecurityContext securityContext,
-        @PathParam("id") String id, Delivery delivery) {
-        // only setting deliveryDate or error supported
+    public Response updateDelivery(@PathParam("id") String id, Delivery delivery) {
+        // only setting deliveryDate or error supported, feeds get marked as read later by MarkReadWorker
         deliveryDAO.setDeliveryFinished(Long.parseLong(id), delivery.getDeliveryDate(), delivery.getError());
-
-        // dont mark as read in case of error
-        if (delivery.getError() != null) {
-            return Response.ok().build();
-        }
-
-        List<String> feedsToMarkAsRead = new ArrayList<>();
-        Delivery stored = deliveryDAO.findById(Long.parseLong(id));
-        for (DeliveryItem item : stored.getItems()) {
-            if (item.getMarkAsRead()) {
-                feedsToMarkAsRead.add(item.getFeedId());
-            }
-        }
-
-        if (!feedsToMarkAsRead.isEmpty()) {
-            Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
-            Adaptor adaptor = AdaptorFactory.getInstance(userDAO.findById(userId));
-            adaptor.markFeedRead(feedsToMarkAsRead, delivery.getDeliveryDate().getTime());
-        }
         return Response.ok().build();
     }
 }
@@ -10,7 +10,9 @@ public enum Error {
     WRONG_EMAIL("Email address incorrect, allowed domains: %s"),
     NO_ARTICLES("No unread articles found"),
     TOO_MANY_SUBSCRIPTIONS("Max number of scheduled deliveries: %d"),
-    NO_PREMIUM("Scheduled deliveries are available for Premium users");
+    NO_PREMIUM("Scheduled deliveries are available for Premium users"),
+    WRONG_CURSOR("Pagination cursor incorrect: %s"),
+    WRONG_LIMIT("Page size limit incorrect: %s");
 
     private String message;
 
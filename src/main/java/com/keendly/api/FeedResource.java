@@ -1,5 +1,7 @@
 package com.keendly.api;
 
+import static com.keendly.utils.ConfigUtils.*;
+
 import com.keendly.adaptor.Adaptor;
 import com.keendly.adaptor.AdaptorFactory;
 import com.keendly.adaptor.model.ExternalFeed;
@@ -21,59 +23,81 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Path("/feeds")
 public class FeedResource {
 
-    private UserDao userDao = new UserDao();
-    private SubscriptionDao subscriptionDao = new SubscriptionDao();
-    private DeliveryDao deliveryDao = new DeliveryDao();
-    private FeedMapper feedMapper = new FeedMapper();
+    private static final FeedMapper FEED_MAPPER = new FeedMapper();
+
+    private static final long DEADLINE_IN_MILLIS = parameter("FEEDS_DEADLINE_IN_MILLIS", 20000);
+    private static final long UNREAD_COUNT_GRACE_IN_MILLIS = parameter("FEEDS_UNREAD_COUNT_GRACE_IN_MILLIS", 1000);
+
+    private UserDao userDao;
+    private SubscriptionDao subscriptionDao;
+    private DeliveryDao deliveryDao;
+
+    public FeedResource() {
+        this(new UserDao(), new SubscriptionDao(), new DeliveryDao());
+    }
+
+    public FeedResource(UserDao userDao, SubscriptionDao subscriptionDao, DeliveryDao deliveryDao) {
+        this.userDao = userDao;
+        this.subscriptionDao = subscriptionDao;
+        this.deliveryDao = deliveryDao;
+    }
 
     @GET
     @Produces({ MediaType.APPLICATION_JSON })
     public Response getFeeds(@Context SecurityContext securityContext){
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
-        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findById(userId));
+        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findAccount(userId));
+
+        List<Feed> feeds;
+        try (RequestExecutor executor = new RequestExecutor("feeds", 4, DEADLINE_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+            CompletableFuture<List<ExternalFeed>> subscribedFeeds = executor.submit(adaptor::getFeeds);
+            CompletableFuture<Map<String, Integer>> unreadCounts = executor.submit(adaptor::getUnreadCount);
+            CompletableFuture<List<SubscriptionItem>> subscriptionItems =
+                executor.submit(() -> subscriptionDao.getSubscriptionItems(userId));
+            CompletableFuture<Map<String, Delivery>> lastDeliveries = subscribedFeeds.thenCompose(f ->
+                executor.submit(() -> deliveryDao.getLastDeliveries(userId,
+                    f.stream().map(ExternalFeed::getFeedId).collect(Collectors.toList()))));
+
+            feeds = toFeeds(executor.await(subscribedFeeds), executor.await(subscriptionItems),
+                executor.await(lastDeliveries),
+                // counts are nice to have, don't hold the response for them
+                executor.awaitOrDefault(unreadCounts, Collections.emptyMap(), UNREAD_COUNT_GRACE_IN_MILLIS,
+                    TimeUnit.MILLISECONDS));
+        }
 
-        List<ExternalFeed> subscribedFeeds = adaptor.getFeeds();
-        List<SubscriptionItem> subscriptionItems = subscriptionDao.getSubscriptionItems(userId);
-        List<String> feedIds = subscribedFeeds.stream().map(ExternalFeed::getFeedId).collect(Collectors.toList());
-        Map<String, Delivery> lastDeliveries = deliveryDao.getLastDeliveries(userId, feedIds);
-        Map<String, Integer> unreadCounts = adaptor.getUnreadCount(feedIds);
+        if (adaptor.getToken().isRefreshed()) {
+            userDao.updateToken(userId, adaptor.getToken().getAccessToken());
+        }
+        return Response.ok(feeds).build();
+    }
 
-        List<Feed> feeds = new ArrayList<>();
+    static List<Feed> toFeeds(List<ExternalFeed> subscribedFeeds, List<SubscriptionItem> subscriptionItems,
+                              Map<String, Delivery> lastDeliveries, Map<String, Integer> unreadCounts) {
+        Map<String, List<Subscription>> subscriptionsByFeed = subscriptionItems.stream()
+            .collect(Collectors.groupingBy(SubscriptionItem::getFeedId,
+                Collectors.mapping(item -> Subscription.builder()
+                    .id(item.getSubscription().getId())
+                    .time(item.getSubscription().getTime())
+                    .timezone(item.getSubscription().getTimezone())
+                    .build(), Collectors.toList())));
+
+        List<Feed> feeds = new ArrayList<>(subscribedFeeds.size());
         for (ExternalFeed subscribedFeed : subscribedFeeds) {
-            List<SubscriptionItem> feedSubscriptionItems = subscriptionItems.stream()
-                .filter(s -> s.getFeedId().equals(subscribedFeed.getFeedId()))
-                .collect(Collectors.toList());
-
-            List<Subscription> subscriptions = new ArrayList<>();
-            if (!feedSubscriptionItems.isEmpty()){
-                for (SubscriptionItem feedSubscriptionItem : feedSubscriptionItems){
-                    Subscription subscription = Subscription.builder()
-                        .id(feedSubscriptionItem.getSubscription().getId())
-                        .time(feedSubscriptionItem.getSubscription().getTime())
-                        .timezone(feedSubscriptionItem.getSubscription().getTimezone())
-                        .build();
-                    subscriptions.add(subscription);
-                }
-            }
-
-            Delivery lastDelivery = lastDeliveries.get(subscribedFeed.getFeedId());
-            Integer unreadCount = unreadCounts.get(subscribedFeed.getFeedId());
-
-            Feed feed = feedMapper.toModel(subscribedFeed, subscriptions, lastDelivery, unreadCount);
-            feeds.add(feed);
-
-            if (adaptor.getToken().isRefreshed()) {
-                userDao.updateToken(userId, adaptor.getToken().getAccessToken());
-            }
+            String feedId = subscribedFeed.getFeedId();
+            feeds.add(FEED_MAPPER.toModel(subscribedFeed, subscriptionsByFeed.getOrDefault(feedId, new ArrayList<>()),
+                lastDeliveries.get(feedId), unreadCounts.get(feedId)));
         }
-        return Response.ok(feeds).build();
+        return feeds;
     }
 
     @POST
@@ -81,7 +105,7 @@ public class FeedResource {
     @Consumes({ MediaType.APPLICATION_JSON })
     public Response markArticleRead(@Context SecurityContext securityContext, List<String> ids) {
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
-        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findById(userId));
+        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findAccount(userId));
 
         boolean success = adaptor.markArticleRead(ids);
         if (success) {
@@ -99,7 +123,7 @@ public class FeedResource {
     @Consumes({ MediaType.APPLICATION_JSON })
     public Response markArticleUnread(@Context SecurityContext securityContext, List<String> ids) {
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
-        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findById(userId));
+        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findAccount(userId));
 
         boolean success = adaptor.markArticleUnread(ids);
         if (success) {
@@ -117,7 +141,7 @@ public class FeedResource {
     @Consumes({ MediaType.APPLICATION_JSON })
     public Response saveArticle(@Context SecurityContext securityContext, List<String> ids) {
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
-        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findById(userId));
+        Adaptor adaptor = AdaptorFactory.getInstance(userDao.findAccount(userId));
 
         boolean success = adaptor.saveArticle(ids);
         if (success) {
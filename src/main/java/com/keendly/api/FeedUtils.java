@@ -1,46 +1,64 @@
 package com.keendly.api;
 
 import com.keendly.adaptor.model.FeedEntry;
+import lombok.Value;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.PriorityQueue;
 
 public class FeedUtils {
 
-    public static Map<String, List<FeedEntry>> getNewest(Map<String, List<FeedEntry>> feeds, int number){
-        Map<Date, String> sorted = new TreeMap<>((Comparator<Date>) (o1, o2) -> o2.compareTo(o1));
-
-        feeds.entrySet().stream().forEach(e -> {
-            e.getValue().stream().forEach(entry -> {
-                sorted.put(entry.getPublished(), e.getKey() + ":" + entry.getId());
-            });
-        });
+    /**
+     * Newer first, entries without a publish date are the oldest. Ties go to the feed with the smaller id and then
+     * to the entry which comes first in its feed, so the result doesn't depend on the order feeds are iterated.
+     */
+    private static final Comparator<Candidate> NEWEST_FIRST =
+        Comparator.comparing((Candidate c) -> c.getEntry().getPublished(),
+            Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Candidate::getFeedId)
+            .thenComparingInt(Candidate::getIndex);
 
+    /**
+     * Keeps the {@code number} newest entries of all the feeds, in their original order within each feed. Feeds
+     * left with no entries are left out.
+     */
+    public static Map<String, List<FeedEntry>> getNewest(Map<String, List<FeedEntry>> feeds, int number){
         Map<String, List<FeedEntry>> ret = new HashMap<>();
+        if (number <= 0){
+            return ret;
+        }
 
-        List<String> sortedIds = sorted.values().stream().limit(number).collect(Collectors.toList());
-
-        for (Map.Entry<String, List<FeedEntry>> entry : feeds.entrySet()){
-            for (FeedEntry feedEntry : entry.getValue()){
-                if (sortedIds.contains(entry.getKey() + ":" + feedEntry.getId())){
-                    if (ret.containsKey(entry.getKey())){
-                        ret.get(entry.getKey()).add(feedEntry);
-                    } else {
-                        List<FeedEntry> entries = new ArrayList<>();
-                        entries.add(feedEntry);
-                        ret.put(entry.getKey(), entries);
-                    }
+        // the oldest of the newest found so far at the head
+        PriorityQueue<Candidate> newest = new PriorityQueue<>(number, NEWEST_FIRST.reversed());
+        for (Map.Entry<String, List<FeedEntry>> feed : feeds.entrySet()){
+            List<FeedEntry> entries = feed.getValue();
+            for (int i = 0; i < entries.size(); i++){
+                Candidate candidate = new Candidate(feed.getKey(), i, entries.get(i));
+                if (newest.size() < number){
+                    newest.add(candidate);
+                } else if (NEWEST_FIRST.compare(candidate, newest.peek()) < 0){
+                    newest.poll();
+                    newest.add(candidate);
                 }
             }
-
         }
 
+        List<Candidate> kept = new ArrayList<>(newest);
+        kept.sort(Comparator.comparing(Candidate::getFeedId).thenComparingInt(Candidate::getIndex));
+        for (Candidate candidate : kept){
+            ret.computeIfAbsent(candidate.getFeedId(), feedId -> new ArrayList<>()).add(candidate.getEntry());
+        }
         return ret;
     }
+
+    @Value
+    private static class Candidate {
+        private String feedId;
+        private int index;
+        private FeedEntry entry;
+    }
 }
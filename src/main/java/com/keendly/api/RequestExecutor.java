@@ -0,0 +1,85 @@
+package com.keendly.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent calls of a single request concurrently, all of them bound by the request's deadline.
+ * Whatever is still running when it's closed gets interrupted.
+ */
+public class RequestExecutor implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestExecutor.class);
+
+    private final ExecutorService executor;
+    private final long deadline;
+
+    public RequestExecutor(String name, int threads, long timeout, TimeUnit unit) {
+        this.executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        this.deadline = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    /**
+     * Waits for a result needed to complete the request, rethrows its failure.
+     *
+     * @throws RuntimeException if the deadline passes first
+     */
+    public <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new RuntimeException("Request deadline exceeded", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Waits for an optional result at most {@code maxWait}, and never past the deadline.
+     *
+     * @return the result, or {@code fallback} if it fails or doesn't come in time
+     */
+    public <T> T awaitOrDefault(CompletableFuture<T> future, T fallback, long maxWait, TimeUnit unit) {
+        try {
+            return future.get(Math.min(remainingNanos(), unit.toNanos(maxWait)), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            LOG.warn("Gave up waiting for optional result");
+        } catch (ExecutionException e) {
+            LOG.warn("Optional result failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fallback;
+    }
+
+    private long remainingNanos() {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
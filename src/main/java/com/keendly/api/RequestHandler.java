@@ -1,14 +1,18 @@
 package com.keendly.api;
 
+import static com.keendly.utils.ConfigUtils.*;
+
 import com.jrestless.aws.gateway.GatewayFeature;
 import com.jrestless.aws.gateway.handler.GatewayRequestObjectHandler;
 import com.jrestless.core.filter.cors.CorsFilter;
+import com.keendly.markread.MarkReadWorker;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.TimeUnit;
 
 public class RequestHandler extends GatewayRequestObjectHandler {
 
@@ -27,6 +31,7 @@ public class RequestHandler extends GatewayRequestObjectHandler {
         ResourceConfig config = new ResourceConfig()
             .register(GatewayFeature.class)
             .register(corsFilter)
+            .register(UserContextFilter.class)
             .packages("com.keendly.api");
 
         init(config);
@@ -53,5 +58,8 @@ public class RequestHandler extends GatewayRequestObjectHandler {
         HttpServer server =
             GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), config);
         server.start();
+
+        // in lambda MarkReadHandler is scheduled instead
+        new MarkReadWorker().runEvery(parameter("MARK_READ_INTERVAL_SECONDS", 30), TimeUnit.SECONDS);
     }
 }
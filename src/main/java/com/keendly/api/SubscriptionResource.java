@@ -2,10 +2,15 @@ package com.keendly.api;
 
 import static com.keendly.premium.PremiumUtils.getPremiumStatus;
 
+import com.google.common.base.Suppliers;
+import com.keendly.auth.UserContext;
 import com.keendly.dao.SubscriptionDao;
 import com.keendly.dao.UserDao;
+import com.keendly.model.Page;
+import com.keendly.model.Premium;
 import com.keendly.model.Subscription;
 import com.keendly.model.User;
+import com.keendly.premium.PremiumUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sun.util.calendar.ZoneInfo;
@@ -23,6 +28,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @Path("/subscriptions")
 public class SubscriptionResource {
@@ -39,14 +46,38 @@ public class SubscriptionResource {
     public Response getSubscriptions(@Context SecurityContext securityContext,
         @QueryParam("page") String page,
         @QueryParam("pageSize") String pageSize,
-        @QueryParam("q") String query) {
+        @QueryParam("q") String query,
+        @QueryParam("before") String before,
+        @QueryParam("limit") String limit) {
         List<Subscription> subscriptions;
         if (query != null) {
             subscriptions = subscriptionDao.getDailySubscriptionsToDeliver();
-        } else {
+        } else if (page != null) {
             Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
             subscriptions =
                 subscriptionDao.getSubscriptions(userId, Integer.valueOf(page), Integer.valueOf(pageSize));
+        } else {
+            Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
+            int pageLimit;
+            Long beforeId;
+            try {
+                pageLimit = Page.limit(limit);
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Error.WRONG_LIMIT.asEntity(limit))
+                    .build();
+            }
+            try {
+                beforeId = before != null ? Page.fromCursor(before) : null;
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Error.WRONG_CURSOR.asEntity(before))
+                    .build();
+            }
+            Page<Subscription> subscriptionsPage = subscriptionDao.getSubscriptions(userId, beforeId, pageLimit);
+            return Response.ok(subscriptionsPage.getItems())
+                .header(Page.NEXT_CURSOR_HEADER, subscriptionsPage.getNextCursor())
+                .build();
         }
         return Response.ok(subscriptions).build();
     }
@@ -63,10 +94,13 @@ public class SubscriptionResource {
     @Produces({ MediaType.APPLICATION_JSON })
     public Response createSubscription(@Context SecurityContext securityContext, Subscription subscription) {
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
+        // the context can be behind, so the user is loaded unless the context lets the request through
+        Optional<UserContext> context = UserContext.of(securityContext);
+        Supplier<User> user = Suppliers.memoize(() -> userDAO.findAccount(userId));
 
         // validate user
-        User user = userDAO.findById(userId);
-        if (user.getDeliveryEmail().isEmpty()) {
+        if (!context.map(UserContext::isDeliveryEmailConfigured).orElse(false)
+            && (user.get().getDeliveryEmail() == null || user.get().getDeliveryEmail().isEmpty())) {
             LOG.error("Delivery email not configured for user {}", userId);
             return Response.status(Response.Status.BAD_REQUEST)
                 .entity(Error.DELIVERY_EMAIL_NOT_CONFIGURED.asEntity())
@@ -74,7 +108,8 @@ public class SubscriptionResource {
         }
 
         // check if user has active premium
-        if (!getPremiumStatus(user).isActive()) {
+        if (!context.flatMap(PremiumUtils::getPremiumStatus).map(Premium::isActive).orElse(false)
+            && !getPremiumStatus(user.get()).isActive()) {
             LOG.error("Scheduled deliveries are available for Premium users");
             return Response.status(Response.Status.PAYMENT_REQUIRED)
                 .entity(Error.NO_PREMIUM.asEntity())
@@ -0,0 +1,75 @@
+package com.keendly.api;
+
+import com.jrestless.aws.gateway.io.GatewayRequest;
+import com.keendly.auth.AuthorizerHandler;
+import com.keendly.auth.UserContext;
+import io.jsonwebtoken.impl.TextCodec;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.SecurityContext;
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Makes the {@link UserContext} passed by the authorizer the request's principal, see
+ * {@link UserContext#of(SecurityContext)}. Requests with no valid context are left as they are.
+ */
+@Priority(Priorities.AUTHORIZATION)
+public class UserContextFilter implements ContainerRequestFilter {
+
+    private static final byte[] KEY = AuthorizerHandler.KEY != null
+        ? UserContext.contextKey(TextCodec.BASE64.decode(AuthorizerHandler.KEY)) : null;
+
+    @Inject
+    private Provider<GatewayRequest> gatewayRequest;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        SecurityContext securityContext = requestContext.getSecurityContext();
+        GatewayRequest request = gatewayRequest.get();
+        if (KEY == null || securityContext == null || securityContext.getUserPrincipal() == null || request == null
+            || request.getRequestContext() == null) {
+            return;
+        }
+        Map<String, Object> authorizer = request.getRequestContext().getAuthorizer();
+        UserContext.fromAuthorizerContext(authorizer, securityContext.getUserPrincipal().getName(), KEY)
+            .ifPresent(userContext -> requestContext.setSecurityContext(new UserSecurityContext(securityContext,
+                userContext)));
+    }
+
+    private static class UserSecurityContext implements SecurityContext {
+
+        private final SecurityContext delegate;
+        private final UserContext userContext;
+
+        UserSecurityContext(SecurityContext delegate, UserContext userContext) {
+            this.delegate = delegate;
+            this.userContext = userContext;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return userContext;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return delegate.isUserInRole(role);
+        }
+
+        @Override
+        public boolean isSecure() {
+            return delegate.isSecure();
+        }
+
+        @Override
+        public String getAuthenticationScheme() {
+            return delegate.getAuthenticationScheme();
+        }
+    }
+}
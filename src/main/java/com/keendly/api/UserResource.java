@@ -137,6 +137,7 @@ public class UserResource {
         try {
             com.stripe.model.Subscription subscription = com.stripe.model.Subscription.create(params);
             userDAO.setPremiumSubscriptionId(Long.valueOf(userId), subscription.getId());
+            invalidatePremiumStatus(user);
         } catch (Exception e) {
             throw new RuntimeException("Couldn't create stripe subscription for user " + userId, e);
         }
@@ -170,12 +171,14 @@ public class UserResource {
     @Path("/self/premium")
     public Response deletePremium(@Context SecurityContext securityContext) {
         Long userId = Long.valueOf(securityContext.getUserPrincipal().getName());
-        String subscriptionId = userDAO.findById(userId).getPremiumSubscriptionId();
+        User user = userDAO.findById(userId);
+        String subscriptionId = user.getPremiumSubscriptionId();
         try {
             com.stripe.model.Subscription sub = com.stripe.model.Subscription.retrieve(subscriptionId);
             Map<String, Object> params = new HashMap<>();
             params.put("at_period_end", Boolean.TRUE);
             sub.cancel(params);
+            invalidatePremiumStatus(user);
             return Response.ok().build();
         } catch (Exception e) {
             throw new RuntimeException("Couldn't cancel subscription " + subscriptionId + " for user " + userId, e);
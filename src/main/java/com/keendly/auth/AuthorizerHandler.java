@@ -2,63 +2,149 @@ package com.keendly.auth;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.keendly.dao.UserDao;
+import com.keendly.model.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.impl.TextCodec;
+import lombok.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
 
+/**
+ * Allows requests with a valid token. Tokens verified before are kept by their hash until they expire, so a
+ * warm authorizer only verifies the signature of a token on its first use. Allowed requests get the signed
+ * {@link UserContext} of the user, API Gateway caches it with the policy.
+ */
 public class AuthorizerHandler implements RequestHandler<Map<String, Object>, Map<String, Object>> {
 
     public static final String KEY = System.getenv("AUTH_KEY");
 
     private static final Logger LOG = LoggerFactory.getLogger(AuthorizerHandler.class);
 
+    private static final int MAX_CACHED_TOKENS = 10_000;
+    // tokens without expiration are verified again after that
+    private static final long MAX_CACHED_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String DENIED_PRINCIPAL = "-1";
+    private static final Map<String, Object> ALLOW = policyDocument("Allow");
+    private static final Map<String, Object> DENY = policyDocument("Deny");
+
+    private final byte[] contextKey;
+    private final JwtParser parser;
+    private final Cache<String, VerifiedToken> verified;
+    private final LongSupplier clock;
+    private final LongFunction<User> users;
+
+    public AuthorizerHandler() {
+        this(KEY, MAX_CACHED_TOKENS, System::currentTimeMillis, new UserDao()::findAccount);
+    }
+
+    AuthorizerHandler(String key, int maxCachedTokens, LongSupplier clock, LongFunction<User> users) {
+        // decoded once instead of on every parse
+        byte[] signingKey = TextCodec.BASE64.decode(Objects.requireNonNull(key, "AUTH_KEY not set"));
+        this.parser = Jwts.parser().setSigningKey(signingKey);
+        this.contextKey = UserContext.contextKey(signingKey);
+        this.verified = CacheBuilder.newBuilder()
+            .maximumSize(maxCachedTokens)
+            .expireAfterWrite(MAX_CACHED_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+        this.clock = clock;
+        this.users = users;
+    }
+
     @Override
     public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
-        LOG.debug(AuthorizerHandler.class.getSimpleName() + " invoked");
-        String resource = (String) event.get("methodArn");
         String token = (String) event.get("authorizationToken");
+        if (token == null) {
+            return response(DENIED_PRINCIPAL, DENY);
+        }
+        String userId;
+        try {
+            userId = getUserId(token);
+        } catch (Exception e) {
+            // neither the token nor the key are logged
+            LOG.info("Token rejected: {}", e.toString());
+            return response(DENIED_PRINCIPAL, DENY);
+        }
+        Map<String, Object> response = response(userId, ALLOW);
+        Map<String, Object> userContext = userContext(userId);
+        if (userContext != null) {
+            response.put("context", userContext);
+        }
+        return response;
+    }
+
+    public String getUserId(String token) {
+        String hash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        VerifiedToken verifiedToken = verified.getIfPresent(hash);
+        if (verifiedToken == null) {
+            verifiedToken = verify(token);
+            verified.put(hash, verifiedToken);
+        } else if (clock.getAsLong() >= verifiedToken.getExpiresAt()) {
+            verified.invalidate(hash);
+            throw new IllegalArgumentException("Token expired");
+        }
+        return verifiedToken.getUserId();
+    }
+
+    private VerifiedToken verify(String token) {
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        return new VerifiedToken(claims.get("userId", String.class),
+            expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+    }
+
+    private Map<String, Object> userContext(String userId) {
         try {
-            if (token == null){
-                return generatePolicy("-1", "Deny", resource);
+            long id = Long.parseLong(userId);
+            if (id < 0) {
+                // client credentials
+                return null;
             }
-            LOG.info("Received token " + token);
-            String userId = getUserId(token);
-            return generatePolicy(userId, "Allow", resource);
+            User user = users.apply(id);
+            return user != null ? UserContext.of(user).toAuthorizerContext(contextKey) : null;
         } catch (Exception e) {
-            LOG.warn("Exception authenticating", e);
-            return generatePolicy("-1", "Deny", resource);
+            // resources load the user themselves then
+            LOG.warn("Couldn't get context of user {}: {}", userId, e.toString());
+            return null;
         }
     }
 
-    private Map<String, Object> generatePolicy(String principalId, String effect, String resource) {
-        Map<String, Object> authResponse = new HashMap();
-        authResponse.put("principalId", principalId);
-        Map<String, Object> policyDocument = new HashMap();
-        policyDocument.put("Version", "2012-10-17"); // default version
-        Map<String, String> statementOne = new HashMap();
-        statementOne.put("Action", "execute-api:Invoke"); // default action
-        statementOne.put("Effect", effect);
-        statementOne.put("Resource", "arn:aws:execute-api:*:*:*");
-        policyDocument.put("Statement", new Object[] {statementOne});
-        authResponse.put("policyDocument", policyDocument);
-//        if ("Allow".equals(effect)) {
-//            Map<String, Object> context = new HashMap();
-//            context.put("key", "value");
-//            context.put("numKey", Long.valueOf(1L));
-//            context.put("boolKey", Boolean.TRUE);
-//            authResponse.put("context", context);
-//        }
-        return authResponse;
+    private static Map<String, Object> response(String principalId, Map<String, Object> policyDocument) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("principalId", principalId);
+        response.put("policyDocument", policyDocument);
+        return response;
     }
 
-    public String getUserId(String token) {
-        LOG.info("signing key: " + KEY);
+    private static Map<String, Object> policyDocument(String effect) {
+        return ImmutableMap.of(
+            "Version", "2012-10-17", // default version
+            "Statement", ImmutableList.of(ImmutableMap.of(
+                "Action", "execute-api:Invoke", // default action
+                "Effect", effect,
+                "Resource", "arn:aws:execute-api:*:*:*")));
+    }
 
-        Claims claims = Jwts.parser().setSigningKey(KEY).parseClaimsJws(token).getBody();
-        return claims.get("userId", String.class);
+    @Value
+    private static class VerifiedToken {
+        private String userId;
+        private long expiresAt;
     }
 }
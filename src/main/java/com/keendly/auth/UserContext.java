@@ -0,0 +1,165 @@
+package com.keendly.auth;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.keendly.model.Premium;
+import com.keendly.model.Provider;
+import com.keendly.model.User;
+import lombok.Builder;
+import lombok.Value;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.core.SecurityContext;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.Principal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * What resources need to know about the authorized user, so they don't have to load it. {@link AuthorizerHandler}
+ * passes it in the authorizer context, signed, as resources can't tell who else put something there.
+ */
+@Value
+@Builder
+public class UserContext implements Principal {
+
+    private static final String PRINCIPAL_ID = "principalId";
+    private static final String PROVIDER = "provider";
+    private static final String HAS_DELIVERY_EMAIL = "hasDeliveryEmail";
+    private static final String FORCE_PREMIUM = "forcePremium";
+    private static final String PREMIUM_ACTIVE = "premiumActive";
+    private static final String PREMIUM_CANCELLABLE = "premiumCancellable";
+    private static final String PREMIUM_EXPIRES = "premiumExpires";
+    private static final String PREMIUM_CHECKED_AT = "premiumCheckedAt";
+    private static final String SIGNATURE = "signature";
+    private static final String HMAC = "HmacSHA256";
+
+    // signed in that order, principal id first
+    private static final List<String> FIELDS = ImmutableList.of(PROVIDER, HAS_DELIVERY_EMAIL, FORCE_PREMIUM,
+        PREMIUM_ACTIVE, PREMIUM_CANCELLABLE, PREMIUM_EXPIRES, PREMIUM_CHECKED_AT);
+
+    private String userId;
+    private Provider provider;
+    private boolean deliveryEmailConfigured;
+    private boolean forcePremium;
+    // premium status stored in the user's row, null if not checked yet
+    private Premium cachedPremium;
+    private Date premiumCheckedAt;
+
+    /**
+     * Key signing contexts, derived from the one signing the tokens so that neither signature can stand in for
+     * the other.
+     */
+    public static byte[] contextKey(byte[] authKey) {
+        return hmac(authKey, "user-context".getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static UserContext of(User user) {
+        UserContextBuilder builder = UserContext.builder()
+            .userId(Long.toString(user.getId()))
+            .provider(user.getProvider())
+            .deliveryEmailConfigured(user.getDeliveryEmail() != null && !user.getDeliveryEmail().isEmpty())
+            .forcePremium(user.getForcePremium() != null && user.getForcePremium());
+        if (user.getCachedPremium() != null && user.getPremiumCheckedAt() != null) {
+            builder.cachedPremium(user.getCachedPremium()).premiumCheckedAt(user.getPremiumCheckedAt());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Context of the user authorized for the request, empty if the request came without one.
+     */
+    public static Optional<UserContext> of(SecurityContext securityContext) {
+        Principal principal = securityContext.getUserPrincipal();
+        return principal instanceof UserContext ? Optional.of((UserContext) principal) : Optional.empty();
+    }
+
+    @Override
+    public String getName() {
+        return userId;
+    }
+
+    /**
+     * Authorizer context, values are strings as that's how API Gateway passes them on anyway.
+     */
+    public Map<String, Object> toAuthorizerContext(byte[] key) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(PROVIDER, provider.name());
+        fields.put(HAS_DELIVERY_EMAIL, Boolean.toString(deliveryEmailConfigured));
+        fields.put(FORCE_PREMIUM, Boolean.toString(forcePremium));
+        if (cachedPremium != null) {
+            fields.put(PREMIUM_ACTIVE, Boolean.toString(cachedPremium.isActive()));
+            fields.put(PREMIUM_CANCELLABLE, Boolean.toString(cachedPremium.isCancellable()));
+            if (cachedPremium.getExpires() != null) {
+                fields.put(PREMIUM_EXPIRES, Long.toString(cachedPremium.getExpires().getTime()));
+            }
+            fields.put(PREMIUM_CHECKED_AT, Long.toString(premiumCheckedAt.getTime()));
+        }
+
+        Map<String, Object> context = new HashMap<>(fields);
+        context.put(SIGNATURE, sign(userId, fields, key));
+        return context;
+    }
+
+    /**
+     * @return empty if the context is missing, isn't signed with the key or is signed for another principal
+     */
+    public static Optional<UserContext> fromAuthorizerContext(Map<String, Object> context, String principalId,
+                                                              byte[] key) {
+        if (context == null || principalId == null || context.get(SIGNATURE) == null) {
+            return Optional.empty();
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (String field : FIELDS) {
+            if (context.get(field) != null) {
+                fields.put(field, String.valueOf(context.get(field)));
+            }
+        }
+        byte[] expected = sign(principalId, fields, key).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = String.valueOf(context.get(SIGNATURE)).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return Optional.empty();
+        }
+
+        UserContextBuilder builder = UserContext.builder()
+            .userId(principalId)
+            .provider(Provider.valueOf(fields.get(PROVIDER)))
+            .deliveryEmailConfigured(Boolean.parseBoolean(fields.get(HAS_DELIVERY_EMAIL)))
+            .forcePremium(Boolean.parseBoolean(fields.get(FORCE_PREMIUM)));
+        if (fields.containsKey(PREMIUM_CHECKED_AT)) {
+            builder
+                .cachedPremium(Premium.builder()
+                    .active(Boolean.parseBoolean(fields.get(PREMIUM_ACTIVE)))
+                    .cancellable(Boolean.parseBoolean(fields.get(PREMIUM_CANCELLABLE)))
+                    .expires(fields.containsKey(PREMIUM_EXPIRES)
+                        ? new Date(Long.parseLong(fields.get(PREMIUM_EXPIRES))) : null)
+                    .build())
+                .premiumCheckedAt(new Date(Long.parseLong(fields.get(PREMIUM_CHECKED_AT))));
+        }
+        return Optional.of(builder.build());
+    }
+
+    private static String sign(String principalId, Map<String, String> fields, byte[] key) {
+        StringBuilder payload = new StringBuilder(PRINCIPAL_ID).append('=').append(principalId);
+        for (String field : FIELDS) {
+            payload.append('\n').append(field).append('=').append(fields.getOrDefault(field, ""));
+        }
+        return BaseEncoding.base64Url().omitPadding()
+            .encode(hmac(key, payload.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(key, HMAC));
+            return mac.doFinal(data);
+        } catch (Exception e) {
+            throw new RuntimeException("Couldn't sign user context", e);
+        }
+    }
+}
@@ -4,13 +4,17 @@ import static com.keendly.utils.DbUtils.*;
 
 import com.keendly.model.Delivery;
 import com.keendly.model.DeliveryItem;
+import com.keendly.model.Page;
 import com.keendly.model.Subscription;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.Query;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -19,6 +23,15 @@ public class DeliveryDao {
 
     private static String DELIVERY_SELECT = "select id, created, last_modified, date, errordescription, subscription_id from delivery";
 
+    // last delivery of each of the requested feeds, uses deliveryitem (feed_id, delivery_id) index
+    static final String LAST_DELIVERIES_SELECT = new StringBuilder()
+        .append("select distinct on (di.feed_id) ")
+        .append("di.feed_id, d.id, d.created, d.last_modified, d.date, d.errordescription ")
+        .append("from deliveryitem di join delivery d on d.id = di.delivery_id ")
+        .append("where di.feed_id = ANY(:feedIds) and d.user_id = :userId and d.date is not null ")
+        .append("order by di.feed_id, d.date desc")
+        .toString();
+
     private Environment environment;
 
     public DeliveryDao() {
@@ -42,7 +55,8 @@ public class DeliveryDao {
                     .id((Long) map.get("subscription_id"))
                     .build();
             }
-            List<DeliveryItem> items = getDeliveryItems(handle, id);
+            List<DeliveryItem> items = getDeliveryItems(handle, Collections.singletonList(id))
+                .getOrDefault(id, new ArrayList<>());
             return mapToDelivery(map, items, subscription);
         }
     }
@@ -76,14 +90,46 @@ public class DeliveryDao {
         }
     }
 
-    private List<DeliveryItem> getDeliveryItems(Handle handle, Long deliveryId) {
+    /**
+     * Keyset paginated deliveries, newest first.
+     *
+     * @param beforeId id from the cursor returned with the previous page, {@code null} for the first page
+     */
+    public Page<Delivery> getDeliveries(Long userId, Long beforeId, int limit) {
+        try (Handle handle = getDB(environment).open()) {
+            Query<Map<String, Object>> query =
+                handle.createQuery(DELIVERY_SELECT + " where user_id = :userId"
+                    + (beforeId != null ? " and id < :beforeId" : "") + " order by id desc limit :limit")
+                    .bind("userId", userId)
+                    .bind("limit", limit + 1);
+            if (beforeId != null) {
+                query.bind("beforeId", beforeId);
+            }
+            List<Map<String, Object>> mapList = query.list();
+
+            String nextCursor = null;
+            if (mapList.size() > limit) {
+                mapList = mapList.subList(0, limit);
+                nextCursor = Page.toCursor((Long) mapList.get(limit - 1).get("id"));
+            }
+            return Page.<Delivery>builder()
+                .items(mapToDeliveryList(handle, mapList))
+                .nextCursor(nextCursor)
+                .build();
+        }
+    }
+
+    private Map<Long, List<DeliveryItem>> getDeliveryItems(Handle handle, List<Long> deliveryIds) {
+        Map<Long, List<DeliveryItem>> items = new HashMap<>();
+        if (deliveryIds.isEmpty()) {
+            return items;
+        }
         List<Map<String, Object>> itemsMaps =
-            handle.createQuery("select id, feed_id, title, full_article, mark_as_read, with_images "
-                + "from deliveryitem where delivery_id = :deliveryId")
-                .bind("deliveryId", deliveryId)
+            handle.createQuery("select id, feed_id, title, full_article, mark_as_read, with_images, delivery_id "
+                + "from deliveryitem where delivery_id = ANY(:deliveryIds) order by id")
+                .bind("deliveryIds", idArray(deliveryIds))
                 .list();
 
-        List<DeliveryItem> items = new ArrayList<>();
         for (Map<String, Object> item : itemsMaps) {
             DeliveryItem i = DeliveryItem.builder()
                 .feedId((String) item.get("feed_id"))
@@ -94,7 +140,7 @@ public class DeliveryDao {
                 .includeImages((Boolean) item.get("with_images"))
                 .build();
 
-            items.add(i);
+            items.computeIfAbsent((Long) item.get("delivery_id"), id -> new ArrayList<>()).add(i);
         }
 
         return items;
@@ -114,9 +160,12 @@ public class DeliveryDao {
     }
 
     private List<Delivery> mapToDeliveryList(Handle handle, List<Map<String, Object>> deliveryMaps){
+        List<Long> ids = deliveryMaps.stream().map(map -> (Long) map.get("id")).collect(Collectors.toList());
+        Map<Long, List<DeliveryItem>> itemsByDelivery = getDeliveryItems(handle, ids);
+
         List<Delivery> deliveries = new ArrayList<>();
         for (Map<String, Object> map : deliveryMaps) {
-            List<DeliveryItem> items = getDeliveryItems(handle, (Long) map.get("id"));
+            List<DeliveryItem> items = itemsByDelivery.getOrDefault((Long) map.get("id"), new ArrayList<>());
 
             Delivery delivery = mapToDelivery(map, items, null);
 
@@ -127,20 +176,14 @@ public class DeliveryDao {
 
     public Map<String, Delivery> getLastDeliveries(Long userId, List<String> feedIds) {
         Map<String, Delivery> ret = new HashMap<>();
+        if (feedIds.isEmpty()) {
+            return ret;
+        }
         try (Handle handle = getDB(environment).open()) {
-            String query = new StringBuilder()
-                .append("select ")
-                .append("di.feed_id, d.id, d.created, d.last_modified, d.date, d.errordescription ")
-                .append("from deliveryitem di join delivery d on d.id = di.delivery_id ")
-                .append("where d.user_id = :userId ")
-                .append("and (di.feed_id, d.date) IN ")
-                .append("(select di.feed_id, max(d.date) from delivery d join deliveryitem di on di.delivery_id = d.id where d.user_id = :userId group by di.feed_id)")
-                .toString();
-
-            String feedIdsString = String.join(",", feedIds.stream().map(feedId -> "'" + feedId + "'").collect(Collectors.toList()));
             List<Map<String, Object>> list =
-                handle.createQuery(String.format(query, feedIdsString))
+                handle.createQuery(LAST_DELIVERIES_SELECT)
                     .bind("userId", userId)
+                    .bind("feedIds", textArray(feedIds))
                     .list();
 
             for (Map<String, Object> item : list) {
@@ -178,7 +221,8 @@ public class DeliveryDao {
         try (Handle handle = getDB(environment).open()) {
             handle.begin();
 
-            Long deliveryId = nextId(handle);
+            Iterator<Long> ids = nextIds(handle, 1 + delivery.getItems().size());
+            Long deliveryId = ids.next();
             Date now = new Date();
 
             handle.createStatement("insert into delivery (id, created, last_modified, manual, user_id, subscription_id, errordescription) values (:id, :now, :now, :manual, :userId, :subscriptionId, :error)")
@@ -190,21 +234,26 @@ public class DeliveryDao {
                 .bind("error", delivery.getError())
                 .execute();
 
-            for (DeliveryItem item : delivery.getItems()) {
-                Long deliveryItemId = nextId(handle);
-
-                handle.createStatement("insert into deliveryitem "
+            if (!delivery.getItems().isEmpty()) {
+                PreparedBatch batch = handle.prepareBatch("insert into deliveryitem "
                     + "(id, created, last_modified, title, feed_id, with_images, mark_as_read, full_article, delivery_id) values "
-                    + "(:id, :now, :now, :title, :feedId, :includeImages, :markAsRead, :fullArticle, :deliveryId)")
-                    .bind("id", deliveryItemId)
-                    .bind("now", now)
-                    .bind("title", item.getTitle())
-                    .bind("feedId", item.getFeedId())
-                    .bind("includeImages", item.getIncludeImages())
-                    .bind("markAsRead", item.getMarkAsRead())
-                    .bind("fullArticle", item.getFullArticle())
-                    .bind("deliveryId", deliveryId)
-                    .execute();
+                    + "(:id, :now, :now, :title, :feedId, :includeImages, :markAsRead, :fullArticle, :deliveryId)");
+                for (DeliveryItem item : delivery.getItems()) {
+                    batch.add()
+                        .bind("id", ids.next())
+                        .bind("now", now)
+                        .bind("title", item.getTitle())
+                        .bind("feedId", item.getFeedId())
+                        .bind("includeImages", item.getIncludeImages())
+                        .bind("markAsRead", item.getMarkAsRead())
+                        .bind("fullArticle", item.getFullArticle())
+                        .bind("deliveryId", deliveryId);
+                }
+                batch.execute();
+            }
+
+            if (delivery.getSubscription() != null) {
+                SubscriptionDao.scheduleNextDelivery(handle, delivery.getSubscription().getId(), now);
             }
 
             handle.commit();
@@ -221,13 +270,25 @@ public class DeliveryDao {
         }
     }
 
+    /**
+     * Stores the delivery's outcome and, if it was delivered, a job marking its feeds as read, see
+     * {@link MarkReadJobDao}.
+     */
     public void setDeliveryFinished(Long deliveryId, Date deliveryDate, String error) {
         try (Handle handle = getDB(environment).open()) {
+            handle.begin();
+
             handle.createStatement("update delivery set date=:date, errordescription=:error where id=:id")
                 .bind("id", deliveryId)
                 .bind("date", deliveryDate)
                 .bind("error", error)
                 .execute();
+
+            if (error == null && deliveryDate != null) {
+                MarkReadJobDao.enqueue(handle, deliveryId, deliveryDate);
+            }
+
+            handle.commit();
         }
     }
 }
@@ -0,0 +1,73 @@
+package com.keendly.dao;
+
+import static com.keendly.utils.DbUtils.*;
+
+import com.keendly.model.Provider;
+import lombok.Value;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+
+public class FeedCacheDao {
+
+    private Environment environment;
+
+    public FeedCacheDao() {
+        this(defaultEnvironment());
+    }
+
+    public FeedCacheDao(Environment environment) {
+        this.environment = environment;
+    }
+
+    public Optional<Entry> find(Long userId, Provider provider, String kind) {
+        try (Handle handle = getDB(environment).open()) {
+
+            Map<String, Object> map =
+                handle.createQuery("select value, expires_at from feedcache "
+                    + "where user_id = :userId and provider = :provider and kind = :kind and expires_at > now()")
+                    .bind("userId", userId)
+                    .bind("provider", provider.name())
+                    .bind("kind", kind)
+                    .first();
+
+            if (map == null || map.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(new Entry((String) map.get("value"), (Date) map.get("expires_at")));
+        }
+    }
+
+    public void put(Long userId, Provider provider, String kind, String value, Date expiresAt) {
+        try (Handle handle = getDB(environment).open()) {
+            handle.createStatement("insert into feedcache (user_id, provider, kind, value, expires_at) "
+                + "values (:userId, :provider, :kind, :value, :expiresAt) "
+                + "on conflict (user_id, provider, kind) do update set value = excluded.value, expires_at = excluded.expires_at")
+                .bind("userId", userId)
+                .bind("provider", provider.name())
+                .bind("kind", kind)
+                .bind("value", value)
+                .bind("expiresAt", expiresAt)
+                .execute();
+        }
+    }
+
+    public void delete(Long userId, Provider provider, String kind) {
+        try (Handle handle = getDB(environment).open()) {
+            handle.createStatement("delete from feedcache "
+                + "where user_id = :userId and provider = :provider and kind = :kind")
+                .bind("userId", userId)
+                .bind("provider", provider.name())
+                .bind("kind", kind)
+                .execute();
+        }
+    }
+
+    @Value
+    public static class Entry {
+        private String value;
+        private Date expiresAt;
+    }
+}
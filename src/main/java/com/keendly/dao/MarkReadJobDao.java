@@ -0,0 +1,140 @@
+package com.keendly.dao;
+
+import static com.keendly.utils.DbUtils.*;
+
+import lombok.Builder;
+import lombok.Value;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Outbox of feeds to mark as read after deliveries, jobs are added in the transaction finishing the delivery and
+ * processed later by {@link com.keendly.markread.MarkReadWorker}.
+ */
+public class MarkReadJobDao {
+
+    private Environment environment;
+
+    public MarkReadJobDao() {
+        this(defaultEnvironment());
+    }
+
+    public MarkReadJobDao(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Adds a job marking feeds of the delivery's items with {@code markAsRead} set, unless there are none or the
+     * delivery has a job already.
+     */
+    public static void enqueue(Handle handle, Long deliveryId, Date markBefore) {
+        handle.createStatement("insert into markreadjob "
+            + "(id, delivery_id, user_id, mark_before, attempts, next_attempt_at, created) "
+            + "select nextval('hibernate_sequence'), d.id, d.user_id, :markBefore, 0, now(), now() from delivery d "
+            + "where d.id = :deliveryId "
+            + "and exists (select 1 from deliveryitem di where di.delivery_id = d.id and di.mark_as_read) "
+            + "on conflict (delivery_id) do nothing")
+            .bind("deliveryId", deliveryId)
+            .bind("markBefore", markBefore)
+            .execute();
+    }
+
+    /**
+     * Takes up to {@code limit} due jobs, oldest first. They aren't due again until {@code leaseUntil}, so that jobs
+     * of a worker which died get retried, and aren't taken by workers running concurrently.
+     */
+    public List<Job> claim(int limit, Date leaseUntil) {
+        try (Handle handle = getDB(environment).open()) {
+            List<Map<String, Object>> jobMaps =
+                handle.createQuery("update markreadjob set attempts = attempts + 1, next_attempt_at = :leaseUntil "
+                    + "where id in (select id from markreadjob where next_attempt_at <= now() "
+                    + "order by next_attempt_at limit :limit for update skip locked) "
+                    + "returning id, delivery_id, user_id, mark_before, attempts")
+                    .bind("leaseUntil", leaseUntil)
+                    .bind("limit", limit)
+                    .list();
+
+            List<Long> deliveryIds = jobMaps.stream()
+                .map(map -> (Long) map.get("delivery_id"))
+                .collect(Collectors.toList());
+            Map<Long, List<String>> feedIds = getFeedIds(handle, deliveryIds);
+
+            return jobMaps.stream()
+                .sorted((j1, j2) -> ((Long) j1.get("id")).compareTo((Long) j2.get("id")))
+                .map(map -> Job.builder()
+                    .id((Long) map.get("id"))
+                    .deliveryId((Long) map.get("delivery_id"))
+                    .userId((Long) map.get("user_id"))
+                    .markBefore((Date) map.get("mark_before"))
+                    .attempts((Integer) map.get("attempts"))
+                    .feedIds(feedIds.getOrDefault((Long) map.get("delivery_id"), new ArrayList<>()))
+                    .build())
+                .collect(Collectors.toList());
+        }
+    }
+
+    private Map<Long, List<String>> getFeedIds(Handle handle, List<Long> deliveryIds) {
+        Map<Long, List<String>> feedIds = new HashMap<>();
+        if (deliveryIds.isEmpty()) {
+            return feedIds;
+        }
+        List<Map<String, Object>> items =
+            handle.createQuery("select delivery_id, feed_id from deliveryitem "
+                + "where delivery_id = ANY(:deliveryIds) and mark_as_read order by id")
+                .bind("deliveryIds", idArray(deliveryIds))
+                .list();
+
+        for (Map<String, Object> item : items) {
+            feedIds.computeIfAbsent((Long) item.get("delivery_id"), id -> new ArrayList<>())
+                .add((String) item.get("feed_id"));
+        }
+        return feedIds;
+    }
+
+    public void delete(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (Handle handle = getDB(environment).open()) {
+            handle.createStatement("delete from markreadjob where id = ANY(:ids)")
+                .bind("ids", idArray(ids))
+                .execute();
+        }
+    }
+
+    public void retryAt(Long id, Date nextAttemptAt, String error) {
+        try (Handle handle = getDB(environment).open()) {
+            handle.createStatement("update markreadjob set next_attempt_at = :nextAttemptAt, last_error = :error "
+                + "where id = :id")
+                .bind("id", id)
+                .bind("nextAttemptAt", nextAttemptAt)
+                .bind("error", error)
+                .execute();
+        }
+    }
+
+    /**
+     * Keeps the job with its error, but never due again.
+     */
+    public void giveUp(Long id, String error) {
+        retryAt(id, null, error);
+    }
+
+    @Builder
+    @Value
+    public static class Job {
+        private Long id;
+        private Long deliveryId;
+        private Long userId;
+        private Date markBefore;
+        private int attempts;
+        private List<String> feedIds;
+    }
+}
@@ -2,14 +2,24 @@ package com.keendly.dao;
 
 import static com.keendly.utils.DbUtils.*;
 
+import com.keendly.model.Page;
 import com.keendly.model.Subscription;
 import com.keendly.model.SubscriptionItem;
 import com.keendly.model.User;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.Query;
 
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -19,6 +29,8 @@ public class SubscriptionDao {
     private static final String SUBSCRIPTION_TABLE = "subscription";
     private static final String SUBSCRIPTION_ITEM_TABLE = "subscriptionitem";
     private static final String SUBSCRIPTION_ALIAS = "s";
+    // times were never validated, accept what "cast(time as time)" did, e.g. 8:00
+    private static final DateTimeFormatter DELIVERY_TIME = DateTimeFormatter.ofPattern("H:mm[:ss]");
     private static final String SUBSCRIPTION_ITEM_ALIAS = "si";
 
     private static final String[] SUBSCRIPTION_FIELDS = {
@@ -40,7 +52,8 @@ public class SubscriptionDao {
         column(SUBSCRIPTION_ITEM_ALIAS, "title"),
         column(SUBSCRIPTION_ITEM_ALIAS, "with_images"),
         column(SUBSCRIPTION_ITEM_ALIAS, "full_article"),
-        column(SUBSCRIPTION_ITEM_ALIAS, "mark_as_read")
+        column(SUBSCRIPTION_ITEM_ALIAS, "mark_as_read"),
+        column(SUBSCRIPTION_ITEM_ALIAS, "subscription_id")
     };
 
     private static final String SUBSCRIPTION_SELECT =
@@ -73,13 +86,37 @@ public class SubscriptionDao {
                     .setMaxRows(pageSize)
                     .list();
 
-            List<Subscription> subscriptions = new ArrayList<>();
-            for (Map<String, Object> map : subscriptionMaps) {
-                List<SubscriptionItem> items = getSubscriptionItems(handle, (Long) map.get(SUBSCRIPTION_ALIAS + "_id"));
-                Subscription subscription = mapToSubscription(map, items, false);
-                subscriptions.add(subscription);
+            return mapToSubscriptionList(handle, subscriptionMaps, false);
+        }
+    }
+
+    /**
+     * Keyset paginated active subscriptions, newest first.
+     *
+     * @param beforeId id from the cursor returned with the previous page, {@code null} for the first page
+     */
+    public Page<Subscription> getSubscriptions(Long userId, Long beforeId, int limit) {
+        try (Handle handle = getDB(environment).open()) {
+            Query<Map<String, Object>> query =
+                handle.createQuery(SUBSCRIPTION_SELECT
+                    + " where user_id = :userId and active = TRUE and deleted = FALSE"
+                    + (beforeId != null ? " and id < :beforeId" : "") + " order by id desc limit :limit")
+                    .bind("userId", userId)
+                    .bind("limit", limit + 1);
+            if (beforeId != null) {
+                query.bind("beforeId", beforeId);
             }
-            return subscriptions;
+            List<Map<String, Object>> subscriptionMaps = query.list();
+
+            String nextCursor = null;
+            if (subscriptionMaps.size() > limit) {
+                subscriptionMaps = subscriptionMaps.subList(0, limit);
+                nextCursor = Page.toCursor((Long) subscriptionMaps.get(limit - 1).get(SUBSCRIPTION_ALIAS + "_id"));
+            }
+            return Page.<Subscription>builder()
+                .items(mapToSubscriptionList(handle, subscriptionMaps, false))
+                .nextCursor(nextCursor)
+                .build();
         }
     }
 
@@ -121,22 +158,42 @@ public class SubscriptionDao {
         }
     }
 
-    private List<SubscriptionItem> getSubscriptionItems(Handle handle, Long subscriptionId) {
+    private Map<Long, List<SubscriptionItem>> getSubscriptionItems(Handle handle, List<Long> subscriptionIds) {
+        Map<Long, List<SubscriptionItem>> items = new HashMap<>();
+        if (subscriptionIds.isEmpty()) {
+            return items;
+        }
         List<Map<String, Object>> itemsMaps =
             handle.createQuery(SUBSCRIPTION_ITEM_SELECT
-                + " where subscription_id = :subscriptionId order by id desc")
-                .bind("subscriptionId", subscriptionId)
+                + " where subscription_id = ANY(:subscriptionIds) order by id desc")
+                .bind("subscriptionIds", idArray(subscriptionIds))
                 .list();
 
-        List<SubscriptionItem> items = new ArrayList<>();
         for (Map<String, Object> item : itemsMaps) {
             SubscriptionItem i = mapToSubscriptionItem(item, null);
-            items.add(i);
+            items.computeIfAbsent((Long) item.get(SUBSCRIPTION_ITEM_ALIAS + "_subscription_id"), id -> new ArrayList<>())
+                .add(i);
         }
 
         return items;
     }
 
+    private List<Subscription> mapToSubscriptionList(Handle handle, List<Map<String, Object>> subscriptionMaps,
+                                                     boolean includeUser) {
+        List<Long> ids = subscriptionMaps.stream()
+            .map(map -> (Long) map.get(SUBSCRIPTION_ALIAS + "_id"))
+            .collect(Collectors.toList());
+        Map<Long, List<SubscriptionItem>> itemsBySubscription = getSubscriptionItems(handle, ids);
+
+        List<Subscription> subscriptions = new ArrayList<>();
+        for (Map<String, Object> map : subscriptionMaps) {
+            List<SubscriptionItem> items =
+                itemsBySubscription.getOrDefault((Long) map.get(SUBSCRIPTION_ALIAS + "_id"), new ArrayList<>());
+            subscriptions.add(mapToSubscription(map, items, includeUser));
+        }
+        return subscriptions;
+    }
+
     private Subscription mapToSubscription(Map<String, Object> map, List<SubscriptionItem> items, boolean includeUser) {
         Subscription.SubscriptionBuilder builder =  Subscription.builder()
             .id((Long) map.get(SUBSCRIPTION_ALIAS + "_id"))
@@ -170,34 +227,37 @@ public class SubscriptionDao {
         try (Handle handle = getDB(environment).open()) {
             handle.begin();
 
-            Long subscriptionId = nextId(handle);
+            Iterator<Long> ids = nextIds(handle, 1 + subscription.getFeeds().size());
+            Long subscriptionId = ids.next();
             Date now = new Date();
 
             handle.createStatement("insert into subscription "
-                + "(id, created, last_modified, active, frequency, time, timezone, user_id, deleted) values "
-                + "(:id, :now, :now, true, 'DAILY', :time, :timezone, :userId, false)")
+                + "(id, created, last_modified, active, frequency, time, timezone, user_id, deleted, next_delivery_at) values "
+                + "(:id, :now, :now, true, 'DAILY', :time, :timezone, :userId, false, :nextDeliveryAt)")
                 .bind("id", subscriptionId)
                 .bind("now", now)
+                .bind("nextDeliveryAt", nextDeliveryAt(subscription.getTime(), subscription.getTimezone(), now))
                 .bind("time", subscription.getTime())
                 .bind("timezone", subscription.getTimezone())
                 .bind("userId", userId)
                 .execute();
 
-            for (SubscriptionItem item : subscription.getFeeds()) {
-                Long subscriptionItemId = nextId(handle);
-
-                handle.createStatement("insert into subscriptionitem "
+            if (!subscription.getFeeds().isEmpty()) {
+                PreparedBatch batch = handle.prepareBatch("insert into subscriptionitem "
                     + "(id, feed_id, full_article, mark_as_read, with_images, subscription_id, created, last_modified, title) values "
-                    + "(:id, :feedId, :fullArticle, :markAsRead, :includeImages, :subscriptionId, :now, :now, :title)")
-                    .bind("id", subscriptionItemId)
-                    .bind("feedId", item.getFeedId())
-                    .bind("fullArticle", item.getFullArticle())
-                    .bind("markAsRead", item.getMarkAsRead())
-                    .bind("includeImages", item.getIncludeImages())
-                    .bind("subscriptionId", subscriptionId)
-                    .bind("now", now)
-                    .bind("title", item.getTitle())
-                    .execute();
+                    + "(:id, :feedId, :fullArticle, :markAsRead, :includeImages, :subscriptionId, :now, :now, :title)");
+                for (SubscriptionItem item : subscription.getFeeds()) {
+                    batch.add()
+                        .bind("id", ids.next())
+                        .bind("feedId", item.getFeedId())
+                        .bind("fullArticle", item.getFullArticle())
+                        .bind("markAsRead", item.getMarkAsRead())
+                        .bind("includeImages", item.getIncludeImages())
+                        .bind("subscriptionId", subscriptionId)
+                        .bind("now", now)
+                        .bind("title", item.getTitle());
+                }
+                batch.execute();
             }
 
             handle.commit();
@@ -212,7 +272,8 @@ public class SubscriptionDao {
                     .bind("id", id)
                     .first();
 
-            List<SubscriptionItem> items = getSubscriptionItems(handle, id);
+            List<SubscriptionItem> items = getSubscriptionItems(handle, Collections.singletonList(id))
+                .getOrDefault(id, new ArrayList<>());
             return mapToSubscription(map, items, false);
         }
     }
@@ -257,36 +318,80 @@ public class SubscriptionDao {
 
     public List<Subscription> getDailySubscriptionsToDeliver() {
         try (Handle handle = getDB(environment).open()) {
-            List<Map<String, Object>> res =  handle.createQuery("select s.id from subscription s " +
-                "where s.active = TRUE and s.deleted = FALSE and s.frequency = 'DAILY' and not exists (" +
-                "   select id from delivery d where d.subscription_id = s.id " +
-                "       and d.created at time zone s.timezone > case " +
-                "               when cast(now() at time zone s.timezone as time) > cast(s.time as time) " + // if today the scheduled hour has passed
-                "               then to_timestamp(to_char(now() at time zone s.timezone,'YYYY-MM-DD ')||s.time, 'YYYY-MM-DD HH24:MI') " + // then last scheduled delivery was today
-                "               else to_timestamp(to_char((now() at time zone s.timezone) - interval '1 day', 'YYYY-MM-DD ')||s.time, 'YYYY-MM-DD HH24:MI') " + // otherwise yesterday
-                "       end) " +
-                "       and s.created at time zone s.timezone < case " + // and was created before last scheduled delivery
-                "               when cast(now() at time zone s.timezone as time) > cast(s.time as time) " +
-                "               then to_timestamp(to_char(now() at time zone s.timezone,'YYYY-MM-DD ')||s.time, 'YYYY-MM-DD HH24:MI') " +
-                "               else to_timestamp(to_char((now() at time zone s.timezone) - interval '1 day' ,'YYYY-MM-DD ')||s.time, 'YYYY-MM-DD HH24:MI') " +
-                "       end")
-                .list();
+            String query = new StringBuilder()
+                .append("select ")
+                .append(String.join(",", SUBSCRIPTION_FIELDS))
+                .append(",")
+                .append(String.join(",", SUBSCRIPTION_ITEM_FIELDS))
+                .append(" from ")
+                .append(SUBSCRIPTION_TABLE)
+                .append(" ")
+                .append(SUBSCRIPTION_ALIAS)
+                .append(" left join ")
+                .append(SUBSCRIPTION_ITEM_TABLE)
+                .append(" ")
+                .append(SUBSCRIPTION_ITEM_ALIAS)
+                .append(" on ")
+                .append(SUBSCRIPTION_ALIAS)
+                .append(".id = ")
+                .append(SUBSCRIPTION_ITEM_ALIAS)
+                .append(".subscription_id")
+                // matches the partial index on next_delivery_at
+                .append(" where s.active = TRUE and s.deleted = FALSE and s.frequency = 'DAILY'")
+                .append(" and s.next_delivery_at <= :now")
+                .append(" order by s.id, si.id desc")
+                .toString();
 
-            List<Long> ids = res.stream().map(e -> (long) e.get("id")).collect(Collectors.toList());
+            List<Map<String, Object>> rows = handle.createQuery(query)
+                .bind("now", new Date())
+                .list();
 
-            String q = SUBSCRIPTION_SELECT + " where " + SUBSCRIPTION_ALIAS + ".id in "
-                + "(" + ids.stream().map(Object::toString).collect(Collectors.joining(",")) + ")";
-            List<Map<String, Object>> subscriptionMaps = handle.createQuery(q).list();
+            Map<Long, Map<String, Object>> subscriptionMaps = new LinkedHashMap<>();
+            Map<Long, List<SubscriptionItem>> itemsBySubscription = new HashMap<>();
+            for (Map<String, Object> row : rows) {
+                Long id = (Long) row.get(SUBSCRIPTION_ALIAS + "_id");
+                subscriptionMaps.putIfAbsent(id, row);
+                List<SubscriptionItem> items = itemsBySubscription.computeIfAbsent(id, i -> new ArrayList<>());
+                if (row.get(SUBSCRIPTION_ITEM_ALIAS + "_id") != null) {
+                    items.add(mapToSubscriptionItem(row, null));
+                }
+            }
 
             List<Subscription> subscriptions = new ArrayList<>();
-            for (Map<String, Object> map : subscriptionMaps) {
-                List<SubscriptionItem> items = getSubscriptionItems(handle, (Long) map.get(SUBSCRIPTION_ALIAS + "_id"));
-                Subscription subscription = mapToSubscription(map, items, true);
-                subscriptions.add(subscription);
+            for (Map.Entry<Long, Map<String, Object>> entry : subscriptionMaps.entrySet()) {
+                subscriptions.add(mapToSubscription(entry.getValue(), itemsBySubscription.get(entry.getKey()), true));
             }
-
             return subscriptions;
         }
+    }
 
+    /**
+     * Moves the subscription's next scheduled delivery past the given date, to be called when it gets delivered.
+     */
+    public static void scheduleNextDelivery(Handle handle, Long subscriptionId, Date after) {
+        Map<String, Object> map = handle.createQuery("select time, timezone from " + SUBSCRIPTION_TABLE + " where id = :id")
+            .bind("id", subscriptionId)
+            .first();
+        if (map == null) {
+            return;
+        }
+        handle.createStatement("update " + SUBSCRIPTION_TABLE + " set next_delivery_at = :next where id = :id")
+            .bind("id", subscriptionId)
+            .bind("next", nextDeliveryAt((String) map.get("time"), (String) map.get("timezone"), after))
+            .execute();
+    }
+
+    /**
+     * First scheduled delivery time, {@code H:mm} in the subscription's timezone, strictly after the given date.
+     */
+    static Date nextDeliveryAt(String time, String timezone, Date after) {
+        ZoneId zone = ZoneId.of(timezone);
+        ZonedDateTime from = after.toInstant().atZone(zone);
+        LocalTime at = LocalTime.parse(time.trim(), DELIVERY_TIME);
+        ZonedDateTime next = ZonedDateTime.of(from.toLocalDate(), at, zone);
+        if (!next.isAfter(from)) {
+            next = ZonedDateTime.of(from.toLocalDate().plusDays(1), at, zone);
+        }
+        return Date.from(next.toInstant());
     }
 }
@@ -3,6 +3,7 @@ package com.keendly.dao;
 import static com.keendly.utils.DbUtils.*;
 
 import com.keendly.adaptor.model.auth.Token;
+import com.keendly.model.Premium;
 import com.keendly.model.Provider;
 import com.keendly.model.PushSubscription;
 import com.keendly.model.User;
@@ -16,7 +17,7 @@ import java.util.stream.Collectors;
 
 public class UserDao {
 
-    private static String USER_SELECT = "select id, provider, provider_id, email, delivery_email, delivery_sender, notify_no_articles, access_token, refresh_token, premium_subscription_id, force_premium, stripe_customer_id from keendlyuser";
+    private static String USER_SELECT = "select id, provider, provider_id, email, delivery_email, delivery_sender, notify_no_articles, access_token, refresh_token, premium_subscription_id, force_premium, stripe_customer_id, premium_active, premium_cancellable, premium_expires, premium_checked_at from keendlyuser";
 
     private Environment environment;
 
@@ -36,7 +37,22 @@ public class UserDao {
                     .bind("id", id)
                     .first();
 
-            return toUser(map, getPushSubscriptions(id));
+            return toUser(map, getPushSubscriptions(handle, id));
+        }
+    }
+
+    /**
+     * Like {@link #findById(Long)} but without push subscriptions, null if there's no such user.
+     */
+    public User findAccount(Long id) {
+        try (Handle handle = getDB(environment).open()) {
+
+            Map<String, Object> map =
+                handle.createQuery(USER_SELECT + " where id = :id")
+                    .bind("id", id)
+                    .first();
+
+            return map == null ? null : toUser(map, null);
         }
     }
 
@@ -58,6 +74,14 @@ public class UserDao {
     }
 
     private static User toUser(Map<String, Object> map, List<PushSubscription> pushSubscriptions) {
+        Premium cachedPremium = null;
+        if (map.get("premium_checked_at") != null) {
+            cachedPremium = Premium.builder()
+                .active((Boolean) map.get("premium_active"))
+                .cancellable((Boolean) map.get("premium_cancellable"))
+                .expires((Date) map.get("premium_expires"))
+                .build();
+        }
         return User.builder()
             .id((Long) map.get("id"))
             .provider(Provider.valueOf((String) map.get("provider")))
@@ -72,19 +96,18 @@ public class UserDao {
             .pushSubscriptions(pushSubscriptions)
             .forcePremium((Boolean) map.get("force_premium"))
             .stripeCustomerId((String) map.get("stripe_customer_id"))
+            .cachedPremium(cachedPremium)
+            .premiumCheckedAt((Date) map.get("premium_checked_at"))
             .build();
     }
 
-    private List<PushSubscription> getPushSubscriptions(long userId) {
-        try (Handle handle = getDB(environment).open()) {
-
-            List<Map<String, Object>> map =
-                handle.createQuery("select id, endpoint, auth, key from pushsubscription ps where ps.user_id = :id and ps.deleted = FALSE")
-                    .bind("id", userId)
-                    .list();
+    private static List<PushSubscription> getPushSubscriptions(Handle handle, long userId) {
+        List<Map<String, Object>> map =
+            handle.createQuery("select id, endpoint, auth, key from pushsubscription ps where ps.user_id = :id and ps.deleted = FALSE")
+                .bind("id", userId)
+                .list();
 
-            return map.stream().map(UserDao::toPushSubscription).collect(Collectors.toList());
-        }
+        return map.stream().map(UserDao::toPushSubscription).collect(Collectors.toList());
     }
 
     public Long addPushSubscription(long userId, PushSubscription subscription) {
@@ -183,4 +206,25 @@ public class UserDao {
                 .execute();
         }
     }
+
+    public void setPremiumStatus(Long id, Premium premium, Date checkedAt) {
+        try (Handle handle  = getDB(environment).open()) {
+            handle.createStatement("update keendlyuser set premium_active = :active, premium_cancellable = :cancellable, "
+                + "premium_expires = :expires, premium_checked_at = :checkedAt where id = :userId")
+                .bind("userId", id)
+                .bind("active", premium.isActive())
+                .bind("cancellable", premium.isCancellable())
+                .bind("expires", premium.getExpires())
+                .bind("checkedAt", checkedAt)
+                .execute();
+        }
+    }
+
+    public void clearPremiumStatus(Long id) {
+        try (Handle handle  = getDB(environment).open()) {
+            handle.createStatement("update keendlyuser set premium_checked_at = null where id = :userId")
+                .bind("userId", id)
+                .execute();
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package com.keendly.markread;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduled lambda draining mark as read jobs, see {@link MarkReadWorker}.
+ */
+public class MarkReadHandler implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    // time left to finish the batch in progress before the lambda times out
+    private static final long MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    private final MarkReadWorker worker;
+
+    public MarkReadHandler() {
+        this(new MarkReadWorker());
+    }
+
+    MarkReadHandler(MarkReadWorker worker) {
+        this.worker = worker;
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
+        int processed = worker.drain(System.currentTimeMillis() + context.getRemainingTimeInMillis() - MARGIN_MILLIS);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("processed", processed);
+        return result;
+    }
+}
@@ -0,0 +1,142 @@
+package com.keendly.markread;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.keendly.adaptor.Adaptor;
+import com.keendly.adaptor.AdaptorFactory;
+import com.keendly.dao.MarkReadJobDao;
+import com.keendly.dao.MarkReadJobDao.Job;
+import com.keendly.dao.UserDao;
+import com.keendly.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Marks feeds of finished deliveries as read with the providers, draining jobs stored by
+ * {@link MarkReadJobDao}. Jobs of a user are done with a single adaptor, those of deliveries finished at the same
+ * time with a single call. Failed jobs are retried with a growing delay.
+ */
+public class MarkReadWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MarkReadWorker.class);
+
+    static final int BATCH_SIZE = 20;
+    static final int MAX_ATTEMPTS = 6;
+    // jobs of a worker which died while processing them are due again after that
+    private static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long FIRST_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final MarkReadJobDao markReadJobDao;
+    private final UserDao userDao;
+    private final Function<User, Adaptor> adaptors;
+
+    public MarkReadWorker() {
+        this(new MarkReadJobDao(), new UserDao(), AdaptorFactory::getInstance);
+    }
+
+    public MarkReadWorker(MarkReadJobDao markReadJobDao, UserDao userDao, Function<User, Adaptor> adaptors) {
+        this.markReadJobDao = markReadJobDao;
+        this.userDao = userDao;
+        this.adaptors = adaptors;
+    }
+
+    /**
+     * Processes due jobs a batch at a time, until there are none left or {@code deadlineMillis} passes.
+     *
+     * @return number of processed jobs
+     */
+    public int drain(long deadlineMillis) {
+        int processed = 0;
+        while (System.currentTimeMillis() < deadlineMillis) {
+            List<Job> jobs = markReadJobDao.claim(BATCH_SIZE, new Date(System.currentTimeMillis() + LEASE_MILLIS));
+            jobs.stream()
+                .collect(Collectors.groupingBy(Job::getUserId, LinkedHashMap::new, Collectors.toList()))
+                .forEach(this::process);
+            processed += jobs.size();
+            if (jobs.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        if (processed > 0) {
+            LOG.debug("Processed {} mark as read jobs", processed);
+        }
+        return processed;
+    }
+
+    /**
+     * Drains jobs in the background every {@code period}, when not running in lambda.
+     */
+    public ScheduledExecutorService runEvery(long period, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("mark-read-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                drain(Long.MAX_VALUE);
+            } catch (RuntimeException e) {
+                LOG.error("Error processing mark as read jobs", e);
+            }
+        }, 0, period, unit);
+        return scheduler;
+    }
+
+    private void process(Long userId, List<Job> jobs) {
+        Adaptor adaptor;
+        try {
+            adaptor = adaptors.apply(userDao.findById(userId));
+        } catch (RuntimeException e) {
+            LOG.warn("Couldn't create adaptor of user {}", userId, e);
+            jobs.forEach(job -> failed(job, e.toString()));
+            return;
+        }
+
+        jobs.stream()
+            .collect(Collectors.groupingBy(job -> job.getMarkBefore().getTime(), TreeMap::new, Collectors.toList()))
+            .forEach((markBefore, sameTime) -> {
+                List<String> feedIds = sameTime.stream()
+                    .flatMap(job -> job.getFeedIds().stream())
+                    .distinct()
+                    .collect(Collectors.toList());
+                String error;
+                try {
+                    error = Boolean.TRUE.equals(adaptor.markFeedRead(feedIds, markBefore))
+                        ? null : "Feeds not marked as read: " + adaptor.getNotMarkedFeeds();
+                } catch (RuntimeException e) {
+                    LOG.warn("Error marking feeds of user {} as read", userId, e);
+                    error = e.toString();
+                }
+
+                if (error == null) {
+                    markReadJobDao.delete(sameTime.stream().map(Job::getId).collect(Collectors.toList()));
+                } else {
+                    for (Job job : sameTime) {
+                        failed(job, error);
+                    }
+                }
+            });
+    }
+
+    private void failed(Job job, String error) {
+        if (job.getAttempts() >= MAX_ATTEMPTS) {
+            LOG.error("Giving up marking feeds of delivery {} as read after {} attempts: {}", job.getDeliveryId(),
+                job.getAttempts(), error);
+            markReadJobDao.giveUp(job.getId(), error);
+        } else {
+            markReadJobDao.retryAt(job.getId(), new Date(System.currentTimeMillis() + retryDelay(job.getAttempts())),
+                error);
+        }
+    }
+
+    static long retryDelay(int attempts) {
+        return Math.min(MAX_RETRY_DELAY_MILLIS, FIRST_RETRY_DELAY_MILLIS << Math.min(attempts - 1, 20));
+    }
+}
@@ -0,0 +1,52 @@
+package com.keendly.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+@Value
+@Builder
+public class Page<T> {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+
+    private List<T> items;
+    /**
+     * Opaque cursor of the next page, {@code null} if this is the last one.
+     */
+    private String nextCursor;
+
+    /**
+     * @throws IllegalArgumentException if the limit isn't a number
+     */
+    public static int limit(String limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(limit), MAX_LIMIT));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong limit: " + limit, e);
+        }
+    }
+
+    public static String toCursor(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor wasn't returned by {@link #toCursor(Long)}
+     */
+    public static Long fromCursor(String cursor) {
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Wrong cursor: " + cursor, e);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.keendly.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Value;
 
+import java.util.Date;
 import java.util.List;
 
 @Value
@@ -25,4 +27,8 @@ public class User {
     private Premium premium;
     private List<PushSubscription> pushSubscriptions;
     private Boolean forcePremium;
+    @JsonIgnore
+    private Premium cachedPremium;
+    @JsonIgnore
+    private Date premiumCheckedAt;
 }
@@ -0,0 +1,132 @@
+package com.keendly.premium;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.keendly.dao.UserDao;
+import com.keendly.model.Premium;
+import com.keendly.model.User;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Premium status by premium subscription id. Fresh statuses are returned as they are, stale ones are returned
+ * while being refreshed in the background, older ones are fetched again. Statuses are also stored in the user's
+ * row, so they survive a cold start, and clearing them there invalidates them in every instance.
+ */
+public class PremiumCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PremiumCache.class);
+
+    private static final int MAX_SIZE = 10_000;
+
+    private final Function<String, Premium> fetch;
+    private final UserDao userDao;
+    private final long freshMillis;
+    private final long staleMillis;
+    private final Executor refreshExecutor;
+
+    private final Cache<String, CachedPremium> cache;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param fetch fetches the status of a premium subscription, throws if it can't
+     */
+    public PremiumCache(Function<String, Premium> fetch, UserDao userDao, long freshMillis, long staleMillis,
+                        Executor refreshExecutor) {
+        this.fetch = fetch;
+        this.userDao = userDao;
+        this.freshMillis = freshMillis;
+        this.staleMillis = staleMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterWrite(staleMillis, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    public Premium get(User user) {
+        String subscriptionId = user.getPremiumSubscriptionId();
+        CachedPremium cached = cached(user);
+        long now = System.currentTimeMillis();
+
+        if (cached != null && !expired(cached.getPremium(), now)) {
+            long age = now - cached.getCheckedAt().getTime();
+            if (age < freshMillis) {
+                return cached.getPremium();
+            }
+            if (age < staleMillis) {
+                if (refreshing.add(subscriptionId)) {
+                    refreshExecutor.execute(() -> {
+                        try {
+                            refresh(user, cached);
+                        } finally {
+                            refreshing.remove(subscriptionId);
+                        }
+                    });
+                }
+                return cached.getPremium();
+            }
+        }
+        return refresh(user, cached);
+    }
+
+    public void invalidate(User user) {
+        if (user.getPremiumSubscriptionId() != null) {
+            cache.invalidate(user.getPremiumSubscriptionId());
+        }
+        userDao.clearPremiumStatus(user.getId());
+    }
+
+    private CachedPremium cached(User user) {
+        if (user.getPremiumCheckedAt() == null) {
+            // never checked or invalidated
+            return null;
+        }
+        CachedPremium persisted = new CachedPremium(user.getCachedPremium(), user.getPremiumCheckedAt());
+        CachedPremium local = cache.getIfPresent(user.getPremiumSubscriptionId());
+        return local != null && !local.getCheckedAt().before(persisted.getCheckedAt()) ? local : persisted;
+    }
+
+    private Premium refresh(User user, CachedPremium cached) {
+        Premium premium;
+        try {
+            premium = fetch.apply(user.getPremiumSubscriptionId());
+        } catch (Exception e) {
+            LOG.error("Error fetching subscription: " + user.getPremiumSubscriptionId(), e);
+            // a status past its window could have been cancelled since, don't keep it active while Stripe is down
+            long now = System.currentTimeMillis();
+            if (cached != null && now - cached.getCheckedAt().getTime() < staleMillis
+                && !expired(cached.getPremium(), now)) {
+                return cached.getPremium();
+            }
+            return Premium.builder().active(false).build();
+        }
+
+        CachedPremium fetched = new CachedPremium(premium, new Date());
+        cache.put(user.getPremiumSubscriptionId(), fetched);
+        try {
+            userDao.setPremiumStatus(user.getId(), premium, fetched.getCheckedAt());
+        } catch (Exception e) {
+            LOG.warn("Couldn't store premium status of user {}", user.getId(), e);
+        }
+        return premium;
+    }
+
+    private static boolean expired(Premium premium, long now) {
+        return premium.getExpires() != null && premium.getExpires().getTime() <= now;
+    }
+
+    @Value
+    private static class CachedPremium {
+        private Premium premium;
+        private Date checkedAt;
+    }
+}
@@ -2,49 +2,84 @@ package com.keendly.premium;
 
 import static com.keendly.utils.ConfigUtils.*;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.keendly.auth.UserContext;
+import com.keendly.dao.UserDao;
 import com.keendly.model.Premium;
 import com.keendly.model.User;
 import com.stripe.Stripe;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class PremiumUtils {
 
-    private static final Logger LOG = LoggerFactory.getLogger(PremiumUtils.class);
-
     static {
         Stripe.apiKey = parameter("STRIPE_KEY");
     }
 
+    private static final long FRESH_MILLIS = TimeUnit.MINUTES.toMillis(parameter("PREMIUM_CACHE_FRESH_MINUTES", 60));
+    private static final long STALE_MILLIS = TimeUnit.MINUTES.toMillis(parameter("PREMIUM_CACHE_STALE_MINUTES", 24 * 60));
+
+    private static final PremiumCache CACHE = new PremiumCache(PremiumUtils::fetchPremiumStatus, new UserDao(),
+        FRESH_MILLIS, STALE_MILLIS, Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("premium-refresh-%d").setDaemon(true).build()));
+
     public static Premium getPremiumStatus(User user) {
-        Premium.PremiumBuilder builder = Premium.builder().active(false);
         if (user.getForcePremium() != null && user.getForcePremium()) {
-            builder.active(true).cancellable(false);
-            return builder.build();
+            return Premium.builder().active(true).cancellable(false).build();
         }
-        if (user.getPremiumSubscriptionId() != null) {
-            com.stripe.model.Subscription subscription;
-            try {
-                subscription = com.stripe.model.Subscription.retrieve(user.getPremiumSubscriptionId());
-            } catch (Exception e) {
-                LOG.error("Error fetching subscription: " + user.getPremiumSubscriptionId(), e);
-                return builder.active(false).build();
-            }
+        if (user.getPremiumSubscriptionId() == null) {
+            return Premium.builder().active(false).build();
+        }
+        return CACHE.get(user);
+    }
 
-            if ("active".equalsIgnoreCase(subscription.getStatus()) || "trialing".equalsIgnoreCase(subscription.getStatus())) {
-                builder.active(true);
-                if (subscription.getCancelAtPeriodEnd()) {
-                    builder.cancellable(false);
-                    builder.expires(new Date(subscription.getCurrentPeriodEnd() * 1000));
-                } else {
-                    builder.cancellable(true);
-                }
+    /**
+     * Premium status as told by the request's user context, empty if it takes the user to tell. Only a fresh,
+     * active status is taken from there, so it never keeps premium longer than {@link #getPremiumStatus(User)}.
+     */
+    public static Optional<Premium> getPremiumStatus(UserContext context) {
+        if (context.isForcePremium()) {
+            return Optional.of(Premium.builder().active(true).cancellable(false).build());
+        }
+        Premium premium = context.getCachedPremium();
+        long now = System.currentTimeMillis();
+        if (premium == null || !premium.isActive() || now - context.getPremiumCheckedAt().getTime() >= FRESH_MILLIS
+            || premium.getExpires() != null && premium.getExpires().getTime() <= now) {
+            return Optional.empty();
+        }
+        return Optional.of(premium);
+    }
+
+    /**
+     * To be called whenever the user's premium subscription changes.
+     */
+    public static void invalidatePremiumStatus(User user) {
+        CACHE.invalidate(user);
+    }
+
+    private static Premium fetchPremiumStatus(String subscriptionId) {
+        com.stripe.model.Subscription subscription;
+        try {
+            subscription = com.stripe.model.Subscription.retrieve(subscriptionId);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        Premium.PremiumBuilder builder = Premium.builder();
+        if ("active".equalsIgnoreCase(subscription.getStatus()) || "trialing".equalsIgnoreCase(subscription.getStatus())) {
+            builder.active(true);
+            if (subscription.getCancelAtPeriodEnd()) {
+                builder.cancellable(false);
+                builder.expires(new Date(subscription.getCurrentPeriodEnd() * 1000));
             } else {
-                builder.active(false);
+                builder.cancellable(true);
             }
-
+        } else {
+            builder.active(false);
         }
         return builder.build();
     }
@@ -17,6 +17,7 @@ public class DeliveryRequest {
     private String email;
     private Long timestamp;
     private S3Object s3Items;
+    private String itemsFormat;
     private boolean dryRun;
     private String timezone;
     private boolean manual;
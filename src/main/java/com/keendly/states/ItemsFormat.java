@@ -0,0 +1,98 @@
+package com.keendly.states;
+
+import com.amazonaws.util.json.Jackson;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.keendly.model.DeliveryItem;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Formats of delivery items handed over to the delivery state machine in S3, named by
+ * {@link DeliveryRequest#getItemsFormat()}. Requests without a format have their items in {@link #JSON}.
+ */
+public enum ItemsFormat {
+
+    JSON("json", ".json", "application/json", null),
+    JSON_GZIP("json+gzip", ".json.gz", "application/json", "gzip");
+
+    private static final TypeReference<List<DeliveryItem>> ITEMS = new TypeReference<List<DeliveryItem>>() {};
+
+    private final String marker;
+    private final String extension;
+    private final String contentType;
+    private final String contentEncoding;
+
+    ItemsFormat(String marker, String extension, String contentType, String contentEncoding) {
+        this.marker = marker;
+        this.extension = extension;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getMarker() {
+        return marker;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public static ItemsFormat fromMarker(String marker) {
+        if (marker == null) {
+            return JSON;
+        }
+        return Arrays.stream(values())
+            .filter(format -> format.marker.equals(marker))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Unknown items format: " + marker));
+    }
+
+    /**
+     * Writes the items, compressed if the format is. Leaves {@code out} open.
+     */
+    public void encode(List<DeliveryItem> items, OutputStream out) throws IOException {
+        OutputStream target = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        if (contentEncoding != null) {
+            // the default level takes several times longer for a few percent smaller payload
+            target = new GZIPOutputStream(target, 8192) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+        try (OutputStream encoded = target) {
+            Jackson.getObjectMapper().writeValue(encoded, items);
+        }
+    }
+
+    public List<DeliveryItem> decode(InputStream in) throws IOException {
+        InputStream source = contentEncoding != null ? new GZIPInputStream(in, 8192) : in;
+        return Jackson.getObjectMapper().readValue(source, ITEMS);
+    }
+}
@@ -31,7 +31,8 @@ public class Mapper {
                             .author(article.getAuthor())
                             .id(article.getId())
                             .title(article.getTitle())
-                            .timestamp(article.getPublished().getTime())
+                            // kept by FeedUtils.getNewest as the oldest, even without a date
+                            .timestamp(article.getPublished() != null ? article.getPublished().getTime() : null)
                             .url(article.getUrl())
                             .content(article.getContent())
                             .build())
@@ -41,8 +42,8 @@ public class Mapper {
             .collect(Collectors.toList());
     }
 
-    public static DeliveryRequest toDeliveryRequest(Delivery delivery, S3Object s3Items, long deliveryId, User user,
-        boolean dryRun) {
+    public static DeliveryRequest toDeliveryRequest(Delivery delivery, S3Object s3Items, ItemsFormat itemsFormat,
+        long deliveryId, User user, boolean dryRun) {
 
         return DeliveryRequest.builder()
             .email(user.getDeliveryEmail())
@@ -53,6 +54,8 @@ public class Mapper {
             .timezone(delivery.getTimezone())
             .provider(user.getProvider())
             .s3Items(s3Items)
+            // left out for plain json, what consumers not aware of formats expect
+            .itemsFormat(itemsFormat == ItemsFormat.JSON ? null : itemsFormat.getMarker())
             .dryRun(dryRun)
             .manual(delivery.getManual())
             .build();
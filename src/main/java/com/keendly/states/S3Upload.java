@@ -0,0 +1,155 @@
+package com.keendly.states;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uploads an object while it's being written, holding at most a part of it in memory. Objects which fit in a single
+ * part are uploaded with one request of known length, bigger ones with a multipart upload, a part at a time.
+ */
+public class S3Upload extends OutputStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(S3Upload.class);
+
+    // the smallest part S3 accepts
+    static final int PART_SIZE = 5 * 1024 * 1024;
+
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String key;
+    private final ObjectMetadata metadata;
+    private final int partSize;
+
+    private final Part part = new Part();
+    private final List<PartETag> partETags = new ArrayList<>();
+    private String uploadId;
+
+    private S3Upload(AmazonS3 s3, String bucket, String key, ObjectMetadata metadata, int partSize) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.metadata = metadata;
+        this.partSize = partSize;
+    }
+
+    /**
+     * Uploads whatever {@code writer} writes, already encoded with {@code contentEncoding}, if any. Nothing is stored
+     * if writing fails.
+     */
+    public static void upload(AmazonS3 s3, String bucket, String key, String contentType, String contentEncoding,
+                              Writer writer) {
+        upload(s3, bucket, key, contentType, contentEncoding, writer, PART_SIZE);
+    }
+
+    static void upload(AmazonS3 s3, String bucket, String key, String contentType, String contentEncoding,
+                       Writer writer, int partSize) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        if (contentEncoding != null) {
+            metadata.setContentEncoding(contentEncoding);
+        }
+
+        S3Upload upload = new S3Upload(s3, bucket, key, metadata, partSize);
+        try {
+            writer.writeTo(upload);
+            upload.complete();
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw new RuntimeException("Error uploading " + key, e);
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        part.write(b);
+        if (part.size() == partSize) {
+            uploadPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            int n = Math.min(len, partSize - part.size());
+            part.write(b, off, n);
+            off += n;
+            len -= n;
+            if (part.size() == partSize) {
+                uploadPart();
+            }
+        }
+    }
+
+    /**
+     * Doesn't finish the upload, so that a writer closing the stream on failure doesn't store a partial object.
+     */
+    @Override
+    public void close() {
+    }
+
+    private void uploadPart() {
+        if (uploadId == null) {
+            uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata))
+                .getUploadId();
+        }
+        UploadPartRequest request = new UploadPartRequest()
+            .withBucketName(bucket)
+            .withKey(key)
+            .withUploadId(uploadId)
+            .withPartNumber(partETags.size() + 1)
+            .withInputStream(part.asInputStream())
+            .withPartSize(part.size());
+        partETags.add(s3.uploadPart(request).getPartETag());
+        part.reset();
+    }
+
+    private void complete() {
+        if (uploadId == null) {
+            metadata.setContentLength(part.size());
+            s3.putObject(new PutObjectRequest(bucket, key, part.asInputStream(), metadata));
+            return;
+        }
+        if (part.size() > 0) {
+            uploadPart();
+        }
+        s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+    }
+
+    private void abort() {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (RuntimeException e) {
+            LOG.warn("Couldn't abort upload of {}", key, e);
+        }
+    }
+
+    private static class Part extends ByteArrayOutputStream {
+
+        ByteArrayInputStream asInputStream() {
+            // no copy of the buffer
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -5,4 +5,9 @@ public class ConfigUtils {
     public static String parameter(String key){
         return System.getenv(key);
     }
+
+    public static int parameter(String key, int defaultValue){
+        String value = parameter(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
 }
@@ -2,25 +2,72 @@ package com.keendly.utils;
 
 import static com.keendly.utils.ConfigUtils.*;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
 import lombok.Builder;
 import lombok.Value;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.Argument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class DbUtils {
 
-    private static Map<Environment, DBI> connections = new HashMap<>();
+    private static final Logger LOG = LoggerFactory.getLogger(DbUtils.class);
+
+    private static final int DEFAULT_POOL_SIZE = 3;
+    // lambda can be frozen for a long time, don't keep idle connections which may be dropped by then
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_LIFETIME = TimeUnit.MINUTES.toMillis(5);
+    private static final long CONNECTION_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    private static final long SLOW_ACQUIRE_MILLIS = 500;
+
+    private static Map<Environment, HikariDataSource> dataSources = new ConcurrentHashMap<>();
+    private static Map<Environment, DBI> connections = new ConcurrentHashMap<>();
 
     public static DBI getDB(Environment environment) {
-        if (connections.containsKey(environment)){
-            return connections.get(environment);
-        }
-        DBI dbi = new DBI(environment.getUrl(), environment.getUser(), environment.getPassword());
-        connections.put(environment, dbi);
-        return dbi;
+        return connections.computeIfAbsent(environment, env -> new DBI(dataSource(env)));
+    }
+
+    private static HikariDataSource dataSource(Environment environment) {
+        return dataSources.computeIfAbsent(environment, env -> {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName(poolName(env));
+            config.setDriverClassName("org.postgresql.Driver");
+            config.setJdbcUrl(env.getUrl());
+            config.setUsername(env.getUser());
+            config.setPassword(env.getPassword());
+            config.setMaximumPoolSize(parameter("DB_POOL_SIZE", DEFAULT_POOL_SIZE));
+            config.setMinimumIdle(0);
+            config.setIdleTimeout(IDLE_TIMEOUT);
+            config.setMaxLifetime(MAX_LIFETIME);
+            config.setConnectionTimeout(CONNECTION_TIMEOUT);
+            // connect on first use, not when the pool is created
+            config.setInitializationFailTimeout(-1);
+            // the driver doesn't implement Connection.isValid
+            config.setConnectionTestQuery("select 1");
+            config.setMetricsTrackerFactory((poolName, poolStats) -> new LoggingMetricsTracker(poolName, poolStats));
+            return new HikariDataSource(config);
+        });
+    }
+
+    /**
+     * Tells the pools of different databases and users apart in the logs, leaving out the url's parameters which
+     * may carry credentials.
+     */
+    static String poolName(Environment environment) {
+        String url = String.valueOf(environment.getUrl()).replaceFirst("^jdbc:postgresql://", "");
+        int parameters = url.indexOf('?');
+        return "keendly-db:" + environment.getUser() + "@" + (parameters >= 0 ? url.substring(0, parameters) : url);
     }
 
     public static Environment defaultEnvironment(){
@@ -36,6 +83,33 @@ public class DbUtils {
             .first().get("nextval");
     }
 
+    /**
+     * Allocates {@code count} ids from the sequence in one round-trip.
+     */
+    public static Iterator<Long> nextIds(Handle handle, int count) {
+        return handle.createQuery("select nextval('hibernate_sequence') from generate_series(1, :count)")
+            .bind("count", count)
+            .mapTo(Long.class)
+            .list()
+            .iterator();
+    }
+
+    /**
+     * Binds ids as a postgres array, to be used with {@code = ANY(:ids)}.
+     */
+    public static Argument idArray(Collection<Long> ids) {
+        return (position, statement, ctx) ->
+            statement.setArray(position, statement.getConnection().createArrayOf("bigint", ids.toArray()));
+    }
+
+    /**
+     * Binds strings as a postgres array, to be used with {@code = ANY(:values)}.
+     */
+    public static Argument textArray(Collection<String> values) {
+        return (position, statement, ctx) ->
+            statement.setArray(position, statement.getConnection().createArrayOf("text", values.toArray()));
+    }
+
     @Builder
     @Value
     public static class Environment {
@@ -43,4 +117,36 @@ public class DbUtils {
         private String user;
         private String password;
     }
+
+    private static class LoggingMetricsTracker implements IMetricsTracker {
+
+        private final String poolName;
+        private final PoolStats poolStats;
+
+        LoggingMetricsTracker(String poolName, PoolStats poolStats) {
+            this.poolName = poolName;
+            this.poolStats = poolStats;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(elapsedAcquiredNanos);
+            if (millis > SLOW_ACQUIRE_MILLIS) {
+                LOG.warn("Waited {}ms for connection from {}, active: {}, idle: {}, waiting: {}", millis, poolName,
+                    poolStats.getActiveConnections(), poolStats.getIdleConnections(), poolStats.getPendingThreads());
+            }
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            LOG.debug("New connection in {} created in {}ms, total: {}", poolName, connectionCreatedMillis,
+                poolStats.getTotalConnections());
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            LOG.error("Timed out waiting for connection from {}, active: {}, waiting: {}", poolName,
+                poolStats.getActiveConnections(), poolStats.getPendingThreads());
+        }
+    }
 }
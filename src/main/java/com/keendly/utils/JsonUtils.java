@@ -1,10 +1,21 @@
 package com.keendly.utils;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Value;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 public class JsonUtils {
 
@@ -18,4 +29,80 @@ public class JsonUtils {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Reads a page of a stream (e.g. {@code /stream/contents}) without building the whole response in memory.
+     * Items of the {@code itemsField} array are mapped one by one as they are parsed, only {@code itemFields}
+     * of every item are read, everything else is skipped. Items mapped to {@code null} are left out.
+     */
+    public static <T> StreamPage<T> asStreamPage(Response response, String itemsField, Set<String> itemFields,
+                                                 Function<JsonNode, T> itemMapper) {
+        try {
+            return asStreamPage(response.readEntity(InputStream.class), itemsField, itemFields, itemMapper);
+        } finally {
+            closeQuietly(response);
+        }
+    }
+
+    public static <T> StreamPage<T> asStreamPage(InputStream content, String itemsField, Set<String> itemFields,
+                                                 Function<JsonNode, T> itemMapper) {
+        List<T> items = new ArrayList<>();
+        String continuation = null;
+        try (JsonParser parser = mapper.getFactory().createParser(content)) {
+            // the stream belongs to the caller
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new StreamPage<>(items, null);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals(itemsField) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        T item = itemMapper.apply(readObject(parser, itemFields));
+                        if (item != null) {
+                            items.add(item);
+                        }
+                    }
+                } else if (field.equals("continuation") && value.isScalarValue()) {
+                    continuation = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new StreamPage<>(items, continuation);
+    }
+
+    // the page is already parsed, failing to read whatever is left after it shouldn't fail the request
+    private static void closeQuietly(Response response) {
+        try {
+            response.close();
+        } catch (ProcessingException e) {
+            // ignore
+        }
+    }
+
+    private static ObjectNode readObject(JsonParser parser, Set<String> fields) throws IOException {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (fields.contains(field)) {
+                node.set(field, parser.readValueAsTree());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return node;
+    }
+
+    @Value
+    public static class StreamPage<T> {
+
+        private List<T> items;
+        private String continuation;
+    }
 }
@@ -0,0 +1,129 @@
+package com.keendly.adaptor;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import com.keendly.adaptor.model.ExternalFeed;
+import com.keendly.model.Provider;
+import com.keendly.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class CachingAdaptorTest {
+
+    private static final long TTL = TimeUnit.MINUTES.toMillis(1);
+
+    private Adaptor delegate = mock(Adaptor.class);
+    private FeedCache cache = new FeedCache(TTL, TTL, null);
+
+    private User user = User.builder().id(1L).provider(Provider.INOREADER).build();
+    private CachingAdaptor adaptor = new CachingAdaptor(delegate, user, cache);
+
+    @Before
+    public void setUp() {
+        ExternalFeed feed = new ExternalFeed();
+        feed.setFeedId("feed/1");
+        when(delegate.getFeeds()).thenReturn(Collections.singletonList(feed));
+
+        Map<String, Integer> counts = new HashMap<>();
+        counts.put("feed/1", 3);
+        counts.put("feed/2", 5);
+        when(delegate.getUnreadCount()).thenReturn(counts);
+    }
+
+    @Test
+    public void given_cached_when_getFeeds_then_dontCallProvider() {
+        // given
+        adaptor.getFeeds();
+
+        // when
+        List<ExternalFeed> feeds = adaptor.getFeeds();
+
+        // then
+        assertEquals(1, feeds.size());
+        verify(delegate, times(1)).getFeeds();
+    }
+
+    @Test
+    public void given_cachedByAnotherUser_when_getFeeds_then_callProvider() {
+        // given
+        adaptor.getFeeds();
+        User other = User.builder().id(2L).provider(Provider.INOREADER).build();
+
+        // when
+        new CachingAdaptor(delegate, other, cache).getFeeds();
+
+        // then
+        verify(delegate, times(2)).getFeeds();
+    }
+
+    @Test
+    public void given_expired_when_getUnreadCount_then_callProvider() {
+        // given
+        FeedCache expiring = new FeedCache(TTL, 0, null);
+        new CachingAdaptor(delegate, user, expiring).getUnreadCount();
+
+        // when
+        new CachingAdaptor(delegate, user, expiring).getUnreadCount();
+
+        // then
+        verify(delegate, times(2)).getUnreadCount();
+    }
+
+    @Test
+    public void given_cached_when_getUnreadCountOfSomeFeeds_then_cachedCountsNotModified() {
+        // given
+        adaptor.getUnreadCount(Collections.singletonList("feed/1"));
+
+        // when
+        Map<String, Integer> counts = adaptor.getUnreadCount();
+
+        // then
+        assertEquals(2, counts.size());
+        verify(delegate, times(1)).getUnreadCount();
+    }
+
+    @Test
+    public void given_cached_when_markArticleRead_then_unreadCountsInvalidated() {
+        // given
+        adaptor.getFeeds();
+        adaptor.getUnreadCount();
+
+        // when
+        adaptor.markArticleRead(Arrays.asList("article/1"));
+        adaptor.getFeeds();
+        adaptor.getUnreadCount();
+
+        // then
+        verify(delegate).markArticleRead(Arrays.asList("article/1"));
+        verify(delegate, times(1)).getFeeds();
+        verify(delegate, times(2)).getUnreadCount();
+    }
+
+    @Test
+    public void given_markFeedReadFails_when_markFeedRead_then_unreadCountsInvalidated() {
+        // given
+        adaptor.getUnreadCount();
+        when(delegate.markFeedRead(anyListOf(String.class), anyLong())).thenThrow(new RuntimeException("error"));
+
+        // when
+        try {
+            adaptor.markFeedRead(Arrays.asList("feed/1"), 0L);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        adaptor.getUnreadCount();
+
+        // then
+        verify(delegate, times(2)).getUnreadCount();
+    }
+}
@@ -0,0 +1,71 @@
+package com.keendly.adaptor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.apache.http.NoHttpResponseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.Response;
+
+public class ClientFactoryTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    @Before
+    public void setUp() {
+        // provider closes the connection without answering the first time
+        givenThat(post(urlEqualTo("/edit-tag"))
+            .inScenario("closed").whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE))
+            .willSetStateTo("answering"));
+        givenThat(post(urlEqualTo("/edit-tag"))
+            .inScenario("closed").whenScenarioStateIs("answering")
+            .willReturn(aResponse().withStatus(200).withBody("OK")));
+    }
+
+    @After
+    public void closeConnections() {
+        ClientFactory.closeIdle();
+    }
+
+    @Test
+    public void given_noResponse_when_postIdempotent_then_retry() {
+        // when
+        Response response = ClientFactory.forProvider("test").target("http://localhost:" + wireMockRule.port() + "/edit-tag")
+            .request()
+            .property(ClientFactory.IDEMPOTENT, true)
+            .post(Entity.form(new Form("a", "user/-/state/com.google/read")));
+
+        // then
+        assertEquals(200, response.getStatus());
+        assertEquals("OK", response.readEntity(String.class));
+        verify(2, postRequestedFor(urlEqualTo("/edit-tag")).withRequestBody(containing("state")));
+    }
+
+    @Test
+    public void given_noResponse_when_post_then_throwException() {
+        // when
+        try {
+            ClientFactory.forProvider("test").target("http://localhost:" + wireMockRule.port() + "/edit-tag")
+                .request()
+                .post(Entity.form(new Form("a", "user/-/state/com.google/read")));
+            fail();
+        } catch (ProcessingException e) {
+            // then
+            assertTrue(e.getCause() instanceof NoHttpResponseException);
+        }
+        verify(1, postRequestedFor(urlEqualTo("/edit-tag")));
+    }
+}
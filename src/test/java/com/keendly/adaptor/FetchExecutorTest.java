@@ -0,0 +1,150 @@
+package com.keendly.adaptor;
+
+import static org.junit.Assert.*;
+
+import com.keendly.adaptor.exception.ApiException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class FetchExecutorTest {
+
+    @Test
+    public void given_slowCall_when_fetchAll_then_returnPartialResults() {
+        // given
+        FetchExecutor executor = new FetchExecutor("test", 2);
+
+        // when
+        FetchExecutor.Result<String, String> result = executor.fetchAll(Arrays.asList("fast", "slow"), key -> {
+            if (key.equals("slow")) {
+                sleep(5000);
+            }
+            return key.toUpperCase();
+        }, 500, TimeUnit.MILLISECONDS);
+
+        // then
+        assertEquals(1, result.getCompleted().size());
+        assertEquals("FAST", result.getCompleted().get("fast"));
+        assertEquals(Arrays.asList("slow"), result.getTimedOut());
+    }
+
+    @Test
+    public void given_concurrencyLimit_when_fetchAll_then_limitNotExceeded() {
+        // given
+        FetchExecutor executor = new FetchExecutor("test", 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        // when
+        FetchExecutor.Result<Integer, Integer> result = executor.fetchAll(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9), key -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(50);
+            running.decrementAndGet();
+            return key;
+        }, 10, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(9, result.getCompleted().size());
+        assertTrue(result.getTimedOut().isEmpty());
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void given_callFails_when_fetchAll_then_returnPartialResults() {
+        // given
+        FetchExecutor executor = new FetchExecutor("test", 2);
+
+        // when
+        FetchExecutor.Result<String, String> result = executor.fetchAll(Arrays.asList("ok", "error"), key -> {
+            if (key.equals("error")) {
+                throw new ApiException(500, "Internal Server Error");
+            }
+            return key;
+        }, 10, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(Collections.singletonMap("ok", "ok"), result.getCompleted());
+        assertEquals(Arrays.asList("error"), result.getFailed());
+        assertTrue(result.getTimedOut().isEmpty());
+    }
+
+    @Test(expected = ApiException.class)
+    public void given_allCallsFail_when_fetchAll_then_throwException() {
+        // given
+        FetchExecutor executor = new FetchExecutor("test", 2);
+
+        // when
+        executor.fetchAll(Arrays.asList("first", "second"), key -> {
+            throw new ApiException(401, "Unauthorized");
+        }, 10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void given_limitReached_when_tryStart_then_notStarted() {
+        // given
+        FetchExecutor executor = new FetchExecutor("test", 1);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+
+        // when
+        executor.fetchAll(Arrays.asList("page"), key -> started.add(executor.tryStart(() -> "next")),
+            10, TimeUnit.SECONDS);
+
+        // then
+        assertNull(started.get(0));
+    }
+
+    @Test
+    public void given_belowLimit_when_tryStart_then_startedAndPermitReturned() {
+        // given
+        FetchExecutor executor = new FetchExecutor("test", 2);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+
+        // when
+        executor.fetchAll(Arrays.asList("page"), key -> started.add(executor.tryStart(() -> "next")),
+            10, TimeUnit.SECONDS);
+
+        // then
+        assertEquals("next", started.get(0).join());
+        assertNotNull(executor.tryStart(() -> "next"));
+        assertNotNull(executor.tryStart(() -> "next"));
+    }
+
+    @Test
+    public void given_callsStartedAhead_when_fetchAll_then_limitNotExceeded() {
+        // given
+        FetchExecutor executor = new FetchExecutor("test", 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Supplier<Integer> call = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(50);
+            running.decrementAndGet();
+            return 1;
+        };
+
+        // when
+        executor.fetchAll(Arrays.asList(1, 2, 3, 4, 5, 6), key -> {
+            CompletableFuture<Integer> ahead = executor.tryStart(call);
+            call.get();
+            return ahead != null ? ahead.join() : call.get();
+        }, 10, TimeUnit.SECONDS);
+
+        // then
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.keendly.adaptor;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.keendly.adaptor.exception.ApiException;
+import com.keendly.utils.JsonUtils.StreamPage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class PageIteratorTest {
+
+    @Test
+    public void given_morePagesThanNeeded_when_toList_then_stopAtLimit() {
+        // given
+        List<String> requested = new CopyOnWriteArrayList<>();
+        Function<String, StreamPage<JsonNode>> fetch = continuation -> {
+            int page = continuation == null ? 0 : Integer.parseInt(continuation);
+            requested.add(Integer.toString(page));
+            return page(page * 10, 10, Integer.toString(page + 1));
+        };
+
+        // when
+        List<Integer> items = new PageIterator<>(fetch, JsonNode::asInt, 25).toList();
+
+        // then
+        assertEquals(25, items.size());
+        assertEquals(Integer.valueOf(24), items.get(24));
+        assertEquals(Arrays.asList("0", "1", "2"), requested);
+    }
+
+    @Test
+    public void given_skippedItems_when_toList_then_fetchUntilLimitMet() {
+        // given
+        Function<String, StreamPage<JsonNode>> fetch = continuation -> {
+            int page = continuation == null ? 0 : Integer.parseInt(continuation);
+            return page(page * 10, 10, page < 5 ? Integer.toString(page + 1) : null);
+        };
+
+        // when
+        List<Integer> items = new PageIterator<>(fetch, item -> item.asInt() % 2 == 0 ? item.asInt() : null, 12).toList();
+
+        // then
+        assertEquals(12, items.size());
+        assertEquals(Integer.valueOf(22), items.get(11));
+    }
+
+    @Test
+    public void given_emptyPage_when_toList_then_stop() {
+        // given
+        Function<String, StreamPage<JsonNode>> fetch = continuation -> continuation == null
+            ? page(0, 5, "next")
+            : new StreamPage<>(Collections.emptyList(), "next");
+
+        // when
+        List<Integer> items = new PageIterator<>(fetch, JsonNode::asInt, 100).toList();
+
+        // then
+        assertEquals(5, items.size());
+    }
+
+    @Test
+    public void given_nextPageNeeded_when_next_then_fetchItWhileMapping() throws Exception {
+        // given
+        CountDownLatch secondPageRequested = new CountDownLatch(1);
+        Function<String, StreamPage<JsonNode>> fetch = continuation -> {
+            if (continuation == null) {
+                return page(0, 1, "1");
+            }
+            secondPageRequested.countDown();
+            return page(1, 1, null);
+        };
+
+        // when
+        List<Integer> items = new ArrayList<>(new PageIterator<>(fetch, item -> {
+            if (item.asInt() == 0) {
+                await(secondPageRequested);
+            }
+            return item.asInt();
+        }, 2, new FetchExecutor("test", 2)).toList());
+
+        // then
+        assertEquals(Arrays.asList(0, 1), items);
+    }
+
+    @Test(expected = ApiException.class)
+    public void given_prefetchFails_when_next_then_throwException() {
+        // given
+        Function<String, StreamPage<JsonNode>> fetch = continuation -> {
+            if (continuation == null) {
+                return page(0, 1, "1");
+            }
+            throw new ApiException(500, "error");
+        };
+
+        // when
+        new PageIterator<>(fetch, JsonNode::asInt, 2, new FetchExecutor("test", 2)).toList();
+    }
+
+    @Test
+    public void given_withoutPrefetch_when_next_then_requestOnlyThatPage() {
+        // given
+        List<String> requested = new CopyOnWriteArrayList<>();
+        Function<String, StreamPage<JsonNode>> fetch = continuation -> {
+            int page = continuation == null ? 0 : Integer.parseInt(continuation);
+            requested.add(Integer.toString(page));
+            return page(page * 10, 10, Integer.toString(page + 1));
+        };
+        PageIterator<Integer> pages = new PageIterator<>(fetch, JsonNode::asInt, 100).withoutPrefetch();
+
+        // when
+        List<Integer> items = pages.next();
+
+        // then
+        assertEquals(10, items.size());
+        assertTrue(pages.hasNext());
+        assertEquals(Arrays.asList("0"), requested);
+    }
+
+    private static StreamPage<JsonNode> page(int from, int size, String continuation) {
+        List<JsonNode> items = new ArrayList<>();
+        for (int i = from; i < from + size; i++) {
+            items.add(JsonNodeFactory.instance.numberNode(i));
+        }
+        return new StreamPage<>(items, continuation);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue("next page not requested while mapping", latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
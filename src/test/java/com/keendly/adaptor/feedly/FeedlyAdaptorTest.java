@@ -9,6 +9,7 @@ import static org.junit.Assert.*;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.keendly.adaptor.ClientFactory;
 import com.keendly.adaptor.exception.ApiException;
 import com.keendly.adaptor.model.ExternalFeed;
 import com.keendly.adaptor.model.ExternalUser;
@@ -19,6 +20,7 @@ import lombok.Setter;
 import lombok.experimental.Accessors;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
+import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
@@ -28,6 +30,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class FeedlyAdaptorTest {
 
@@ -38,6 +43,12 @@ public class FeedlyAdaptorTest {
     @Rule
     public WireMockRule wireMockRule = new WireMockRule((wireMockConfig().dynamicPort()));
 
+    @After
+    public void closeConnections() {
+        // the next test's server may be on the same port
+        ClientFactory.closeIdle();
+    }
+
     @Test
     public void given_ResponseOK_when_login_then_ReturnToken() throws Exception {
         String AUTHORIZATION_CODE = "dummy_auth_code";
@@ -421,10 +432,62 @@ public class FeedlyAdaptorTest {
             .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
     }
 
+    @Test
+    public void given_ManyFeeds_when_getUnread_then_FetchGlobalStreamAndSplitByFeed() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        String FEED_ID1 = "feed/http://feeds.feedburner.com/niebezpiecznik/";
+        String FEED_ID2 = "feed/http://feeds.lifehack.org/Lifehack";
+        String OTHER_FEED_ID = "feed/http://www.sprengsatz.de/?feed=rss2";
+        String GLOBAL_ALL = "user/c805fcbf-3acf-4302-a97e-d82f9d7c897f/category/global.all";
+
+        // given
+        JSONObject item1 = new FeedItem().id("1").title("1").url("http://example.com/1").content("1")
+            .unread(true).origin(FEED_ID1).build();
+        JSONObject item2 = new FeedItem().id("2").title("2").url("http://example.com/2").content("2")
+            .unread(true).origin(OTHER_FEED_ID).build();
+        JSONObject item3 = new FeedItem().id("3").title("3").url("http://example.com/3").content("3")
+            .unread(true).origin(FEED_ID2).build();
+        JSONObject item4 = new FeedItem().id("4").title("4").url("http://example.com/4").content("4")
+            .unread(true).origin(FEED_ID1).build();
+
+        JSONObject response = new JSONObject();
+        response.put("items", asList(item1, item2, item3, item4));
+
+        givenThat(get(urlPathEqualTo("/streams/" + URLEncoder.encode(GLOBAL_ALL, "UTF-8") + "/contents"))
+            .willReturn(aResponse().withStatus(200).withBody(response.toString())));
+
+        JSONObject unreadResponse = new JSONObject();
+        unreadResponse.put("unreadcounts", asList(unreadCount(FEED_ID1, 2), unreadCount(FEED_ID2, 1),
+            unreadCount(OTHER_FEED_ID, 1), unreadCount(GLOBAL_ALL, 4)));
+
+        givenThat(get(urlEqualTo("/markers/counts"))
+            .willReturn(aResponse().withStatus(200).withBody(unreadResponse.toString())));
+
+        // when
+        Map<String, List<FeedEntry>> unread = feedlyAdaptor(ACCESS_TOKEN).getUnread(asList(FEED_ID1, FEED_ID2));
+
+        // then
+        assertEquals(2, unread.size());
+        assertEquals(asList("1", "4"), unread.get(FEED_ID1).stream().map(FeedEntry::getId).collect(Collectors.toList()));
+        assertEquals(asList("3"), unread.get(FEED_ID2).stream().map(FeedEntry::getId).collect(Collectors.toList()));
+
+        verify(1, getRequestedFor(urlPathEqualTo("/streams/" + URLEncoder.encode(GLOBAL_ALL, "UTF-8") + "/contents"))
+            .withQueryParam("unreadOnly", equalTo("true"))
+            .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
+        verify(0, getRequestedFor(urlPathEqualTo("/streams/" + URLEncoder.encode(FEED_ID1, "UTF-8") + "/contents")));
+    }
+
+    private static JSONObject unreadCount(String id, int count) {
+        JSONObject unreadCount = new JSONObject();
+        unreadCount.put("id", id);
+        unreadCount.put("count", count);
+        return unreadCount;
+    }
+
     @Accessors(fluent = true)
     @Setter
     private class FeedItem {
-        String id, title, author, url, content;
+        String id, title, author, url, content, origin;
         long published;
         boolean unread;
 
@@ -442,6 +505,11 @@ public class FeedlyAdaptorTest {
             summary.put("content", content);
             item.put("summary", summary);
             item.put("unread", unread);
+            if (origin != null) {
+                JSONObject originStream = new JSONObject();
+                originStream.put("streamId", origin);
+                item.put("origin", originStream);
+            }
             return item;
         }
     }
@@ -687,6 +755,45 @@ public class FeedlyAdaptorTest {
             .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
     }
 
+    @Test
+    public void given_Unauthorized_when_concurrentRequests_then_RefreshTokenOnce() throws Exception {
+        String EXPIRED_ACCESS_TOKEN = "my_token";
+        String NEW_ACCESS_TOKEN = "my_token1";
+        String REFRESH_TOKEN = "refresh_token1";
+
+        // given
+        // both requests are rejected before any of them refreshes the token
+        givenThat(get(urlEqualTo("/profile"))
+            .withHeader("Authorization", equalTo("Bearer " + EXPIRED_ACCESS_TOKEN))
+            .willReturn(aResponse().withStatus(401).withFixedDelay(500)));
+
+        JSONObject refreshTokenResponse = new JSONObject();
+        refreshTokenResponse.put("access_token", NEW_ACCESS_TOKEN);
+        givenThat(post(urlEqualTo("/auth/token"))
+            .willReturn(aResponse().withStatus(200).withBody(refreshTokenResponse.toString())));
+
+        JSONObject response = new JSONObject();
+        response.put("id", "1001921515");
+        response.put("fullName", "BenderIsGreat");
+        response.put("email", "bender@inoreader.com");
+        givenThat(get(urlEqualTo("/profile"))
+            .withHeader("Authorization", equalTo("Bearer " + NEW_ACCESS_TOKEN))
+            .willReturn(aResponse().withStatus(200).withBody(response.toString())));
+
+        // when
+        FeedlyAdaptor adaptor = feedlyAdaptor(EXPIRED_ACCESS_TOKEN, REFRESH_TOKEN);
+        CompletableFuture<ExternalUser> first = CompletableFuture.supplyAsync(adaptor::getUser);
+        CompletableFuture<ExternalUser> second = CompletableFuture.supplyAsync(adaptor::getUser);
+
+        // then
+        assertEquals("1001921515", first.get(10, TimeUnit.SECONDS).getId());
+        assertEquals("1001921515", second.get(10, TimeUnit.SECONDS).getId());
+        assertEquals(NEW_ACCESS_TOKEN, adaptor.getToken().getAccessToken());
+        verify(2, getRequestedFor(urlEqualTo("/profile"))
+            .withHeader("Authorization", equalTo("Bearer " + EXPIRED_ACCESS_TOKEN)));
+        verify(1, postRequestedFor(urlEqualTo("/auth/token")));
+    }
+
     private FeedlyAdaptor feedlyAdaptor(String accessToken) {
         return feedlyAdaptor(accessToken, null);
     }
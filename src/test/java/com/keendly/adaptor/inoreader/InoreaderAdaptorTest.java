@@ -8,6 +8,7 @@ import static org.junit.Assert.*;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import com.google.common.net.UrlEscapers;
+import com.keendly.adaptor.ClientFactory;
 import com.keendly.adaptor.exception.ApiException;
 import com.keendly.adaptor.model.ExternalFeed;
 import com.keendly.adaptor.model.ExternalUser;
@@ -23,6 +24,7 @@ import lombok.experimental.Accessors;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import org.apache.http.HttpStatus;
+import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
@@ -42,6 +44,12 @@ public class InoreaderAdaptorTest {
     @Rule
     public WireMockRule wireMockRule = new WireMockRule(PORT);
 
+    @After
+    public void closeConnections() {
+        // the next test's server may be on the same port
+        ClientFactory.closeIdle();
+    }
+
     @Test
     public void given_ResponseOK_when_login_then_ReturnToken() throws Exception {
         String AUTHORIZATION_CODE = "dummy_auth_code";
@@ -352,6 +360,151 @@ public class InoreaderAdaptorTest {
             .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
     }
 
+    @Test
+    public void given_UnreadCountFetched_when_getUnread_then_DontFetchItAgainNorReadFeeds() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        String FEED_ID = "feed/http://feeds.lifehack.org/Lifehack";
+        String READ_FEED_ID = "feed/http://feeds.feedburner.com/GoogleEarthBlog";
+
+        // given
+        JSONObject response = new JSONObject();
+        response.put("items", asList(new FeedItem().id("1").title("title").url("http://example.com/1").build()));
+
+        givenThat(get(urlMatching("/stream/contents/.*"))
+            .willReturn(aResponse().withStatus(200).withBody(response.toString())));
+
+        JSONObject unreadResponse = new JSONObject();
+        JSONObject feed1 = new JSONObject();
+        feed1.put("id", FEED_ID);
+        feed1.put("count", 1);
+        JSONObject feed2 = new JSONObject();
+        feed2.put("id", READ_FEED_ID);
+        feed2.put("count", 0);
+        unreadResponse.put("unreadcounts", asList(feed1, feed2));
+
+        givenThat(get(urlEqualTo("/unread-count"))
+            .willReturn(aResponse().withStatus(200).withBody(unreadResponse.toString())));
+
+        // when
+        InoreaderAdaptor adaptor = inoreaderAdaptor(ACCESS_TOKEN);
+        Map<String, Integer> unreadCount = adaptor.getUnreadCount();
+        Map<String, List<FeedEntry>> unread = adaptor.getUnread(asList(FEED_ID, READ_FEED_ID));
+
+        // then
+        assertEquals(2, unreadCount.size());
+        assertEquals(1, unread.get(FEED_ID).size());
+        assertTrue(unread.get(READ_FEED_ID).isEmpty());
+
+        verify(1, getRequestedFor(urlEqualTo("/unread-count")));
+        verify(1, getRequestedFor(urlMatching("/stream/contents/.*")));
+        verify(getRequestedFor(urlPathEqualTo("/stream/contents/"
+            + UrlEscapers.urlPathSegmentEscaper().escape(FEED_ID))));
+    }
+
+    @Test
+    public void given_Budget_when_getUnread_then_MergeNewestAndDontFetchNextPages() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        String FEED_ID1 = "feed/http://feeds.lifehack.org/Lifehack";
+        String FEED_ID2 = "feed/http://feeds.feedburner.com/GoogleEarthBlog";
+
+        // given
+        List<JSONObject> items1 = new ArrayList<>();
+        List<JSONObject> items2 = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items1.add(new FeedItem().id("1-" + i).url("http://example.com/1/" + i).published(1000 - i * 2).build());
+            items2.add(new FeedItem().id("2-" + i).url("http://example.com/2/" + i).published(999 - i * 2).build());
+        }
+        JSONObject page1 = new JSONObject();
+        page1.put("items", items1);
+        page1.put("continuation", "next");
+        JSONObject page2 = new JSONObject();
+        page2.put("items", items2);
+        page2.put("continuation", "next");
+
+        givenThat(get(urlPathEqualTo("/stream/contents/" + UrlEscapers.urlPathSegmentEscaper().escape(FEED_ID1)))
+            .willReturn(aResponse().withStatus(200).withBody(page1.toString())));
+        givenThat(get(urlPathEqualTo("/stream/contents/" + UrlEscapers.urlPathSegmentEscaper().escape(FEED_ID2)))
+            .willReturn(aResponse().withStatus(200).withBody(page2.toString())));
+
+        JSONObject unreadResponse = new JSONObject();
+        JSONObject feed1 = new JSONObject();
+        feed1.put("id", FEED_ID1);
+        feed1.put("count", 50);
+        JSONObject feed2 = new JSONObject();
+        feed2.put("id", FEED_ID2);
+        feed2.put("count", 50);
+        unreadResponse.put("unreadcounts", asList(feed1, feed2));
+
+        givenThat(get(urlEqualTo("/unread-count"))
+            .willReturn(aResponse().withStatus(200).withBody(unreadResponse.toString())));
+
+        // when
+        Map<String, List<FeedEntry>> unread = inoreaderAdaptor(ACCESS_TOKEN).getUnread(asList(FEED_ID1, FEED_ID2), 30);
+
+        // then
+        assertEquals(15, unread.get(FEED_ID1).size());
+        assertEquals(15, unread.get(FEED_ID2).size());
+        assertEquals("1-0", unread.get(FEED_ID1).get(0).getId());
+        assertEquals("2-14", unread.get(FEED_ID2).get(14).getId());
+
+        verify(2, getRequestedFor(urlMatching("/stream/contents/.*")));
+        verify(0, getRequestedFor(urlMatching("/stream/contents/.*")).withQueryParam("c", equalTo("next")));
+    }
+
+    @Test
+    public void given_BudgetOverFirstPages_when_getUnread_then_MergeNextPages() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        String FEED_ID1 = "feed/http://feeds.lifehack.org/Lifehack";
+        String FEED_ID2 = "feed/http://feeds.feedburner.com/GoogleEarthBlog";
+
+        // given
+        for (int feed = 1; feed <= 2; feed++) {
+            String path = "/stream/contents/"
+                + UrlEscapers.urlPathSegmentEscaper().escape(feed == 1 ? FEED_ID1 : FEED_ID2);
+            for (int pageNumber = 0; pageNumber < 2; pageNumber++) {
+                List<JSONObject> items = new ArrayList<>();
+                for (int i = pageNumber * 20; i < pageNumber * 20 + 20; i++) {
+                    items.add(new FeedItem().id(feed + "-" + i).url("http://example.com/" + feed + "/" + i)
+                        .published(1000 - i * 2 - feed).build());
+                }
+                JSONObject page = new JSONObject();
+                page.put("items", items);
+                if (pageNumber == 0) {
+                    page.put("continuation", "next");
+                    givenThat(get(urlPathEqualTo(path)).withQueryParam("c", absent())
+                        .willReturn(aResponse().withStatus(200).withBody(page.toString())));
+                } else {
+                    givenThat(get(urlPathEqualTo(path)).withQueryParam("c", equalTo("next"))
+                        .willReturn(aResponse().withStatus(200).withBody(page.toString())));
+                }
+            }
+        }
+
+        JSONObject unreadResponse = new JSONObject();
+        JSONObject feed1 = new JSONObject();
+        feed1.put("id", FEED_ID1);
+        feed1.put("count", 40);
+        JSONObject feed2 = new JSONObject();
+        feed2.put("id", FEED_ID2);
+        feed2.put("count", 40);
+        unreadResponse.put("unreadcounts", asList(feed1, feed2));
+
+        givenThat(get(urlEqualTo("/unread-count"))
+            .willReturn(aResponse().withStatus(200).withBody(unreadResponse.toString())));
+
+        // when
+        InoreaderAdaptor adaptor = inoreaderAdaptor(ACCESS_TOKEN);
+        Map<String, List<FeedEntry>> unread = adaptor.getUnread(asList(FEED_ID1, FEED_ID2), 70);
+
+        // then
+        assertEquals(35, unread.get(FEED_ID1).size());
+        assertEquals(35, unread.get(FEED_ID2).size());
+        assertEquals("1-34", unread.get(FEED_ID1).get(34).getId());
+        assertEquals("2-34", unread.get(FEED_ID2).get(34).getId());
+        assertTrue(adaptor.getTimedOutFeeds().isEmpty());
+        verify(2, getRequestedFor(urlMatching("/stream/contents/.*")).withQueryParam("c", equalTo("next")));
+    }
+
     @Test
     public void given_MoreResults_when_getUnread_then_FetchNextPage() throws Exception {
         String ACCESS_TOKEN = "my_token";
@@ -485,7 +638,7 @@ public class InoreaderAdaptorTest {
     @Accessors(fluent = true)
     @Setter
     private class FeedItem {
-        String id, title, author, url, content;
+        String id, title, author, url, content, origin;
         long published;
 
         JSONObject build() throws Exception {
@@ -501,10 +654,129 @@ public class InoreaderAdaptorTest {
             JSONObject summary = new JSONObject();
             summary.put("content", content);
             item.put("summary", summary);
+            if (origin != null) {
+                JSONObject originStream = new JSONObject();
+                originStream.put("streamId", origin);
+                item.put("origin", originStream);
+            }
             return item;
         }
     }
 
+    @Test
+    public void given_ManyFeeds_when_getUnread_then_FetchReadingListAndSplitByFeed() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        String FEED_ID1 = "feed/https://feeds.feedburner.com/niebezpiecznik/";
+        String FEED_ID2 = "feed/http://feeds.lifehack.org/Lifehack";
+        String FEED_ID3 = "feed/http://www.sprengsatz.de/?feed=rss2";
+        String OTHER_FEED_ID = "feed/http://feeds.feedburner.com/blogspot/MKuf";
+
+        // given
+        JSONObject unreadResponse = new JSONObject();
+        unreadResponse.put("unreadcounts", asList(unreadCount(FEED_ID1, 2), unreadCount(FEED_ID2, 1),
+            unreadCount(FEED_ID3, 1), unreadCount(OTHER_FEED_ID, 1),
+            unreadCount("user/1005921515/state/com.google/reading-list", 5)));
+
+        givenThat(get(urlEqualTo("/unread-count"))
+            .willReturn(aResponse().withStatus(200).withBody(unreadResponse.toString())));
+
+        JSONObject idsResponse = new JSONObject();
+        idsResponse.put("items", new JSONArray());
+        idsResponse.put("itemRefs", asList(itemRef("1", FEED_ID1, "user/1005921515/label/News"),
+            itemRef("2", OTHER_FEED_ID), itemRef("3", FEED_ID2), itemRef("255", FEED_ID1), itemRef("5", FEED_ID3)));
+
+        givenThat(get(urlPathEqualTo("/stream/items/ids"))
+            .willReturn(aResponse().withStatus(200).withBody(idsResponse.toString())));
+
+        JSONObject contentsResponse = new JSONObject();
+        contentsResponse.put("items", asList(
+            new FeedItem().id("tag:google.com,2005:reader/item/00000000000000ff").title("255").origin(FEED_ID1).build(),
+            new FeedItem().id("tag:google.com,2005:reader/item/0000000000000001").title("1").origin(FEED_ID1).build(),
+            new FeedItem().id("tag:google.com,2005:reader/item/0000000000000003").title("3").origin(FEED_ID2).build(),
+            new FeedItem().id("tag:google.com,2005:reader/item/0000000000000005").title("5").origin(FEED_ID3).build()));
+
+        givenThat(post(urlEqualTo("/stream/items/contents"))
+            .willReturn(aResponse().withStatus(200).withBody(contentsResponse.toString())));
+
+        // when
+        Map<String, List<FeedEntry>> unread =
+            inoreaderAdaptor(ACCESS_TOKEN).getUnread(asList(FEED_ID1, FEED_ID2, FEED_ID3));
+
+        // then
+        assertEquals(3, unread.size());
+        assertEquals(asList("1", "255"), titles(unread.get(FEED_ID1)));
+        assertEquals(asList("3"), titles(unread.get(FEED_ID2)));
+        assertEquals(asList("5"), titles(unread.get(FEED_ID3)));
+
+        verify(1, getRequestedFor(urlPathEqualTo("/stream/items/ids"))
+            .withQueryParam("s", equalTo("user/-/state/com.google/reading-list"))
+            .withQueryParam("xt", equalTo("user/-/state/com.google/read"))
+            .withQueryParam("includeAllDirectStreamIds", equalTo("true"))
+            .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
+        verify(1, postRequestedFor(urlEqualTo("/stream/items/contents"))
+            .withRequestBody(containing("i=255"))
+            .withRequestBody(notMatching(".*i=2&.*|.*i=2$"))
+            .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
+        verify(0, getRequestedFor(urlMatching("/stream/contents/.*")));
+    }
+
+    private static JSONObject unreadCount(String id, int count) {
+        JSONObject unreadCount = new JSONObject();
+        unreadCount.put("id", id);
+        unreadCount.put("count", count);
+        return unreadCount;
+    }
+
+    private static JSONObject itemRef(String id, String... streamIds) {
+        JSONObject ref = new JSONObject();
+        ref.put("id", id);
+        ref.put("directStreamIds", asList(streamIds));
+        return ref;
+    }
+
+    private static List<String> titles(List<FeedEntry> entries) {
+        List<String> titles = new ArrayList<>();
+        entries.forEach(entry -> titles.add(entry.getTitle()));
+        return titles;
+    }
+
+    @Test
+    public void given_ErrorForOneFeed_when_getUnread_then_ReturnOtherFeedsAndReportIt() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        String FEED_ID1 = "feed/http://feeds.lifehack.org/Lifehack";
+        String FEED_ID2 = "feed/http://feeds.feedburner.com/GoogleEarthBlog";
+
+        // given
+        JSONObject page = new JSONObject();
+        page.put("items", asList(new FeedItem().id("1-0").url("http://example.com/1/0").published(1000).build()));
+        givenThat(get(urlPathEqualTo("/stream/contents/" + UrlEscapers.urlPathSegmentEscaper().escape(FEED_ID1)))
+            .willReturn(aResponse().withStatus(200).withBody(page.toString())));
+        givenThat(get(urlPathEqualTo("/stream/contents/" + UrlEscapers.urlPathSegmentEscaper().escape(FEED_ID2)))
+            .willReturn(aResponse().withStatus(500).withBody("error")));
+
+        JSONObject unreadResponse = new JSONObject();
+        JSONObject feed1 = new JSONObject();
+        feed1.put("id", FEED_ID1);
+        feed1.put("count", 1);
+        JSONObject feed2 = new JSONObject();
+        feed2.put("id", FEED_ID2);
+        feed2.put("count", 1);
+        unreadResponse.put("unreadcounts", asList(feed1, feed2));
+
+        givenThat(get(urlEqualTo("/unread-count"))
+            .willReturn(aResponse().withStatus(200).withBody(unreadResponse.toString())));
+
+        // when
+        InoreaderAdaptor adaptor = inoreaderAdaptor(ACCESS_TOKEN);
+        Map<String, List<FeedEntry>> unread = adaptor.getUnread(asList(FEED_ID1, FEED_ID2), 10);
+
+        // then
+        assertEquals(1, unread.get(FEED_ID1).size());
+        assertNull(unread.get(FEED_ID2));
+        assertEquals(asList(FEED_ID2), adaptor.getFailedFeeds());
+        assertTrue(adaptor.getTimedOutFeeds().isEmpty());
+    }
+
     @Test
     public void given_Error_when_getUnread_then_ThrowException() throws Exception {
         String FEED_ID = "feed_id";
@@ -575,8 +847,10 @@ public class InoreaderAdaptorTest {
         long timestamp = System.currentTimeMillis();
 
         // given
-        givenThat(get(urlMatching("/mark-all-as-read.*")).inScenario("Mark as read with refresh")
-            .whenScenarioStateIs(Scenario.STARTED).willReturn(aResponse().withStatus(403)).willSetStateTo("Forbidden"));
+        // feeds are marked concurrently, every one of them with the expired token is rejected
+        givenThat(get(urlMatching("/mark-all-as-read.*"))
+            .withHeader("Authorization", equalTo("Bearer " + EXPIRED_ACCESS_TOKEN))
+            .willReturn(aResponse().withStatus(403)));
 
         JSONObject refreshTokenResponse = new JSONObject();
         refreshTokenResponse.put("access_token", NEW_ACCESS_TOKEN);
@@ -584,8 +858,9 @@ public class InoreaderAdaptorTest {
         givenThat(post(urlEqualTo("/auth"))
             .willReturn(aResponse().withStatus(200).withBody(refreshTokenResponse.toString())));
 
-        givenThat(get(urlMatching("/mark-all-as-read.*")).inScenario("Mark as read with refresh")
-            .whenScenarioStateIs("Forbidden").willReturn(aResponse().withStatus(200)));
+        givenThat(get(urlMatching("/mark-all-as-read.*"))
+            .withHeader("Authorization", equalTo("Bearer " + NEW_ACCESS_TOKEN))
+            .willReturn(aResponse().withStatus(200)));
 
         // when
         boolean success = inoreaderAdaptor(EXPIRED_ACCESS_TOKEN, REFRESH_TOKEN)
@@ -606,6 +881,11 @@ public class InoreaderAdaptorTest {
         verify(getRequestedFor(urlPathEqualTo("/mark-all-as-read")).withQueryParam("s", equalTo(FEED_ID1))
             .withQueryParam("ts", equalTo(Long.toString(timestamp * 1000)))
             .withHeader("Authorization", equalTo("Bearer " + NEW_ACCESS_TOKEN)));
+
+        verify(getRequestedFor(urlPathEqualTo("/mark-all-as-read")).withQueryParam("s", equalTo(FEED_ID2))
+            .withQueryParam("ts", equalTo(Long.toString(timestamp * 1000)))
+            .withHeader("Authorization", equalTo("Bearer " + NEW_ACCESS_TOKEN)));
+        verify(1, postRequestedFor(urlMatching("/auth")));
     }
 
     @Test
@@ -636,6 +916,56 @@ public class InoreaderAdaptorTest {
             .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
     }
 
+    @Test
+    public void given_OneFeedFails_when_markAsRead_then_OtherFeedsMarkedAndFailureReported() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        String FEED_ID1 = "feed/http://www.sprengsatz.de/?feed=rss2";
+        String FEED_ID2 = "feed/http://warszawskibiegacz.pl/?feed=rss2";
+        long timestamp = System.currentTimeMillis();
+
+        // given
+        givenThat(get(urlMatching("/mark-all-as-read.*")).willReturn(aResponse().withStatus(200)));
+        givenThat(get(urlPathEqualTo("/mark-all-as-read")).withQueryParam("s", equalTo(FEED_ID1))
+            .willReturn(aResponse().withStatus(500)));
+        InoreaderAdaptor adaptor = inoreaderAdaptor(ACCESS_TOKEN);
+
+        // when
+        Exception thrown = null;
+        try {
+            adaptor.markFeedRead(asList(FEED_ID1, FEED_ID2), timestamp);
+        } catch (Exception e) {
+            thrown = e;
+        }
+
+        // then
+        assertEquals(500, ((ApiException) thrown).getStatus());
+        assertEquals(asList(FEED_ID1), adaptor.getNotMarkedFeeds());
+        verify(getRequestedFor(urlPathEqualTo("/mark-all-as-read")).withQueryParam("s", equalTo(FEED_ID2)));
+    }
+
+    @Test
+    public void given_ManyFeeds_when_markAsRead_then_MarkConcurrently() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        int DELAY = 200;
+        List<String> feedIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            feedIds.add("feed/http://example.com/" + i);
+        }
+
+        // given
+        givenThat(get(urlMatching("/mark-all-as-read.*")).willReturn(aResponse().withStatus(200).withFixedDelay(DELAY)));
+
+        // when
+        long start = System.currentTimeMillis();
+        boolean success = inoreaderAdaptor(ACCESS_TOKEN).markFeedRead(feedIds, System.currentTimeMillis());
+        long took = System.currentTimeMillis() - start;
+
+        // then
+        assertTrue(success);
+        assertTrue("took " + took + "ms", took < feedIds.size() * DELAY / 2);
+        verify(feedIds.size(), getRequestedFor(urlPathEqualTo("/mark-all-as-read")));
+    }
+
     @Test
     public void given_ResponseOK_when_getFeeds_then_ReturnFeeds() throws Exception {
         String ACCESS_TOKEN = "my_token";
@@ -750,10 +1080,11 @@ public class InoreaderAdaptorTest {
         // then
         assertTrue(success);
 
-        verify(
-            postRequestedFor(urlPathEqualTo("/edit-tag")).withQueryParam("a", equalTo("user/-/state/com.google/read"))
-                .withQueryParam("i", equalTo(ARTICLE_ID1)).withQueryParam("i", equalTo(ARTICLE_ID2))
-                .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
+        verify(postRequestedFor(urlEqualTo("/edit-tag"))
+            .withRequestBody(thatContainsParams(param("a", "user/-/state/com.google/read"),
+                param("i", ARTICLE_ID1), param("i", ARTICLE_ID2)))
+            .withHeader("Content-Type", containing("application/x-www-form-urlencoded"))
+            .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
     }
 
     @Test
@@ -771,10 +1102,11 @@ public class InoreaderAdaptorTest {
         // then
         assertTrue(success);
 
-        verify(
-            postRequestedFor(urlPathEqualTo("/edit-tag")).withQueryParam("r", equalTo("user/-/state/com.google/read"))
-                .withQueryParam("i", equalTo(ARTICLE_ID1)).withQueryParam("i", equalTo(ARTICLE_ID2))
-                .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
+        verify(postRequestedFor(urlEqualTo("/edit-tag"))
+            .withRequestBody(thatContainsParams(param("r", "user/-/state/com.google/read"),
+                param("i", ARTICLE_ID1), param("i", ARTICLE_ID2)))
+            .withHeader("Content-Type", containing("application/x-www-form-urlencoded"))
+            .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
     }
 
     @Test
@@ -792,9 +1124,61 @@ public class InoreaderAdaptorTest {
         // then
         assertTrue(success);
 
-        verify(postRequestedFor(urlPathEqualTo("/edit-tag"))
-            .withQueryParam("a", equalTo("user/-/state/com.google/starred")).withQueryParam("i", equalTo(ARTICLE_ID1))
-            .withQueryParam("i", equalTo(ARTICLE_ID2)).withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
+        verify(postRequestedFor(urlEqualTo("/edit-tag"))
+            .withRequestBody(thatContainsParams(param("a", "user/-/state/com.google/starred"),
+                param("i", ARTICLE_ID1), param("i", ARTICLE_ID2)))
+            .withHeader("Content-Type", containing("application/x-www-form-urlencoded"))
+            .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
+    }
+
+    @Test
+    public void given_ManyArticles_when_markArticleRead_then_SendInChunks() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        List<String> articleIds = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            articleIds.add(String.format("tag:google.com,2005:reader/item/%016x", 1000 + i));
+        }
+
+        // given
+        givenThat(post(urlEqualTo("/edit-tag")).willReturn(aResponse().withStatus(200)));
+
+        // when
+        boolean success = inoreaderAdaptor(ACCESS_TOKEN).markArticleRead(articleIds);
+
+        // then
+        assertTrue(success);
+        verify(3, postRequestedFor(urlEqualTo("/edit-tag")));
+        for (String articleId : articleIds) {
+            verify(1, postRequestedFor(urlEqualTo("/edit-tag"))
+                .withRequestBody(thatContainsParams(param("i", articleId))));
+        }
+    }
+
+    @Test
+    public void given_ChunkFails_when_markArticleRead_then_OtherChunksSentAndThrowException() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        List<String> articleIds = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            articleIds.add(String.format("tag:google.com,2005:reader/item/%016x", 1000 + i));
+        }
+
+        // given
+        givenThat(post(urlEqualTo("/edit-tag")).willReturn(aResponse().withStatus(200)));
+        givenThat(post(urlEqualTo("/edit-tag"))
+            .withRequestBody(thatContainsParams(param("i", articleIds.get(0))))
+            .willReturn(aResponse().withStatus(500)));
+
+        // when
+        Exception thrown = null;
+        try {
+            inoreaderAdaptor(ACCESS_TOKEN).markArticleRead(articleIds);
+        } catch (Exception e) {
+            thrown = e;
+        }
+
+        // then
+        assertEquals(500, ((ApiException) thrown).getStatus());
+        verify(2, postRequestedFor(urlEqualTo("/edit-tag")));
     }
 
     private static Map<InoreaderAdaptor.InoreaderParam, String> config() {
@@ -9,6 +9,7 @@ import static org.junit.Assert.*;
 import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.keendly.adaptor.ClientFactory;
 import com.keendly.adaptor.exception.ApiException;
 import com.keendly.adaptor.model.ExternalFeed;
 import com.keendly.adaptor.model.ExternalUser;
@@ -16,10 +17,12 @@ import com.keendly.adaptor.model.FeedEntry;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
 import net.minidev.json.JSONObject;
+import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +42,12 @@ public class NewsblurAdaptorTest {
             .fileSource(new SingleRootFileSource(RESOURCES))
     );
 
+    @After
+    public void closeConnections() {
+        // the next test's server may be on the same port
+        ClientFactory.closeIdle();
+    }
+
     @Test
     public void given_ResponseOK_when_login_then_ReturnToken() throws Exception {
         String AUTHORIZATION_CODE = "dummy_auth_code";
@@ -413,21 +422,40 @@ public class NewsblurAdaptorTest {
         // then
         assertTrue(success);
 
-        verify(postRequestedFor(urlPathEqualTo("/reader/mark_feed_as_read"))
+        verify(1, postRequestedFor(urlPathEqualTo("/reader/mark_feed_as_read"))
                 .withRequestBody(thatContainsParams(
                         param("feed_id", FEED_ID1),
-                        param("cutoff_timestamp", Long.toString(timestamp / 1000))
-                ))
-                .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
-
-        verify(postRequestedFor(urlPathEqualTo("/reader/mark_feed_as_read"))
-                .withRequestBody(thatContainsParams(
                         param("feed_id", FEED_ID2),
                         param("cutoff_timestamp", Long.toString(timestamp / 1000))
                 ))
                 .withHeader("Authorization", equalTo("Bearer " + ACCESS_TOKEN)));
     }
 
+    @Test
+    public void given_MoreFeedsThanBatch_when_markAsRead_then_MarkInBatches() throws Exception {
+        String ACCESS_TOKEN = "my_token";
+        List<String> feedIds = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            feedIds.add(Integer.toString(6297500 + i));
+        }
+
+        // given
+        givenThat(post(urlEqualTo("/reader/mark_feed_as_read"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+
+        // when
+        boolean success = newsblurAdaptor(ACCESS_TOKEN).markFeedRead(feedIds, System.currentTimeMillis());
+
+        // then
+        assertTrue(success);
+        verify(3, postRequestedFor(urlPathEqualTo("/reader/mark_feed_as_read")));
+        for (String feedId : feedIds) {
+            verify(1, postRequestedFor(urlPathEqualTo("/reader/mark_feed_as_read"))
+                    .withRequestBody(thatContainsParams(param("feed_id", feedId))));
+        }
+    }
+
     @Test
     public void given_ResponseOK_when_markArticleRead_then_ReturnSuccess() throws Exception {
         String ACCESS_TOKEN = "my_token";
@@ -8,8 +8,10 @@ import static org.junit.Assert.*;
 
 import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.keendly.adaptor.ClientFactory;
 import com.keendly.adaptor.model.auth.Credentials;
 import com.keendly.adaptor.model.auth.Token;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -27,6 +29,12 @@ public class OldReaderAdaptorTest {
             .fileSource(new SingleRootFileSource(RESOURCES))
     );
 
+    @After
+    public void closeConnections() {
+        // the next test's server may be on the same port
+        ClientFactory.closeIdle();
+    }
+
     @Test
     public void given_ResponseOK_when_login_then_ReturnToken() throws Exception {
         String USERNAME = "dummy_user";
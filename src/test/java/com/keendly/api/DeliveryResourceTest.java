@@ -7,6 +7,7 @@ import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.*;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.stepfunctions.AWSStepFunctions;
 import com.amazonaws.services.stepfunctions.model.StartExecutionResult;
 import com.amazonaws.util.IOUtils;
@@ -15,10 +16,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.keendly.adaptor.Adaptor;
 import com.keendly.adaptor.AdaptorFactory;
 import com.keendly.adaptor.model.FeedEntry;
+import com.keendly.auth.UserContext;
 import com.keendly.dao.DeliveryDao;
 import com.keendly.dao.UserDao;
 import com.keendly.model.Delivery;
 import com.keendly.model.DeliveryItem;
+import com.keendly.model.Page;
 import com.keendly.model.Premium;
 import com.keendly.model.Provider;
 import com.keendly.model.Subscription;
@@ -28,6 +31,7 @@ import com.keendly.perun.PerunService;
 import com.keendly.premium.PremiumUtils;
 import com.keendly.push_notifier.PushNotifierRequest;
 import com.keendly.push_notifier.PushNotifierService;
+import com.keendly.states.ItemsFormat;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,7 +43,6 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -48,6 +51,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({AdaptorFactory.class, PremiumUtils.class})
@@ -92,7 +96,7 @@ public class DeliveryResourceTest {
     @Test
     public void given_deliveryEmailNotConfigured_when_createDelivery_then_returnError() {
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(User.builder().build());
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(User.builder().build());
 
         // when
         Response response = createDelivery(Delivery.builder().build());
@@ -105,7 +109,7 @@ public class DeliveryResourceTest {
     @Test
     public void given_tooManyFeeds_when_createDelivery_then_returnError() {
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .deliveryEmail("blabla@kindle.com")
                 .deliverySender("blabla@keendly.com")
@@ -129,7 +133,7 @@ public class DeliveryResourceTest {
         int ARTICLES_LIMIT = 500;
 
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .deliveryEmail("blabla@kindle.com")
                 .deliverySender("blabla@keendly.com")
@@ -138,7 +142,7 @@ public class DeliveryResourceTest {
 
         Map<String, List<FeedEntry>> unread = new HashMap<>();
         unread.put("feed/http://brodatyblog.pl/feed/atom/", generateArticles(ARTICLES_COUNT));
-        when(adaptor.getUnread(any())).thenReturn(unread);
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
 
         StartExecutionResult executionStart = mock(StartExecutionResult.class);
         when(executionStart.getExecutionArn()).thenReturn("dummyExecutionArn");
@@ -162,7 +166,7 @@ public class DeliveryResourceTest {
     @Test
     public void given_noArticlesInFeed_when_createDelivery_then_skipFeed() throws IOException {
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .deliveryEmail("blabla@kindle.com")
                 .deliverySender("blabla@keendly.com")
@@ -172,7 +176,7 @@ public class DeliveryResourceTest {
         Map<String, List<FeedEntry>> unread = new HashMap<>();
         unread.put("feed/http://brodatyblog.pl/feed/atom/", generateArticles(1));
         unread.put("feed/http://feeds2.feedburner.com/24thfloor", Collections.emptyList());
-        when(adaptor.getUnread(any())).thenReturn(unread);
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
 
         StartExecutionResult executionStart = mock(StartExecutionResult.class);
         when(executionStart.getExecutionArn()).thenReturn("dummyExecutionArn");
@@ -196,11 +200,116 @@ public class DeliveryResourceTest {
         assertEquals(1, stored.size());
     }
 
+    @Test
+    public void given_feedTimedOut_when_createDelivery_then_notMarkedAsReadAndReported() {
+        // given
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
+            User.builder()
+                .deliveryEmail("blabla@kindle.com")
+                .deliverySender("blabla@keendly.com")
+                .provider(Provider.INOREADER)
+                .build());
+
+        Map<String, List<FeedEntry>> unread = new HashMap<>();
+        unread.put("feed/1", generateArticles(1));
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
+        when(adaptor.getTimedOutFeeds()).thenReturn(Collections.singletonList("feed/2"));
+
+        StartExecutionResult executionStart = mock(StartExecutionResult.class);
+        when(executionStart.getExecutionArn()).thenReturn("dummyExecutionArn");
+        when(awsStepFunctions.startExecution(any())).thenReturn(executionStart);
+
+        // when
+        Response response = createDelivery(Delivery.builder()
+            .items(Arrays.asList(
+                DeliveryItem.builder().feedId("feed/1").markAsRead(true).build(),
+                DeliveryItem.builder().feedId("feed/2").markAsRead(true).build()))
+            .manual(true)
+            .build());
+
+        // then
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertEquals("NOT FETCHED IN TIME: feed/2", ((Delivery) response.getEntity()).getError());
+        ArgumentCaptor<Delivery> stored = ArgumentCaptor.forClass(Delivery.class);
+        verify(deliveryDao).createDelivery(stored.capture(), eq(USER_ID));
+        assertTrue(stored.getValue().getItems().get(0).getMarkAsRead());
+        assertFalse(stored.getValue().getItems().get(1).getMarkAsRead());
+    }
+
+    @Test
+    public void given_feedFailed_when_createDelivery_then_deliverOthersAndReportIt() {
+        // given
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
+            User.builder()
+                .deliveryEmail("blabla@kindle.com")
+                .deliverySender("blabla@keendly.com")
+                .provider(Provider.INOREADER)
+                .build());
+
+        Map<String, List<FeedEntry>> unread = new HashMap<>();
+        unread.put("feed/1", generateArticles(1));
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
+        when(adaptor.getTimedOutFeeds()).thenReturn(Collections.singletonList("feed/2"));
+        when(adaptor.getFailedFeeds()).thenReturn(Collections.singletonList("feed/3"));
+
+        StartExecutionResult executionStart = mock(StartExecutionResult.class);
+        when(executionStart.getExecutionArn()).thenReturn("dummyExecutionArn");
+        when(awsStepFunctions.startExecution(any())).thenReturn(executionStart);
+
+        // when
+        Response response = createDelivery(Delivery.builder()
+            .items(Arrays.asList(
+                DeliveryItem.builder().feedId("feed/1").markAsRead(true).build(),
+                DeliveryItem.builder().feedId("feed/2").markAsRead(true).build(),
+                DeliveryItem.builder().feedId("feed/3").markAsRead(true).build()))
+            .manual(true)
+            .build());
+
+        // then
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertEquals("NOT FETCHED IN TIME: feed/2; NOT FETCHED: feed/3", ((Delivery) response.getEntity()).getError());
+        ArgumentCaptor<Delivery> stored = ArgumentCaptor.forClass(Delivery.class);
+        verify(deliveryDao).createDelivery(stored.capture(), eq(USER_ID));
+        assertTrue(stored.getValue().getItems().get(0).getMarkAsRead());
+        assertFalse(stored.getValue().getItems().get(1).getMarkAsRead());
+        assertFalse(stored.getValue().getItems().get(2).getMarkAsRead());
+    }
+
+    @Test
+    public void given_activePremiumInUserContext_when_createScheduledDelivery_then_premiumNotChecked() {
+        // given
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
+            User.builder()
+                .deliveryEmail("blabla@kindle.com")
+                .provider(Provider.INOREADER)
+                .notifyNoArticles(false)
+                .build());
+        when(securityContext.getUserPrincipal()).thenReturn(UserContext.builder()
+            .userId(USER_ID.toString())
+            .provider(Provider.INOREADER)
+            .build());
+        PowerMockito.when(PremiumUtils.getPremiumStatus(any(User.class)))
+            .thenReturn(Premium.builder().active(false).build());
+        PowerMockito.when(PremiumUtils.getPremiumStatus(any(UserContext.class)))
+            .thenReturn(Optional.of(Premium.builder().active(true).build()));
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(Collections.emptyMap());
+
+        // when
+        Response response = createDelivery(Delivery.builder()
+            .items(Arrays.asList(DeliveryItem.builder().feedId("feed/1").build()))
+            .manual(false)
+            .subscription(Subscription.builder().id(2L).build())
+            .build());
+
+        // then
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+    }
+
     private List<DeliveryItem> storedDeliveryItems() throws IOException {
-        ArgumentCaptor<InputStream> is = ArgumentCaptor.forClass(InputStream.class);
-        verify(amazonS3).putObject(anyString(), anyString(), is.capture(), any());
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(amazonS3).putObject(request.capture());
         ObjectMapper mapper = new ObjectMapper();
-        return  mapper.readValue(IOUtils.toByteArray(is.getValue()),
+        return  mapper.readValue(IOUtils.toByteArray(request.getValue().getInputStream()),
             new TypeReference<List<DeliveryItem>>() {});
     }
 
@@ -218,7 +327,7 @@ public class DeliveryResourceTest {
     @Test
     public void given_noArticlesAndManual_when_createDelivery_then_returnError() {
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .deliveryEmail("blabla@kindle.com")
                 .deliverySender("blabla@keendly.com")
@@ -227,7 +336,7 @@ public class DeliveryResourceTest {
         
         Map<String, List<FeedEntry>> unread = new HashMap<>();
         unread.put("feed/http://brodatyblog.pl/feed/atom/", Collections.emptyList());
-        when(adaptor.getUnread(any())).thenReturn(unread);
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
 
         // when
         DeliveryItem feed = DeliveryItem.builder()
@@ -246,7 +355,7 @@ public class DeliveryResourceTest {
     @Test
     public void given_noArticlesAndNotManual_when_createDelivery_then_storeError() {
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .deliveryEmail("blabla@kindle.com")
                 .deliverySender("blabla@keendly.com")
@@ -256,7 +365,7 @@ public class DeliveryResourceTest {
 
         Map<String, List<FeedEntry>> unread = new HashMap<>();
         unread.put("feed/http://brodatyblog.pl/feed/atom/", Collections.emptyList());
-        when(adaptor.getUnread(any())).thenReturn(unread);
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
 
         // when
         DeliveryItem feed = DeliveryItem.builder()
@@ -280,7 +389,7 @@ public class DeliveryResourceTest {
     @Test
     public void given_noArticlesAndNotManualAndNotifyNoArticles_when_createDelivery_then_sendNotifyEmail() {
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .email("user@mail.com")
                 .deliveryEmail("blabla@kindle.com")
@@ -291,7 +400,7 @@ public class DeliveryResourceTest {
 
         Map<String, List<FeedEntry>> unread = new HashMap<>();
         unread.put("feed/http://brodatyblog.pl/feed/atom/", Collections.emptyList());
-        when(adaptor.getUnread(any())).thenReturn(unread);
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
 
         // when
         DeliveryItem feed = DeliveryItem.builder()
@@ -313,7 +422,7 @@ public class DeliveryResourceTest {
     @Test
     public void given_noArticlesAndNotManualAndNotifyNoArticles_when_createDelivery_then_sendPushNotification() {
         // given
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .email("user@mail.com")
                 .deliveryEmail("blabla@kindle.com")
@@ -324,7 +433,7 @@ public class DeliveryResourceTest {
 
         Map<String, List<FeedEntry>> unread = new HashMap<>();
         unread.put("feed/http://brodatyblog.pl/feed/atom/", Collections.emptyList());
-        when(adaptor.getUnread(any())).thenReturn(unread);
+        when(adaptor.getUnread(any(), anyInt())).thenReturn(unread);
 
         // when
         DeliveryItem feed = DeliveryItem.builder()
@@ -351,7 +460,7 @@ public class DeliveryResourceTest {
                 .active(false)
                 .build());
 
-        when(userDao.findById(eq(USER_ID))).thenReturn(
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(
             User.builder()
                 .deliveryEmail("blabla@kindle.com")
                 .deliverySender("blabla@keendly.com")
@@ -372,6 +481,66 @@ public class DeliveryResourceTest {
         assertEquals("NO_PREMIUM", ((Map) response.getEntity()).get("code"));
     }
 
+    @Test
+    public void given_morePages_when_getDeliveries_then_returnNextCursor() {
+        // given
+        when(deliveryDao.getDeliveries(eq(USER_ID), eq(10L), eq(20))).thenReturn(
+            Page.<Delivery>builder()
+                .items(Arrays.asList(Delivery.builder().id(5L).build()))
+                .nextCursor("next")
+                .build());
+
+        // when
+        Response response =
+            deliveryResource.getDeliveries(securityContext, null, null, null, Page.toCursor(10L), null);
+
+        // then
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("next", response.getHeaderString(Page.NEXT_CURSOR_HEADER));
+        assertEquals(1, ((List) response.getEntity()).size());
+    }
+
+    @Test
+    public void given_wrongCursor_when_getDeliveries_then_returnError() {
+        // when
+        Response response = deliveryResource.getDeliveries(securityContext, null, null, null, "wrong", null);
+
+        // then
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        assertEquals("WRONG_CURSOR", ((Map) response.getEntity()).get("code"));
+        verify(deliveryDao, never()).getDeliveries(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void given_wrongLimit_when_getDeliveries_then_returnError() {
+        // when
+        Response response = deliveryResource.getDeliveries(securityContext, null, null, null, null, "abc");
+
+        // then
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        assertEquals("WRONG_LIMIT", ((Map) response.getEntity()).get("code"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void given_daoFails_when_getDeliveries_then_notReportedAsWrongCursor() {
+        // given
+        when(deliveryDao.getDeliveries(eq(USER_ID), eq(10L), eq(20))).thenThrow(new IllegalArgumentException());
+
+        // when
+        deliveryResource.getDeliveries(securityContext, null, null, null, Page.toCursor(10L), null);
+    }
+
+    @Test
+    public void given_formatMarker_when_itemsFormat_then_thatFormat() {
+        assertEquals(ItemsFormat.JSON, DeliveryResource.itemsFormat(null));
+        assertEquals(ItemsFormat.JSON_GZIP, DeliveryResource.itemsFormat("json+gzip"));
+    }
+
+    @Test
+    public void given_unknownFormat_when_itemsFormat_then_json() {
+        assertEquals(ItemsFormat.JSON, DeliveryResource.itemsFormat("JSON_GZIP"));
+    }
+
     private Response createDelivery(Delivery delivery) {
         return deliveryResource.createDelivery(securityContext, delivery);
     }
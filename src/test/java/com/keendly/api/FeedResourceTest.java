@@ -0,0 +1,185 @@
+package com.keendly.api;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.keendly.adaptor.Adaptor;
+import com.keendly.adaptor.AdaptorFactory;
+import com.keendly.adaptor.model.ExternalFeed;
+import com.keendly.adaptor.model.auth.Token;
+import com.keendly.dao.DeliveryDao;
+import com.keendly.dao.SubscriptionDao;
+import com.keendly.dao.UserDao;
+import com.keendly.model.Delivery;
+import com.keendly.model.Feed;
+import com.keendly.model.Subscription;
+import com.keendly.model.SubscriptionItem;
+import com.keendly.model.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(AdaptorFactory.class)
+public class FeedResourceTest {
+
+    private static Long USER_ID = 1L;
+
+    private SecurityContext securityContext = mock(SecurityContext.class);
+    private UserDao userDao = mock(UserDao.class);
+    private SubscriptionDao subscriptionDao = mock(SubscriptionDao.class);
+    private DeliveryDao deliveryDao = mock(DeliveryDao.class);
+    private Adaptor adaptor = mock(Adaptor.class);
+
+    private FeedResource feedResource = new FeedResource(userDao, subscriptionDao, deliveryDao);
+
+    @Before
+    public void setUp() {
+        Principal principal = mock(Principal.class);
+        when(principal.getName()).thenReturn(USER_ID.toString());
+        when(securityContext.getUserPrincipal()).thenReturn(principal);
+
+        when(userDao.findAccount(eq(USER_ID))).thenReturn(User.builder().id(USER_ID).build());
+        PowerMockito.mockStatic(AdaptorFactory.class);
+        PowerMockito.when(AdaptorFactory.getInstance(any(User.class))).thenReturn(adaptor);
+        when(adaptor.getToken()).thenReturn(Token.builder().accessToken("token").build());
+
+        when(adaptor.getFeeds()).thenReturn(Arrays.asList(feed("feed/1"), feed("feed/2")));
+        when(subscriptionDao.getSubscriptionItems(eq(USER_ID)))
+            .thenReturn(Collections.singletonList(subscriptionItem("feed/1", 10L)));
+        when(deliveryDao.getLastDeliveries(eq(USER_ID), eq(Arrays.asList("feed/1", "feed/2"))))
+            .thenReturn(Collections.singletonMap("feed/2", Delivery.builder().id(5L).build()));
+    }
+
+    @Test
+    public void when_getFeeds_then_callProviderAndDatabaseConcurrently() {
+        // given
+        // each call returns only once the other two have started, so called one by one the first one fails
+        CountDownLatch allStarted = new CountDownLatch(3);
+        when(adaptor.getFeeds()).thenAnswer(i -> afterAll(allStarted, Arrays.asList(feed("feed/1"), feed("feed/2"))));
+        when(adaptor.getUnreadCount()).thenAnswer(i -> afterAll(allStarted, Collections.singletonMap("feed/1", 3)));
+        when(subscriptionDao.getSubscriptionItems(eq(USER_ID)))
+            .thenAnswer(i -> afterAll(allStarted, Collections.singletonList(subscriptionItem("feed/1", 10L))));
+
+        // when
+        Response response = feedResource.getFeeds(securityContext);
+
+        // then
+        List<Feed> feeds = (List<Feed>) response.getEntity();
+        assertEquals(2, feeds.size());
+        assertEquals(Integer.valueOf(3), feeds.get(0).getUnreadCount());
+        assertEquals(1, feeds.get(0).getSubscriptions().size());
+        assertEquals(5L, feeds.get(1).getLastDelivery().getId().longValue());
+    }
+
+    @Test
+    public void given_unreadCountsSlow_when_getFeeds_then_returnWithoutCounts() {
+        // given
+        CountDownLatch unreadCountsReleased = new CountDownLatch(1);
+        when(adaptor.getUnreadCount()).thenAnswer(i -> {
+            unreadCountsReleased.await();
+            return Collections.singletonMap("feed/1", 3);
+        });
+
+        // when
+        Response response;
+        try {
+            response = feedResource.getFeeds(securityContext);
+        } finally {
+            unreadCountsReleased.countDown();
+        }
+
+        // then
+        List<Feed> feeds = (List<Feed>) response.getEntity();
+        assertEquals(2, feeds.size());
+        assertNull(feeds.get(0).getUnreadCount());
+    }
+
+    @Test
+    public void given_unreadCountsFail_when_getFeeds_then_returnWithoutCounts() {
+        // given
+        when(adaptor.getUnreadCount()).thenThrow(new RuntimeException("provider down"));
+
+        // when
+        Response response = feedResource.getFeeds(securityContext);
+
+        // then
+        List<Feed> feeds = (List<Feed>) response.getEntity();
+        assertEquals(2, feeds.size());
+        assertNull(feeds.get(0).getUnreadCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void given_feedsFail_when_getFeeds_then_throwException() {
+        // given
+        when(adaptor.getFeeds()).thenThrow(new RuntimeException("provider down"));
+        when(adaptor.getUnreadCount()).thenReturn(Collections.emptyMap());
+
+        // when
+        feedResource.getFeeds(securityContext);
+    }
+
+    @Test
+    public void given_subscriptionsDeliveriesAndCounts_when_toFeeds_then_joinByFeedId() {
+        // given
+        List<ExternalFeed> subscribedFeeds = Arrays.asList(feed("feed/1"), feed("feed/2"), feed("feed/3"));
+        List<SubscriptionItem> subscriptionItems = Arrays.asList(
+            subscriptionItem("feed/1", 10L),
+            subscriptionItem("feed/3", 10L),
+            subscriptionItem("feed/1", 11L),
+            subscriptionItem("feed/unsubscribed", 11L));
+
+        // when
+        List<Feed> feeds = FeedResource.toFeeds(subscribedFeeds, subscriptionItems,
+            Collections.singletonMap("feed/2", Delivery.builder().id(5L).build()),
+            Collections.singletonMap("feed/3", 7));
+
+        // then
+        assertEquals(3, feeds.size());
+        assertEquals(Arrays.asList(10L, 11L),
+            feeds.get(0).getSubscriptions().stream().map(Subscription::getId).collect(Collectors.toList()));
+        assertNull(feeds.get(0).getLastDelivery());
+        assertTrue(feeds.get(1).getSubscriptions().isEmpty());
+        assertEquals(5L, feeds.get(1).getLastDelivery().getId().longValue());
+        assertEquals(Integer.valueOf(7), feeds.get(2).getUnreadCount());
+        assertNull(feeds.get(1).getUnreadCount());
+    }
+
+    private static <T> T afterAll(CountDownLatch started, T result) throws InterruptedException {
+        started.countDown();
+        if (!started.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Not called concurrently");
+        }
+        return result;
+    }
+
+    private static ExternalFeed feed(String feedId) {
+        ExternalFeed feed = new ExternalFeed();
+        feed.setFeedId(feedId);
+        feed.setTitle(feedId);
+        return feed;
+    }
+
+    private static SubscriptionItem subscriptionItem(String feedId, Long subscriptionId) {
+        return SubscriptionItem.builder()
+            .feedId(feedId)
+            .subscription(Subscription.builder().id(subscriptionId).time("08:00").timezone("UTC").build())
+            .build();
+    }
+}
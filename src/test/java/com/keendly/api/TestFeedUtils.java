@@ -7,9 +7,13 @@ import org.junit.Test;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 public class TestFeedUtils {
 
@@ -51,4 +55,91 @@ public class TestFeedUtils {
         Assert.assertEquals("2", newest.get("2").get(0).getId());
         Assert.assertEquals("3", newest.get("1").get(0).getId());
     }
+
+    @Test
+    public void given_samePublishDate_when_getNewest_then_keepAllOfThem() {
+        // given
+        Date published = new Date(1000);
+        Map<String, List<FeedEntry>> feeds = new HashMap<>();
+        feeds.put("1", entries("1", published, published));
+        feeds.put("2", entries("2", published, new Date(0)));
+
+        // when
+        Map<String, List<FeedEntry>> newest = FeedUtils.getNewest(feeds, 3);
+
+        // then
+        Assert.assertEquals(2, newest.get("1").size());
+        Assert.assertEquals(1, newest.get("2").size());
+        Assert.assertEquals("2-0", newest.get("2").get(0).getId());
+    }
+
+    @Test
+    public void given_noPublishDate_when_getNewest_then_treatAsOldest() {
+        // given
+        Map<String, List<FeedEntry>> feeds = new HashMap<>();
+        feeds.put("1", entries("1", null, new Date(0)));
+        feeds.put("2", entries("2", (Date) null));
+
+        // when
+        Map<String, List<FeedEntry>> newest = FeedUtils.getNewest(feeds, 2);
+
+        // then
+        Assert.assertEquals(2, newest.get("1").size());
+        Assert.assertNull(newest.get("2"));
+    }
+
+    @Test
+    public void given_randomFeeds_when_getNewest_then_sameAsSortingAll() {
+        Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            // given
+            Map<String, List<FeedEntry>> feeds = new HashMap<>();
+            int feedCount = random.nextInt(6);
+            for (int f = 0; f < feedCount; f++) {
+                Date[] dates = new Date[random.nextInt(20)];
+                for (int i = 0; i < dates.length; i++) {
+                    // few distinct dates, so that there are ties
+                    dates[i] = random.nextInt(10) == 0 ? null : new Date(random.nextInt(8));
+                }
+                feeds.put(Integer.toString(f), entries(Integer.toString(f), dates));
+            }
+            int number = random.nextInt(30);
+
+            // when
+            Map<String, List<FeedEntry>> newest = FeedUtils.getNewest(feeds, number);
+
+            // then
+            List<FeedEntry> all = feeds.values().stream().flatMap(List::stream).collect(Collectors.toList());
+            List<FeedEntry> kept = newest.values().stream().flatMap(List::stream).collect(Collectors.toList());
+            Assert.assertEquals(Math.min(number, all.size()), kept.size());
+
+            Comparator<Date> newerFirst = Comparator.nullsLast(Comparator.reverseOrder());
+            List<Date> expectedDates = all.stream().map(FeedEntry::getPublished).sorted(newerFirst)
+                .limit(number).collect(Collectors.toList());
+            List<Date> keptDates = kept.stream().map(FeedEntry::getPublished).sorted(newerFirst)
+                .collect(Collectors.toList());
+            Assert.assertEquals(expectedDates, keptDates);
+
+            for (Map.Entry<String, List<FeedEntry>> feed : newest.entrySet()) {
+                Assert.assertFalse(feed.getValue().isEmpty());
+                List<FeedEntry> original = feeds.get(feed.getKey());
+                List<FeedEntry> inOriginalOrder = new ArrayList<>(feed.getValue());
+                inOriginalOrder.sort(Comparator.comparingInt(original::indexOf));
+                Assert.assertEquals(inOriginalOrder, feed.getValue());
+            }
+
+            Assert.assertEquals(newest, FeedUtils.getNewest(feeds, number));
+        }
+    }
+
+    private static List<FeedEntry> entries(String feedId, Date... published) {
+        List<FeedEntry> entries = new ArrayList<>();
+        for (int i = 0; i < published.length; i++) {
+            FeedEntry entry = new FeedEntry();
+            entry.setId(feedId + "-" + i);
+            entry.setPublished(published[i]);
+            entries.add(entry);
+        }
+        return entries;
+    }
 }
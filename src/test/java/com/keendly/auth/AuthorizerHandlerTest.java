@@ -0,0 +1,171 @@
+package com.keendly.auth;
+
+import static org.junit.Assert.*;
+
+import com.keendly.model.Provider;
+import com.keendly.model.User;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.DefaultClaims;
+import io.jsonwebtoken.impl.TextCodec;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AuthorizerHandlerTest {
+
+    private static final String KEY = "dGVzdC1zaWduaW5nLWtleS10ZXN0LXNpZ25pbmcta2V5";
+    private static final String OTHER_KEY = "b3RoZXItc2lnbmluZy1rZXktb3RoZXItc2lnbmluZy1rZXk=";
+
+    private AtomicLong now = new AtomicLong(System.currentTimeMillis());
+    private Map<Long, User> users = new HashMap<>();
+    private AuthorizerHandler handler = new AuthorizerHandler(KEY, 100, now::get, users::get);
+
+    private static String token(String key, String userId, long expiresAt) {
+        DefaultClaims claims = new DefaultClaims();
+        claims.put("userId", userId);
+        claims.setExpiration(new Date(expiresAt));
+        return Jwts.builder().setClaims(claims).signWith(SignatureAlgorithm.HS512, key).compact();
+    }
+
+    private Map<String, Object> authorize(String token) {
+        return handler.handleRequest(Collections.singletonMap("authorizationToken", token), null);
+    }
+
+    private static String effect(Map<String, Object> response) {
+        Map<String, Object> policyDocument = (Map<String, Object>) response.get("policyDocument");
+        List<Map<String, Object>> statements = (List<Map<String, Object>>) policyDocument.get("Statement");
+        return (String) statements.get(0).get("Effect");
+    }
+
+    @Test
+    public void given_validToken_when_handleRequest_then_allow() {
+        // given
+        String token = token(KEY, "123", now.get() + TimeUnit.HOURS.toMillis(1));
+
+        // when
+        Map<String, Object> response = authorize(token);
+
+        // then
+        assertEquals("123", response.get("principalId"));
+        assertEquals("Allow", effect(response));
+    }
+
+    @Test
+    public void given_validTokenAuthorizedBefore_when_handleRequest_then_allow() {
+        // given
+        String token = token(KEY, "123", now.get() + TimeUnit.HOURS.toMillis(1));
+        authorize(token);
+
+        // when
+        Map<String, Object> response = authorize(token);
+
+        // then
+        assertEquals("123", response.get("principalId"));
+        assertEquals("Allow", effect(response));
+    }
+
+    @Test
+    public void given_tokenSignedWithOtherKey_when_handleRequest_then_deny() {
+        // given
+        String token = token(OTHER_KEY, "123", now.get() + TimeUnit.HOURS.toMillis(1));
+
+        // when
+        Map<String, Object> response = authorize(token);
+
+        // then
+        assertEquals("-1", response.get("principalId"));
+        assertEquals("Deny", effect(response));
+    }
+
+    @Test
+    public void given_expiredToken_when_handleRequest_then_deny() {
+        // given
+        String token = token(KEY, "123", now.get() - TimeUnit.MINUTES.toMillis(1));
+
+        // when
+        Map<String, Object> response = authorize(token);
+
+        // then
+        assertEquals("Deny", effect(response));
+    }
+
+    @Test
+    public void given_tokenExpiredSinceAuthorized_when_handleRequest_then_deny() {
+        // given
+        String token = token(KEY, "123", now.get() + TimeUnit.MINUTES.toMillis(1));
+        authorize(token);
+        now.addAndGet(TimeUnit.MINUTES.toMillis(2));
+
+        // when
+        Map<String, Object> response = authorize(token);
+
+        // then
+        assertEquals("-1", response.get("principalId"));
+        assertEquals("Deny", effect(response));
+    }
+
+    @Test
+    public void given_noToken_when_handleRequest_then_deny() {
+        // when
+        Map<String, Object> response = handler.handleRequest(Collections.emptyMap(), null);
+
+        // then
+        assertEquals("Deny", effect(response));
+    }
+
+    @Test
+    public void given_validToken_when_handleRequest_then_signedUserContext() {
+        // given
+        users.put(123L, User.builder().id(123L).provider(Provider.INOREADER).deliveryEmail("me@kindle.com").build());
+        String token = token(KEY, "123", now.get() + TimeUnit.HOURS.toMillis(1));
+
+        // when
+        Map<String, Object> response = authorize(token);
+
+        // then
+        Optional<UserContext> context = UserContext.fromAuthorizerContext(
+            (Map<String, Object>) response.get("context"), "123",
+            UserContext.contextKey(TextCodec.BASE64.decode(KEY)));
+        assertTrue(context.isPresent());
+        assertEquals(Provider.INOREADER, context.get().getProvider());
+        assertTrue(context.get().isDeliveryEmailConfigured());
+    }
+
+    @Test
+    public void given_userLookupFails_when_handleRequest_then_allowWithoutContext() {
+        // given
+        AuthorizerHandler handler = new AuthorizerHandler(KEY, 100, now::get, id -> {
+            throw new RuntimeException("connection refused");
+        });
+        String token = token(KEY, "123", now.get() + TimeUnit.HOURS.toMillis(1));
+
+        // when
+        Map<String, Object> response =
+            handler.handleRequest(Collections.singletonMap("authorizationToken", token), null);
+
+        // then
+        assertEquals("Allow", effect(response));
+        assertNull(response.get("context"));
+    }
+
+    @Test
+    public void given_clientToken_when_handleRequest_then_allowWithoutContext() {
+        // given
+        String token = token(KEY, "-1", now.get() + TimeUnit.HOURS.toMillis(1));
+
+        // when
+        Map<String, Object> response = authorize(token);
+
+        // then
+        assertEquals("Allow", effect(response));
+        assertNull(response.get("context"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.keendly.auth;
+
+import static org.junit.Assert.*;
+
+import com.keendly.model.Premium;
+import com.keendly.model.Provider;
+import com.keendly.model.User;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class UserContextTest {
+
+    private static final byte[] KEY = "test-signing-key".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_KEY = "other-signing-key".getBytes(StandardCharsets.UTF_8);
+
+    private static final User USER = User.builder()
+        .id(123L)
+        .provider(Provider.NEWSBLUR)
+        .deliveryEmail("me@kindle.com")
+        .forcePremium(false)
+        .cachedPremium(Premium.builder().active(true).cancellable(true).expires(new Date(1600000000000L)).build())
+        .premiumCheckedAt(new Date(1500000000000L))
+        .build();
+
+    @Test
+    public void given_signedContext_when_fromAuthorizerContext_then_sameContext() {
+        // given
+        Map<String, Object> context = UserContext.of(USER).toAuthorizerContext(KEY);
+
+        // when
+        Optional<UserContext> userContext = UserContext.fromAuthorizerContext(context, "123", KEY);
+
+        // then
+        assertEquals(Optional.of(UserContext.of(USER)), userContext);
+        assertEquals("123", userContext.get().getName());
+    }
+
+    @Test
+    public void given_notCheckedPremium_when_fromAuthorizerContext_then_noCachedPremium() {
+        // given
+        User user = User.builder().id(123L).provider(Provider.INOREADER).build();
+        Map<String, Object> context = UserContext.of(user).toAuthorizerContext(KEY);
+
+        // when
+        Optional<UserContext> userContext = UserContext.fromAuthorizerContext(context, "123", KEY);
+
+        // then
+        assertTrue(userContext.isPresent());
+        assertFalse(userContext.get().isDeliveryEmailConfigured());
+        assertNull(userContext.get().getCachedPremium());
+        assertNull(userContext.get().getPremiumCheckedAt());
+    }
+
+    @Test
+    public void given_changedContext_when_fromAuthorizerContext_then_empty() {
+        // given
+        User user = User.builder().id(123L).provider(Provider.INOREADER).forcePremium(false).build();
+        Map<String, Object> context = new HashMap<>(UserContext.of(user).toAuthorizerContext(KEY));
+        context.put("forcePremium", "true");
+
+        // when
+        Optional<UserContext> userContext = UserContext.fromAuthorizerContext(context, "123", KEY);
+
+        // then
+        assertFalse(userContext.isPresent());
+    }
+
+    @Test
+    public void given_contextOfOtherUser_when_fromAuthorizerContext_then_empty() {
+        // given
+        Map<String, Object> context = UserContext.of(USER).toAuthorizerContext(KEY);
+
+        // when
+        Optional<UserContext> userContext = UserContext.fromAuthorizerContext(context, "124", KEY);
+
+        // then
+        assertFalse(userContext.isPresent());
+    }
+
+    @Test
+    public void given_contextSignedWithOtherKey_when_fromAuthorizerContext_then_empty() {
+        // given
+        Map<String, Object> context = UserContext.of(USER).toAuthorizerContext(OTHER_KEY);
+
+        // when
+        Optional<UserContext> userContext = UserContext.fromAuthorizerContext(context, "123", KEY);
+
+        // then
+        assertFalse(userContext.isPresent());
+    }
+
+    @Test
+    public void given_contextSignedWithAuthKey_when_fromAuthorizerContext_then_empty() {
+        // given
+        Map<String, Object> context = UserContext.of(USER).toAuthorizerContext(KEY);
+
+        // when
+        Optional<UserContext> userContext =
+            UserContext.fromAuthorizerContext(context, "123", UserContext.contextKey(KEY));
+
+        // then
+        assertFalse(userContext.isPresent());
+        assertFalse(Arrays.equals(KEY, UserContext.contextKey(KEY)));
+        assertArrayEquals(UserContext.contextKey(KEY), UserContext.contextKey(KEY));
+    }
+
+    @Test
+    public void given_noContext_when_fromAuthorizerContext_then_empty() {
+        // when
+        Optional<UserContext> userContext = UserContext.fromAuthorizerContext(null, "123", KEY);
+
+        // then
+        assertFalse(userContext.isPresent());
+    }
+}
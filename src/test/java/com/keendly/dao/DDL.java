@@ -18,6 +18,10 @@ public enum DDL {
         + "premium_subscription_id CHARACTER VARYING(100), "
         + "force_premium BOOLEAN DEFAULT false, "
         + "stripe_customer_id CHARACTER VARYING(100), "
+        + "premium_active BOOLEAN, "
+        + "premium_cancellable BOOLEAN, "
+        + "premium_expires TIMESTAMP(6) WITH TIME ZONE, "
+        + "premium_checked_at TIMESTAMP(6) WITH TIME ZONE, "
         + "PRIMARY KEY (id), "
         + "CONSTRAINT uk_6vhj1cwggrr6dy1sxskrbt0y4 UNIQUE (provider, provider_id));"),
 
@@ -31,6 +35,7 @@ public enum DDL {
         + "timezone CHARACTER VARYING(255) NOT NULL, "
         + "user_id BIGINT NOT NULL, "
         + "deleted BOOLEAN NOT NULL, "
+        + "next_delivery_at TIMESTAMP(6) WITH TIME ZONE, "
         + "PRIMARY KEY (id), "
         + "CONSTRAINT fk_iwmhiweloa3dnrvfpdl47tf49 FOREIGN KEY (user_id) REFERENCES keendlyuser (id));"),
 
@@ -93,7 +98,30 @@ public enum DDL {
         +" endpoint CHARACTER VARYING(1024),"
         + "deleted BOOLEAN NOT NULL, "
         +" CONSTRAINT fk_user FOREIGN KEY (user_id) REFERENCES keendlyuser (id)"
-        +")");
+        +")"),
+
+    CREATE_FEED_CACHE("CREATE TABLE feedcache ("
+        + "user_id BIGINT NOT NULL, "
+        + "provider CHARACTER VARYING(255) NOT NULL, "
+        + "kind CHARACTER VARYING(50) NOT NULL, "
+        + "value TEXT NOT NULL, "
+        + "expires_at TIMESTAMP(6) WITH TIME ZONE NOT NULL, "
+        + "PRIMARY KEY (user_id, provider, kind), "
+        + "CONSTRAINT fk_feedcache_user FOREIGN KEY (user_id) REFERENCES keendlyuser (id));"),
+
+    CREATE_MARK_READ_JOB("CREATE TABLE markreadjob ("
+        + "id BIGINT NOT NULL, "
+        + "delivery_id BIGINT NOT NULL, "
+        + "user_id BIGINT NOT NULL, "
+        + "mark_before TIMESTAMP(6) WITH TIME ZONE NOT NULL, "
+        + "attempts INTEGER NOT NULL DEFAULT 0, "
+        + "next_attempt_at TIMESTAMP(6) WITH TIME ZONE, "
+        + "last_error TEXT, "
+        + "created TIMESTAMP(6) WITH TIME ZONE NOT NULL, "
+        + "PRIMARY KEY (id), "
+        + "UNIQUE (delivery_id), "
+        + "CONSTRAINT fk_markreadjob_delivery FOREIGN KEY (delivery_id) REFERENCES delivery (id), "
+        + "CONSTRAINT fk_markreadjob_user FOREIGN KEY (user_id) REFERENCES keendlyuser (id));");
 
     private String sql;
 
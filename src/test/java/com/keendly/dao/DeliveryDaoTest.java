@@ -6,34 +6,43 @@ import static org.junit.Assert.*;
 
 import com.keendly.model.Delivery;
 import com.keendly.model.DeliveryItem;
+import com.keendly.model.Page;
 import com.keendly.model.Subscription;
 import com.keendly.utils.DbUtils;
 import com.ninja_squad.dbsetup.operation.Operation;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TimingCollector;
 import org.testcontainers.containers.PostgreSQLContainer;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class DeliveryDaoTest {
 
     @ClassRule
     public static PostgreSQLContainer database = new PostgreSQLContainer();
 
-    private DeliveryDao deliveryDao = new DeliveryDao(DbUtils.Environment.builder()
+    private DbUtils.Environment environment = DbUtils.Environment.builder()
         .url(database.getJdbcUrl())
         .user(database.getUsername())
         .password(database.getPassword())
-        .build());
+        .build();
 
-    private static String[] TABLES = {"deliveryitem", "delivery", "subscription", "keendlyuser"};
+    private DeliveryDao deliveryDao = new DeliveryDao(environment);
+
+    private static String[] TABLES = {"markreadjob", "deliveryitem", "delivery", "subscription", "keendlyuser"};
 
     public static final Operation DELETE_ALL = deleteAllFrom(TABLES);
 
@@ -46,6 +55,11 @@ public class DeliveryDaoTest {
         return sdf.format(date);
     }
 
+    @After
+    public void resetTimingCollector() {
+        DbUtils.getDB(environment).setTimingCollector(TimingCollector.NOP_TIMING_COLLECTOR);
+    }
+
     @BeforeClass
     public static void createTables() throws Exception {
         Connection c =
@@ -55,6 +69,7 @@ public class DeliveryDaoTest {
         c.createStatement().execute(DDL.CREATE_SUBSCRIPTION.sql());
         c.createStatement().execute(DDL.CREATE_DELIVERY.sql());
         c.createStatement().execute(DDL.CREATE_DELIVERY_ITEM.sql());
+        c.createStatement().execute(DDL.CREATE_MARK_READ_JOB.sql());
         c.createStatement().execute(DDL.CREATE_SEQUENCE.sql());
 
         c.close();
@@ -187,6 +202,70 @@ public class DeliveryDaoTest {
         assertEquals(1, deliveries.size());
     }
 
+    @Test
+    public void given_manyDeliveries_when_getDeliveries_then_fetchItemsInOneQuery() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("delivery")
+                    .columns("id", "created", "last_modified", "user_id", "manual")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:11.739", 1L, true)
+                    .values(3L, "2016-05-22 01:17:17.739", "2016-05-23 01:17:11.739", 1L, true)
+                    .values(4L, "2016-05-23 01:17:17.739", "2016-05-24 01:17:11.739", 1L, true)
+                    .build(),
+                insertInto("deliveryitem")
+                    .columns("id", "created", "last_modified", "feed_id", "title", "full_article", "mark_as_read", "with_images", "delivery_id")
+                    .values(5L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/1", "Feed 1", true, true, true, 2L)
+                    .values(6L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/2", "Feed 2", true, true, true, 2L)
+                    .values(7L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/3", "Feed 3", true, true, true, 3L)
+                    .build()
+            )
+        );
+        StatementCounter statements = new StatementCounter();
+        DbUtils.getDB(environment).setTimingCollector(statements);
+
+        // when
+        List<Delivery> deliveries = deliveryDao.getDeliveries(1L, 1, 5);
+
+        // then
+        assertEquals(2, statements.getCount());
+        assertEquals(3, deliveries.size());
+        assertEquals(0, deliveries.get(0).getItems().size());
+        assertEquals(Arrays.asList("feed/3"),
+            deliveries.get(1).getItems().stream().map(DeliveryItem::getFeedId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("feed/1", "feed/2"),
+            deliveries.get(2).getItems().stream().map(DeliveryItem::getFeedId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void given_moreThanLimit_when_getDeliveriesBefore_then_returnPagesWithCursor() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("delivery")
+                    .columns("id", "created", "last_modified", "user_id", "manual")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:11.739", 1L, true)
+                    .values(3L, "2016-05-22 01:17:17.739", "2016-05-23 01:17:11.739", 1L, true)
+                    .values(4L, "2016-05-23 01:17:17.739", "2016-05-24 01:17:11.739", 1L, true)
+                    .build()
+            )
+        );
+
+        // when
+        Page<Delivery> first = deliveryDao.getDeliveries(1L, null, 2);
+        Page<Delivery> second = deliveryDao.getDeliveries(1L, Page.fromCursor(first.getNextCursor()), 2);
+
+        // then
+        assertEquals(Arrays.asList(4L, 3L), first.getItems().stream().map(Delivery::getId).collect(Collectors.toList()));
+        assertNotNull(first.getNextCursor());
+        assertEquals(Arrays.asList(2L), second.getItems().stream().map(Delivery::getId).collect(Collectors.toList()));
+        assertNull(second.getNextCursor());
+    }
+
     @Test
     public void given_moreThanOnePage_when_getDeliveries_then_returnOnlyFirstPage() {
 
@@ -234,6 +313,39 @@ public class DeliveryDaoTest {
         assertEquals("2016-05-22 01:17:11.739", format(delivery.getDeliveryDate()));
     }
 
+    @Test
+    public void given_deliveriesExist_when_getLastDeliveries_then_returnLastOfRequestedFeeds() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("delivery")
+                    .columns("id", "created", "last_modified", "user_id", "manual", "date")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:11.739", 1L, true, "2016-05-22 01:17:11.739")
+                    .values(3L, "2016-05-23 01:17:17.739", "2016-05-23 01:17:11.739", 1L, true, "2016-05-23 01:17:11.739")
+                    .values(4L, "2016-05-24 01:17:17.739", "2016-05-24 01:17:11.739", 1L, true, null)
+                    .build(),
+                insertInto("deliveryitem")
+                    .columns("id", "created", "last_modified", "feed_id", "title", "full_article", "mark_as_read", "with_images", "delivery_id")
+                    .values(5L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/1", "Feed 1", true, true, true, 2L)
+                    .values(6L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/2", "Feed 2", true, true, true, 2L)
+                    .values(7L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/1", "Feed 1", true, true, true, 3L)
+                    .values(8L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/3", "Feed 3", true, true, true, 3L)
+                    .values(9L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/2", "Feed 2", true, true, true, 4L)
+                    .build()
+            )
+        );
+
+        // when
+        Map<String, Delivery> deliveries = deliveryDao.getLastDeliveries(1L, Arrays.asList("feed/1", "feed/2", "feed/4"));
+
+        // then
+        assertEquals(2, deliveries.size());
+        assertEquals(3L, deliveries.get("feed/1").getId().longValue());
+        assertEquals(2L, deliveries.get("feed/2").getId().longValue());
+    }
+
     @Test
     public void given_noDeliveries_when_getLastDelivery_then_returnNull() {
         // given
@@ -320,6 +432,42 @@ public class DeliveryDaoTest {
         assertTrue(insertedItem.getFullArticle());
     }
 
+    @Test
+    public void given_manyItems_when_createDelivery_then_insertInConstantStatements() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER
+            )
+        );
+        List<DeliveryItem> items = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            items.add(DeliveryItem.builder()
+                .feedId("feed/" + i)
+                .title("Feed " + i)
+                .includeImages(true)
+                .markAsRead(false)
+                .fullArticle(true)
+                .build());
+        }
+        Delivery delivery = Delivery.builder()
+            .manual(true)
+            .items(items)
+            .build();
+        StatementCounter statements = new StatementCounter();
+        DbUtils.getDB(environment).setTimingCollector(statements);
+
+        // when
+        Long deliveryId = deliveryDao.createDelivery(delivery, 1L);
+
+        // then
+        assertEquals(3, statements.getCount());
+        Delivery inserted = deliveryDao.findById(deliveryId);
+        assertEquals(25, inserted.getItems().size());
+        assertEquals(25, inserted.getItems().stream().map(DeliveryItem::getId).distinct().count());
+    }
+
     @Test
     public void given_delivery_when_createDeliveryForSubscription_then_setSubscriptionId() {
         // given
@@ -357,6 +505,38 @@ public class DeliveryDaoTest {
         assertEquals(2L, inserted.getSubscription().getId().longValue());
     }
 
+    @Test
+    public void given_deliveryForSubscription_when_createDelivery_then_scheduleNextDelivery() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("subscription")
+                    .columns("id", "created", "last_modified", "active", "frequency", "time", "timezone", "user_id", "deleted", "next_delivery_at")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false, "2016-05-23 00:00:00.000")
+                    .build()
+            )
+        );
+        Delivery delivery = Delivery.builder()
+            .manual(false)
+            .subscription(Subscription.builder()
+                .id(2L)
+                .build())
+            .items(new ArrayList<>())
+            .build();
+
+        // when
+        deliveryDao.createDelivery(delivery, 1L);
+
+        // then
+        try (Handle handle = DbUtils.getDB(environment).open()) {
+            Date next = (Date) handle.createQuery("select next_delivery_at from subscription where id = 2").first()
+                .get("next_delivery_at");
+            assertTrue(next.after(new Date()));
+        }
+    }
+
     @Test
     public void given_delivery_when_createDeliveryWithError_then_setErrorDescription() {
         // given
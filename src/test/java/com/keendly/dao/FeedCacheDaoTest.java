@@ -0,0 +1,153 @@
+package com.keendly.dao;
+
+import static com.keendly.dao.Helpers.*;
+import static com.ninja_squad.dbsetup.Operations.*;
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.keendly.adaptor.FeedCache;
+import com.keendly.model.Provider;
+import com.keendly.utils.DbUtils;
+import com.ninja_squad.dbsetup.operation.Operation;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FeedCacheDaoTest {
+
+    @ClassRule
+    public static PostgreSQLContainer database = new PostgreSQLContainer();
+
+    private static final TypeReference<Map<String, Integer>> COUNTS = new TypeReference<Map<String, Integer>>() {};
+    private static final long TTL = TimeUnit.MINUTES.toMillis(1);
+
+    private FeedCacheDao feedCacheDao = new FeedCacheDao(DbUtils.Environment.builder()
+        .url(database.getJdbcUrl())
+        .user(database.getUsername())
+        .password(database.getPassword())
+        .build());
+
+    private void execute(Operation operation) {
+        executeAgainstDabase(operation, database);
+    }
+
+    @BeforeClass
+    public static void createTables() throws Exception {
+        Connection c =
+            DriverManager.getConnection(database.getJdbcUrl(), database.getUsername(), database.getPassword());
+
+        c.createStatement().execute(DDL.CREATE_USER.sql());
+        c.createStatement().execute(DDL.CREATE_FEED_CACHE.sql());
+        c.close();
+    }
+
+    @AfterClass
+    public static void dropTables() throws Exception {
+        Connection c =
+            DriverManager.getConnection(database.getJdbcUrl(), database.getUsername(), database.getPassword());
+
+        c.createStatement().execute("drop table feedcache");
+        c.createStatement().execute("drop table keendlyuser");
+        c.close();
+    }
+
+    @Before
+    public void setUp() {
+        execute(
+            sequenceOf(
+                deleteAllFrom("feedcache", "keendlyuser"),
+                insertInto("keendlyuser")
+                    .columns("id", "provider", "provider_id")
+                    .values(1L, "INOREADER", "123")
+                    .build()
+            )
+        );
+    }
+
+    @Test
+    public void given_stored_when_find_then_returnEntry() {
+        // given
+        Date expiresAt = new Date(System.currentTimeMillis() + TTL);
+        feedCacheDao.put(1L, Provider.INOREADER, "FEEDS", "[]", expiresAt);
+
+        // when
+        Optional<FeedCacheDao.Entry> entry = feedCacheDao.find(1L, Provider.INOREADER, "FEEDS");
+
+        // then
+        assertTrue(entry.isPresent());
+        assertEquals("[]", entry.get().getValue());
+        assertEquals(expiresAt.getTime(), entry.get().getExpiresAt().getTime());
+    }
+
+    @Test
+    public void given_storedTwice_when_find_then_returnLatest() {
+        // given
+        feedCacheDao.put(1L, Provider.INOREADER, "FEEDS", "[]", new Date(System.currentTimeMillis() + TTL));
+        feedCacheDao.put(1L, Provider.INOREADER, "FEEDS", "[{}]", new Date(System.currentTimeMillis() + TTL));
+
+        // when
+        Optional<FeedCacheDao.Entry> entry = feedCacheDao.find(1L, Provider.INOREADER, "FEEDS");
+
+        // then
+        assertEquals("[{}]", entry.get().getValue());
+    }
+
+    @Test
+    public void given_expired_when_find_then_returnEmpty() {
+        // given
+        feedCacheDao.put(1L, Provider.INOREADER, "FEEDS", "[]", new Date(System.currentTimeMillis() - 1));
+
+        // when
+        Optional<FeedCacheDao.Entry> entry = feedCacheDao.find(1L, Provider.INOREADER, "FEEDS");
+
+        // then
+        assertFalse(entry.isPresent());
+    }
+
+    @Test
+    public void given_deleted_when_find_then_returnEmpty() {
+        // given
+        feedCacheDao.put(1L, Provider.INOREADER, "FEEDS", "[]", new Date(System.currentTimeMillis() + TTL));
+        feedCacheDao.put(1L, Provider.INOREADER, "UNREAD_COUNTS", "{}", new Date(System.currentTimeMillis() + TTL));
+
+        // when
+        feedCacheDao.delete(1L, Provider.INOREADER, "UNREAD_COUNTS");
+
+        // then
+        assertTrue(feedCacheDao.find(1L, Provider.INOREADER, "FEEDS").isPresent());
+        assertFalse(feedCacheDao.find(1L, Provider.INOREADER, "UNREAD_COUNTS").isPresent());
+    }
+
+    @Test
+    public void given_storedByAnotherInstance_when_get_then_dontLoad() {
+        // given
+        AtomicInteger loads = new AtomicInteger();
+        new FeedCache(TTL, TTL, feedCacheDao).get(1L, Provider.INOREADER, FeedCache.Kind.UNREAD_COUNTS, COUNTS, () -> {
+            loads.incrementAndGet();
+            return Collections.singletonMap("feed/1", 3);
+        });
+
+        // when
+        Map<String, Integer> counts = new FeedCache(TTL, TTL, feedCacheDao)
+            .get(1L, Provider.INOREADER, FeedCache.Kind.UNREAD_COUNTS, COUNTS, () -> {
+                loads.incrementAndGet();
+                return Collections.emptyMap();
+            });
+
+        // then
+        assertEquals(1, loads.get());
+        assertEquals(Integer.valueOf(3), counts.get("feed/1"));
+    }
+}
@@ -5,8 +5,12 @@ import static com.ninja_squad.dbsetup.Operations.*;
 import com.ninja_squad.dbsetup.DbSetup;
 import com.ninja_squad.dbsetup.destination.DriverManagerDestination;
 import com.ninja_squad.dbsetup.operation.Operation;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
 import org.testcontainers.containers.PostgreSQLContainer;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Helpers {
 
     public static void executeAgainstDabase(Operation operation, PostgreSQLContainer postgresql) {
@@ -21,4 +25,18 @@ public class Helpers {
             .columns("id", "provider", "provider_id")
             .values(1L, "INOREADER", "123")
             .build();
+
+    public static class StatementCounter implements TimingCollector {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void collect(long elapsedTime, StatementContext ctx) {
+            count.incrementAndGet();
+        }
+
+        public int getCount() {
+            return count.get();
+        }
+    }
 }
@@ -0,0 +1,205 @@
+package com.keendly.dao;
+
+import static com.keendly.dao.Helpers.*;
+import static com.ninja_squad.dbsetup.Operations.*;
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+
+import com.keendly.utils.DbUtils;
+import com.ninja_squad.dbsetup.operation.Operation;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class MarkReadJobDaoTest {
+
+    @ClassRule
+    public static PostgreSQLContainer database = new PostgreSQLContainer();
+
+    private static final long LEASE = TimeUnit.MINUTES.toMillis(5);
+
+    private DbUtils.Environment environment = DbUtils.Environment.builder()
+        .url(database.getJdbcUrl())
+        .user(database.getUsername())
+        .password(database.getPassword())
+        .build();
+
+    private DeliveryDao deliveryDao = new DeliveryDao(environment);
+    private MarkReadJobDao markReadJobDao = new MarkReadJobDao(environment);
+
+    private static String[] TABLES = {"markreadjob", "deliveryitem", "delivery", "keendlyuser"};
+
+    private void execute(Operation operation) {
+        executeAgainstDabase(operation, database);
+    }
+
+    @BeforeClass
+    public static void createTables() throws Exception {
+        Connection c =
+            DriverManager.getConnection(database.getJdbcUrl(), database.getUsername(), database.getPassword());
+
+        c.createStatement().execute(DDL.CREATE_USER.sql());
+        c.createStatement().execute(DDL.CREATE_SUBSCRIPTION.sql());
+        c.createStatement().execute(DDL.CREATE_DELIVERY.sql());
+        c.createStatement().execute(DDL.CREATE_DELIVERY_ITEM.sql());
+        c.createStatement().execute(DDL.CREATE_MARK_READ_JOB.sql());
+        c.createStatement().execute(DDL.CREATE_SEQUENCE.sql());
+        c.close();
+    }
+
+    @AfterClass
+    public static void dropTables() throws Exception {
+        Connection c =
+            DriverManager.getConnection(database.getJdbcUrl(), database.getUsername(), database.getPassword());
+
+        for (String table : TABLES) {
+            c.createStatement().execute("drop table " + table);
+        }
+        c.createStatement().execute("drop table subscription");
+        c.createStatement().execute("drop sequence hibernate_sequence");
+        c.close();
+    }
+
+    @Before
+    public void setUp() {
+        execute(
+            sequenceOf(
+                deleteAllFrom(TABLES),
+                CREATE_DEFAULT_USER,
+                insertInto("delivery")
+                    .columns("id", "created", "last_modified", "user_id", "manual")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:11.739", 1L, false)
+                    .values(3L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:11.739", 1L, false)
+                    .build(),
+                insertInto("deliveryitem")
+                    .columns("id", "feed_id", "title", "full_article", "mark_as_read", "with_images", "delivery_id")
+                    .values(10L, "feed/1", "Feed 1", false, true, false, 2L)
+                    .values(11L, "feed/2", "Feed 2", false, false, false, 2L)
+                    .values(12L, "feed/3", "Feed 3", false, true, false, 2L)
+                    .values(13L, "feed/1", "Feed 1", false, false, false, 3L)
+                    .build()
+            )
+        );
+    }
+
+    @Test
+    public void given_delivered_when_setDeliveryFinished_then_jobWithFeedsToMarkClaimed() {
+        // given
+        Date deliveryDate = new Date();
+        deliveryDao.setDeliveryFinished(2L, deliveryDate, null);
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertEquals(1, jobs.size());
+        assertEquals(Long.valueOf(2L), jobs.get(0).getDeliveryId());
+        assertEquals(Long.valueOf(1L), jobs.get(0).getUserId());
+        assertEquals(deliveryDate.getTime(), jobs.get(0).getMarkBefore().getTime());
+        assertEquals(1, jobs.get(0).getAttempts());
+        assertEquals(asList("feed/1", "feed/3"), jobs.get(0).getFeedIds());
+    }
+
+    @Test
+    public void given_deliveryError_when_setDeliveryFinished_then_noJob() {
+        // given
+        deliveryDao.setDeliveryFinished(2L, null, "BOOM!");
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void given_nothingToMark_when_setDeliveryFinished_then_noJob() {
+        // given
+        deliveryDao.setDeliveryFinished(3L, new Date(), null);
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void given_finishedTwice_when_claim_then_oneJob() {
+        // given
+        deliveryDao.setDeliveryFinished(2L, new Date(), null);
+        deliveryDao.setDeliveryFinished(2L, new Date(), null);
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertEquals(1, jobs.size());
+    }
+
+    @Test
+    public void given_claimed_when_claim_then_notClaimedAgainUntilLeaseEnds() {
+        // given
+        deliveryDao.setDeliveryFinished(2L, new Date(), null);
+        markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void given_retryDue_when_claim_then_claimedWithAnotherAttempt() {
+        // given
+        deliveryDao.setDeliveryFinished(2L, new Date(), null);
+        Long id = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE)).get(0).getId();
+        markReadJobDao.retryAt(id, new Date(System.currentTimeMillis() - 1), "error");
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertEquals(1, jobs.size());
+        assertEquals(2, jobs.get(0).getAttempts());
+    }
+
+    @Test
+    public void given_givenUp_when_claim_then_notClaimed() {
+        // given
+        deliveryDao.setDeliveryFinished(2L, new Date(), null);
+        Long id = markReadJobDao.claim(10, new Date(System.currentTimeMillis() - 1)).get(0).getId();
+        markReadJobDao.giveUp(id, "error");
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void given_deleted_when_claim_then_notClaimed() {
+        // given
+        deliveryDao.setDeliveryFinished(2L, new Date(), null);
+        Long id = markReadJobDao.claim(10, new Date(System.currentTimeMillis() - 1)).get(0).getId();
+        markReadJobDao.delete(Collections.singletonList(id));
+
+        // when
+        List<MarkReadJobDao.Job> jobs = markReadJobDao.claim(10, new Date(System.currentTimeMillis() + LEASE));
+
+        // then
+        assertTrue(jobs.isEmpty());
+    }
+}
@@ -4,23 +4,28 @@ import static com.keendly.dao.Helpers.*;
 import static com.ninja_squad.dbsetup.Operations.*;
 import static org.junit.Assert.*;
 
+import com.keendly.model.Page;
 import com.keendly.model.Subscription;
 import com.keendly.model.SubscriptionItem;
 import com.keendly.utils.DbUtils;
 import com.ninja_squad.dbsetup.operation.Operation;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.skife.jdbi.v2.TimingCollector;
 import org.testcontainers.containers.PostgreSQLContainer;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.stream.Collectors;
 
 public class SubscriptionDaoTest {
@@ -28,15 +33,22 @@ public class SubscriptionDaoTest {
     @ClassRule
     public static PostgreSQLContainer database = new PostgreSQLContainer();
 
-    private SubscriptionDao subscriptionDao = new SubscriptionDao(DbUtils.Environment.builder()
+    private DbUtils.Environment environment = DbUtils.Environment.builder()
         .url(database.getJdbcUrl())
         .user(database.getUsername())
         .password(database.getPassword())
-        .build());
+        .build();
+
+    private SubscriptionDao subscriptionDao = new SubscriptionDao(environment);
 
     public static final Operation DELETE_ALL =
         deleteAllFrom("subscriptionitem", "subscription", "keendlyuser");
 
+    @After
+    public void resetTimingCollector() {
+        DbUtils.getDB(environment).setTimingCollector(TimingCollector.NOP_TIMING_COLLECTOR);
+    }
+
     @BeforeClass
     public static void createTables() throws Exception {
         Connection c =
@@ -67,6 +79,12 @@ public class SubscriptionDaoTest {
         executeAgainstDabase(operation, database);
     }
 
+    private static Date utc(String date) throws ParseException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return sdf.parse(date);
+    }
+
     private static String format(Date date) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
         return sdf.format(date);
@@ -212,6 +230,43 @@ public class SubscriptionDaoTest {
         assertEquals(true, item.getMarkAsRead());
     }
 
+    @Test
+    public void given_manySubscriptions_when_getSubscriptions_then_fetchItemsInOneQuery() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("subscription")
+                    .columns("id", "created", "last_modified", "active", "frequency", "time", "timezone", "user_id", "deleted")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false)
+                    .values(3L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false)
+                    .values(4L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false)
+                    .build(),
+                insertInto("subscriptionitem")
+                    .columns("id", "created", "last_modified", "feed_id", "title", "full_article", "mark_as_read", "with_images", "subscription_id")
+                    .values(5L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/1", "Feed 1", true, true, true, 2L)
+                    .values(6L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/2", "Feed 2", true, true, true, 2L)
+                    .values(7L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/3", "Feed 3", true, true, true, 4L)
+                    .build()
+            )
+        );
+        StatementCounter statements = new StatementCounter();
+        DbUtils.getDB(environment).setTimingCollector(statements);
+
+        // when
+        List<Subscription> subscriptions = subscriptionDao.getSubscriptions(1L, 1, 5);
+
+        // then
+        assertEquals(2, statements.getCount());
+        assertEquals(3, subscriptions.size());
+        assertEquals(Arrays.asList("feed/3"),
+            subscriptions.get(0).getFeeds().stream().map(SubscriptionItem::getFeedId).collect(Collectors.toList()));
+        assertEquals(0, subscriptions.get(1).getFeeds().size());
+        assertEquals(Arrays.asList("feed/2", "feed/1"),
+            subscriptions.get(2).getFeeds().stream().map(SubscriptionItem::getFeedId).collect(Collectors.toList()));
+    }
+
     @Test
     public void given_subscriptionActiveAndDeleted_when_getSubscriptions_then_isNotReturned(){
         // given
@@ -354,6 +409,34 @@ public class SubscriptionDaoTest {
         assertTrue(subscriptions.isEmpty());
     }
 
+    @Test
+    public void given_moreThanLimit_when_getSubscriptionsBefore_then_returnPagesWithCursor() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("subscription")
+                    .columns("id", "created", "last_modified", "active", "frequency", "time", "timezone", "user_id", "deleted")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false)
+                    .values(3L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false)
+                    .values(4L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", true)
+                    .values(5L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false)
+                    .build()
+            )
+        );
+
+        // when
+        Page<Subscription> first = subscriptionDao.getSubscriptions(1L, null, 2);
+        Page<Subscription> second = subscriptionDao.getSubscriptions(1L, Page.fromCursor(first.getNextCursor()), 2);
+
+        // then
+        assertEquals(Arrays.asList(5L, 3L), first.getItems().stream().map(Subscription::getId).collect(Collectors.toList()));
+        assertNotNull(first.getNextCursor());
+        assertEquals(Arrays.asList(2L), second.getItems().stream().map(Subscription::getId).collect(Collectors.toList()));
+        assertNull(second.getNextCursor());
+    }
+
     @Test
     public void when_deleteSubscription_then_setDeleted() {
         // given
@@ -522,7 +605,122 @@ public class SubscriptionDaoTest {
     }
 
     @Test
-    public void given_noDeliveriesAndDeliveryHourPassed_when_getDailySubscriptionsToDeliver_then_returnSubscription() {
+    public void given_manyFeeds_when_createSubscription_then_insertInConstantStatements() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER
+            )
+        );
+        List<SubscriptionItem> feeds = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            feeds.add(SubscriptionItem.builder()
+                .feedId("feed/" + i)
+                .title("Feed " + i)
+                .includeImages(true)
+                .markAsRead(false)
+                .fullArticle(true)
+                .build());
+        }
+        Subscription subscription = Subscription.builder()
+            .time("01:00")
+            .timezone("Europe/Madrid")
+            .feeds(feeds)
+            .build();
+        StatementCounter statements = new StatementCounter();
+        DbUtils.getDB(environment).setTimingCollector(statements);
+
+        // when
+        Long subscriptionId = subscriptionDao.createSubscription(subscription, 1L);
+
+        // then
+        assertEquals(3, statements.getCount());
+        Subscription inserted = subscriptionDao.findById(subscriptionId);
+        assertEquals(25, inserted.getFeeds().size());
+        assertEquals(25, inserted.getFeeds().stream().map(SubscriptionItem::getFeedId).distinct().count());
+    }
+
+    @Test
+    public void given_nextDeliveryPassed_when_getDailySubscriptionsToDeliver_then_returnSubscriptionWithItems() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("subscription")
+                    .columns("id", "created", "last_modified", "active", "frequency", "time", "timezone", "user_id", "deleted", "next_delivery_at")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false, "2016-05-23 00:00:00.000")
+                    .values(3L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false, "2016-05-23 00:00:00.000")
+                    .build(),
+                insertInto("subscriptionitem")
+                    .columns("id", "created", "last_modified", "feed_id", "title", "full_article", "mark_as_read", "with_images", "subscription_id")
+                    .values(5L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/1", "Feed 1", true, true, true, 2L)
+                    .values(6L, "2016-05-19 23:59:00.274", "2016-05-19 23:59:00.259", "feed/2", "Feed 2", true, true, true, 2L)
+                    .build()
+            )
+        );
+        StatementCounter statements = new StatementCounter();
+        DbUtils.getDB(environment).setTimingCollector(statements);
+
+        // when
+        List<Subscription> subscriptions = subscriptionDao.getDailySubscriptionsToDeliver();
+
+        // then
+        assertEquals(1, statements.getCount());
+        assertEquals(2, subscriptions.size());
+        assertEquals(2L, subscriptions.get(0).getId().longValue());
+        assertEquals(1L, subscriptions.get(0).getUser().getId().longValue());
+        assertEquals(Arrays.asList("feed/2", "feed/1"),
+            subscriptions.get(0).getFeeds().stream().map(SubscriptionItem::getFeedId).collect(Collectors.toList()));
+        assertTrue(subscriptions.get(1).getFeeds().isEmpty());
+    }
+
+    @Test
+    public void given_nextDeliveryInFuture_when_getDailySubscriptionsToDeliver_then_dontReturn() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("subscription")
+                    .columns("id", "created", "last_modified", "active", "frequency", "time", "timezone", "user_id", "deleted", "next_delivery_at")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", false, "2116-05-23 00:00:00.000")
+                    .build()
+            )
+        );
+
+        // when
+        List<Subscription> subscriptions = subscriptionDao.getDailySubscriptionsToDeliver();
+
+        // then
+        assertTrue(subscriptions.isEmpty());
+    }
+
+    @Test
+    public void given_subscriptionNotActiveOrDeleted_when_getDailySubscriptionsToDeliver_then_dontReturn() {
+        // given
+        execute(
+            sequenceOf(
+                DELETE_ALL,
+                CREATE_DEFAULT_USER,
+                insertInto("subscription")
+                    .columns("id", "created", "last_modified", "active", "frequency", "time", "timezone", "user_id", "deleted", "next_delivery_at")
+                    .values(2L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", false, "DAILY", "00:00", "Europe/Madrid", "1", false, "2016-05-23 00:00:00.000")
+                    .values(3L, "2016-05-21 01:17:17.739", "2016-05-22 01:17:17.739", true, "DAILY", "00:00", "Europe/Madrid", "1", true, "2016-05-23 00:00:00.000")
+                    .build()
+            )
+        );
+
+        // when
+        List<Subscription> subscriptions = subscriptionDao.getDailySubscriptionsToDeliver();
+
+        // then
+        assertTrue(subscriptions.isEmpty());
+    }
+
+    @Test
+    public void given_subscriptionCreated_when_getDailySubscriptionsToDeliver_then_dontReturnBeforeScheduledTime() {
         // given
         execute(
             sequenceOf(
@@ -530,24 +728,53 @@ public class SubscriptionDaoTest {
                 CREATE_DEFAULT_USER
             )
         );
-        // prepare procedure for time https://stackoverflow.com/a/20314509
+        subscriptionDao.createSubscription(Subscription.builder()
+            .time("01:00")
+            .timezone("Europe/Madrid")
+            .feeds(new ArrayList<>())
+            .build(), 1L);
+
+        // when
+        List<Subscription> subscriptions = subscriptionDao.getDailySubscriptionsToDeliver();
 
-        // no delivery found since today's scheduled time
+        // then
+        assertTrue(subscriptions.isEmpty());
     }
 
     @Test
-    public void given_noDeliveriesAndDeliveryHourNotPassed_when_getDailySubscriptionsToDeliver_then_returnSubscription() {
-        // no delivery found since yesterday's scheduled  time
+    public void given_scheduledHourNotPassed_when_nextDeliveryAt_then_returnToday() throws Exception {
+        // when
+        Date next = SubscriptionDao.nextDeliveryAt("08:30", "Europe/Madrid", utc("2016-05-21 05:00:00.000"));
+
+        // then
+        assertEquals(utc("2016-05-21 06:30:00.000"), next);
     }
 
     @Test
-    public void give_subscriptionCreatedAfterLastScheduledDelivery_when_getDailySubscriptionsToDeliver_then_dontReturn() {
-        // no delivery found since yesterday's scheduled  time
+    public void given_scheduledHourPassed_when_nextDeliveryAt_then_returnTomorrow() throws Exception {
+        // when
+        Date next = SubscriptionDao.nextDeliveryAt("08:30", "Europe/Madrid", utc("2016-05-21 06:30:00.000"));
+
+        // then
+        assertEquals(utc("2016-05-22 06:30:00.000"), next);
     }
 
     @Test
-    public void give_subscriptionCreatedBeforeLastScheduledDelivery_when_getDailySubscriptionsToDeliver_then_returnSubscription() {
-        // no delivery found since yesterday's scheduled  time
+    public void given_singleDigitHour_when_nextDeliveryAt_then_parseIt() throws Exception {
+        // when
+        Date next = SubscriptionDao.nextDeliveryAt("8:00", "Europe/Madrid", utc("2016-05-21 05:00:00.000"));
+
+        // then
+        assertEquals(utc("2016-05-21 06:00:00.000"), next);
+    }
+
+    @Test
+    public void given_timeWithSeconds_when_nextDeliveryAt_then_parseIt() throws Exception {
+        // when
+        Date next = SubscriptionDao.nextDeliveryAt("08:30:00", "Europe/Madrid", utc("2016-05-21 05:00:00.000"));
+
+        // then
+        assertEquals(utc("2016-05-21 06:30:00.000"), next);
     }
 
     @Test
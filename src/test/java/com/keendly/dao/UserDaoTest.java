@@ -120,6 +120,44 @@ public class UserDaoTest {
         assertTrue(user.isPresent());
     }
 
+    @Test
+    public void given_userExists_when_findAccount_then_returnUserWithoutPushSubscriptions(){
+        // given
+        execute(
+            sequenceOf(
+                deleteAllFrom("pushsubscription", "keendlyuser"),
+                insertInto("keendlyuser")
+                    .columns("id", "provider", "provider_id", "access_token")
+                    .values(1L, "INOREADER", "123", "token")
+                    .build(),
+                insertInto("pushsubscription")
+                    .columns("id", "user_id", "endpoint", "key", "auth", "deleted")
+                    .values(2L, 1L, "endpoint", "key", "auth", false)
+                    .build()
+            )
+        );
+
+        // when
+        User user = userDao.findAccount(1L);
+
+        // then
+        assertEquals(Provider.INOREADER, user.getProvider());
+        assertEquals("token", user.getAccessToken());
+        assertNull(user.getPushSubscriptions());
+    }
+
+    @Test
+    public void given_userDoesntExist_when_findAccount_then_returnNull(){
+        // given
+        execute(deleteAllFrom("pushsubscription", "keendlyuser"));
+
+        // when
+        User user = userDao.findAccount(1L);
+
+        // then
+        assertNull(user);
+    }
+
     @Test
     public void given_userDoesntExist_when_findByProviderIdr_then_return_empty(){
         // given
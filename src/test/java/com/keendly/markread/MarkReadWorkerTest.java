@@ -0,0 +1,175 @@
+package com.keendly.markread;
+
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import com.keendly.adaptor.Adaptor;
+import com.keendly.dao.MarkReadJobDao;
+import com.keendly.dao.MarkReadJobDao.Job;
+import com.keendly.dao.UserDao;
+import com.keendly.model.Provider;
+import com.keendly.model.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+public class MarkReadWorkerTest {
+
+    private static final long DELIVERED = 1523601522251L;
+
+    private MarkReadJobDao markReadJobDao = mock(MarkReadJobDao.class);
+    private UserDao userDao = mock(UserDao.class);
+    private Adaptor adaptor = mock(Adaptor.class);
+    private Function<User, Adaptor> adaptors = mock(Function.class);
+
+    private MarkReadWorker worker = new MarkReadWorker(markReadJobDao, userDao, adaptors);
+
+    @Before
+    public void setUp() {
+        when(userDao.findById(anyLong()))
+            .thenAnswer(i -> User.builder().id((Long) i.getArguments()[0]).provider(Provider.INOREADER).build());
+        when(adaptors.apply(any())).thenReturn(adaptor);
+        when(adaptor.markFeedRead(anyListOf(String.class), anyLong())).thenReturn(Boolean.TRUE);
+    }
+
+    private static Job job(long id, long userId, long markBefore, int attempts, String... feedIds) {
+        return Job.builder()
+            .id(id)
+            .deliveryId(id * 10)
+            .userId(userId)
+            .markBefore(new Date(markBefore))
+            .attempts(attempts)
+            .feedIds(asList(feedIds))
+            .build();
+    }
+
+    private void givenJobs(Job... jobs) {
+        when(markReadJobDao.claim(anyInt(), any(Date.class)))
+            .thenReturn(asList(jobs))
+            .thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void given_jobsOfDeliveriesFinishedTogether_when_drain_then_markWithOneCall() {
+        // given
+        givenJobs(job(1, 1, DELIVERED, 1, "feed/1", "feed/2"), job(2, 1, DELIVERED, 1, "feed/2", "feed/3"));
+
+        // when
+        int processed = worker.drain(Long.MAX_VALUE);
+
+        // then
+        assertEquals(2, processed);
+        verify(adaptors, times(1)).apply(any());
+        verify(adaptor).markFeedRead(asList("feed/1", "feed/2", "feed/3"), DELIVERED);
+        verify(markReadJobDao).delete(asList(1L, 2L));
+    }
+
+    @Test
+    public void given_jobsOfManyUsers_when_drain_then_adaptorPerUser() {
+        // given
+        givenJobs(job(1, 1, DELIVERED, 1, "feed/1"), job(2, 2, DELIVERED, 1, "feed/1"),
+            job(3, 1, DELIVERED + 1000, 1, "feed/2"));
+
+        // when
+        worker.drain(Long.MAX_VALUE);
+
+        // then
+        verify(adaptors, times(2)).apply(any());
+        verify(adaptor, times(2)).markFeedRead(asList("feed/1"), DELIVERED);
+        verify(adaptor).markFeedRead(asList("feed/2"), DELIVERED + 1000);
+        verify(markReadJobDao).delete(asList(1L));
+        verify(markReadJobDao).delete(asList(2L));
+        verify(markReadJobDao).delete(asList(3L));
+    }
+
+    @Test
+    public void given_markFails_when_drain_then_retryLater() {
+        // given
+        givenJobs(job(1, 1, DELIVERED, 2, "feed/1"));
+        when(adaptor.markFeedRead(anyListOf(String.class), anyLong())).thenThrow(new RuntimeException("timeout"));
+
+        // when
+        long before = System.currentTimeMillis();
+        worker.drain(Long.MAX_VALUE);
+
+        // then
+        verify(markReadJobDao, never()).delete(any());
+        ArgumentCaptor<Date> nextAttempt = ArgumentCaptor.forClass(Date.class);
+        verify(markReadJobDao).retryAt(eq(1L), nextAttempt.capture(), contains("timeout"));
+        assertTrue(nextAttempt.getValue().getTime() >= before + MarkReadWorker.retryDelay(2));
+    }
+
+    @Test
+    public void given_notAllMarked_when_drain_then_retryLater() {
+        // given
+        givenJobs(job(1, 1, DELIVERED, 1, "feed/1", "feed/2"));
+        when(adaptor.markFeedRead(anyListOf(String.class), anyLong())).thenReturn(Boolean.FALSE);
+        when(adaptor.getNotMarkedFeeds()).thenReturn(asList("feed/2"));
+
+        // when
+        worker.drain(Long.MAX_VALUE);
+
+        // then
+        verify(markReadJobDao).retryAt(eq(1L), any(Date.class), contains("feed/2"));
+    }
+
+    @Test
+    public void given_lastAttemptFails_when_drain_then_giveUp() {
+        // given
+        givenJobs(job(1, 1, DELIVERED, MarkReadWorker.MAX_ATTEMPTS, "feed/1"));
+        when(adaptor.markFeedRead(anyListOf(String.class), anyLong())).thenThrow(new RuntimeException("error"));
+
+        // when
+        worker.drain(Long.MAX_VALUE);
+
+        // then
+        verify(markReadJobDao).giveUp(eq(1L), contains("error"));
+        verify(markReadJobDao, never()).retryAt(anyLong(), any(Date.class), anyString());
+    }
+
+    @Test
+    public void given_fullBatch_when_drain_then_claimNextBatch() {
+        // given
+        List<Job> batch = new ArrayList<>();
+        for (int i = 0; i < MarkReadWorker.BATCH_SIZE; i++) {
+            batch.add(job(i, 1, DELIVERED, 1, "feed/" + i));
+        }
+        when(markReadJobDao.claim(anyInt(), any(Date.class)))
+            .thenReturn(batch)
+            .thenReturn(asList(job(100, 1, DELIVERED, 1, "feed/100")))
+            .thenReturn(Collections.emptyList());
+
+        // when
+        int processed = worker.drain(Long.MAX_VALUE);
+
+        // then
+        assertEquals(MarkReadWorker.BATCH_SIZE + 1, processed);
+        verify(markReadJobDao, times(2)).claim(anyInt(), any(Date.class));
+    }
+
+    @Test
+    public void given_deadlinePassed_when_drain_then_nothingClaimed() {
+        // when
+        int processed = worker.drain(System.currentTimeMillis() - 1);
+
+        // then
+        assertEquals(0, processed);
+        verify(markReadJobDao, never()).claim(anyInt(), any(Date.class));
+    }
+
+    @Test
+    public void given_attempts_when_retryDelay_then_growsUpToHour() {
+        assertEquals(60_000, MarkReadWorker.retryDelay(1));
+        assertEquals(120_000, MarkReadWorker.retryDelay(2));
+        assertEquals(3_600_000, MarkReadWorker.retryDelay(10));
+        assertEquals(3_600_000, MarkReadWorker.retryDelay(100));
+    }
+}
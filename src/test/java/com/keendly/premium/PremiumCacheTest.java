@@ -0,0 +1,188 @@
+package com.keendly.premium;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import com.keendly.dao.UserDao;
+import com.keendly.model.Premium;
+import com.keendly.model.User;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class PremiumCacheTest {
+
+    private static final long FRESH = TimeUnit.MINUTES.toMillis(60);
+    private static final long STALE = TimeUnit.HOURS.toMillis(24);
+
+    private UserDao userDao = mock(UserDao.class);
+    private List<String> fetched = new ArrayList<>();
+    private List<Runnable> refreshes = new ArrayList<>();
+
+    private Premium stripeStatus = Premium.builder().active(true).cancellable(true).build();
+    private Function<String, Premium> fetch = subscriptionId -> {
+        fetched.add(subscriptionId);
+        return stripeStatus;
+    };
+
+    private PremiumCache cache = new PremiumCache(fetch, userDao, FRESH, STALE, refreshes::add);
+
+    @Test
+    public void given_notChecked_when_get_then_fetchAndStore() {
+        // given
+        User user = user(null, null);
+
+        // when
+        Premium premium = cache.get(user);
+
+        // then
+        assertTrue(premium.isActive());
+        assertEquals(1, fetched.size());
+        verify(userDao).setPremiumStatus(eq(1L), eq(stripeStatus), any(Date.class));
+    }
+
+    @Test
+    public void given_freshStatusStored_when_get_then_dontFetch() {
+        // given
+        User user = user(Premium.builder().active(true).build(), minutesAgo(5));
+
+        // when
+        Premium premium = cache.get(user);
+
+        // then
+        assertTrue(premium.isActive());
+        assertTrue(fetched.isEmpty());
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    public void given_staleStatusStored_when_get_then_returnItAndRefreshInBackground() {
+        // given
+        stripeStatus = Premium.builder().active(false).build();
+        User user = user(Premium.builder().active(true).build(), minutesAgo(120));
+
+        // when
+        Premium premium = cache.get(user);
+        Premium again = cache.get(user);
+
+        // then
+        assertTrue(premium.isActive());
+        assertTrue(again.isActive());
+        assertTrue(fetched.isEmpty());
+        assertEquals(1, refreshes.size());
+
+        refreshes.get(0).run();
+        assertEquals(1, fetched.size());
+        assertFalse(cache.get(user).isActive());
+    }
+
+    @Test
+    public void given_statusTooOld_when_get_then_fetch() {
+        // given
+        stripeStatus = Premium.builder().active(false).build();
+        User user = user(Premium.builder().active(true).build(), minutesAgo(25 * 60));
+
+        // when
+        Premium premium = cache.get(user);
+
+        // then
+        assertFalse(premium.isActive());
+        assertEquals(1, fetched.size());
+    }
+
+    @Test
+    public void given_premiumExpired_when_get_then_fetch() {
+        // given
+        stripeStatus = Premium.builder().active(false).build();
+        User user = user(Premium.builder().active(true).expires(minutesAgo(1)).build(), minutesAgo(5));
+
+        // when
+        Premium premium = cache.get(user);
+
+        // then
+        assertFalse(premium.isActive());
+        assertEquals(1, fetched.size());
+    }
+
+    @Test
+    public void given_fetchFails_when_refreshInBackground_then_keepLastKnownStatus() {
+        // given
+        PremiumCache failing = new PremiumCache(subscriptionId -> {
+            throw new RuntimeException("stripe down");
+        }, userDao, FRESH, STALE, refreshes::add);
+        User user = user(Premium.builder().active(true).build(), minutesAgo(2 * 60));
+
+        // when
+        Premium premium = failing.get(user);
+        refreshes.forEach(Runnable::run);
+
+        // then
+        assertTrue(premium.isActive());
+        assertTrue(failing.get(user).isActive());
+        verify(userDao, never()).setPremiumStatus(anyLong(), any(Premium.class), any(Date.class));
+    }
+
+    @Test
+    public void given_statusTooOldAndFetchFails_when_get_then_returnInactive() {
+        // given
+        PremiumCache failing = new PremiumCache(subscriptionId -> {
+            throw new RuntimeException("stripe down");
+        }, userDao, FRESH, STALE, refreshes::add);
+        User user = user(Premium.builder().active(true).build(), minutesAgo(25 * 60));
+
+        // when
+        Premium premium = failing.get(user);
+
+        // then
+        assertFalse(premium.isActive());
+        verify(userDao, never()).setPremiumStatus(anyLong(), any(Premium.class), any(Date.class));
+    }
+
+    @Test
+    public void given_premiumExpiredAndFetchFails_when_get_then_returnInactive() {
+        // given
+        PremiumCache failing = new PremiumCache(subscriptionId -> {
+            throw new RuntimeException("stripe down");
+        }, userDao, FRESH, STALE, refreshes::add);
+        User user = user(Premium.builder().active(true).expires(minutesAgo(1)).build(), minutesAgo(5));
+
+        // when
+        Premium premium = failing.get(user);
+
+        // then
+        assertFalse(premium.isActive());
+    }
+
+    @Test
+    public void given_invalidated_when_get_then_fetch() {
+        // given
+        cache.get(user(null, null));
+        User user = user(null, null);
+
+        // when
+        cache.invalidate(user);
+        cache.get(user);
+
+        // then
+        verify(userDao).clearPremiumStatus(1L);
+        assertEquals(2, fetched.size());
+    }
+
+    private static User user(Premium cachedPremium, Date checkedAt) {
+        return User.builder()
+            .id(1L)
+            .premiumSubscriptionId("sub_1")
+            .cachedPremium(cachedPremium)
+            .premiumCheckedAt(checkedAt)
+            .build();
+    }
+
+    private static Date minutesAgo(int minutes) {
+        return new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutes));
+    }
+}
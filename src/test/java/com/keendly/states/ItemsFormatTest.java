@@ -0,0 +1,97 @@
+package com.keendly.states;
+
+import static org.junit.Assert.*;
+
+import com.keendly.model.DeliveryArticle;
+import com.keendly.model.DeliveryItem;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ItemsFormatTest {
+
+    private static final List<DeliveryItem> ITEMS = Arrays.asList(
+        DeliveryItem.builder()
+            .id(1L)
+            .feedId("feed/http://example.com/feed")
+            .title("Example ąęś")
+            .includeImages(true)
+            .fullArticle(false)
+            .markAsRead(true)
+            .articles(Arrays.asList(
+                DeliveryArticle.builder()
+                    .id("article/1")
+                    .url("http://example.com/1")
+                    .title("First")
+                    .timestamp(1500000000000L)
+                    .author("Author")
+                    .content("<p>" + String.join("", Collections.nCopies(10000, "content ")) + "</p>")
+                    .build(),
+                DeliveryArticle.builder()
+                    .id("article/2")
+                    .url("http://example.com/2")
+                    .title("Second, no author")
+                    .timestamp(1500000001000L)
+                    .build()))
+            .build(),
+        DeliveryItem.builder()
+            .id(2L)
+            .feedId("feed/http://example.com/other")
+            .articles(Collections.singletonList(DeliveryArticle.builder().id("article/3").build()))
+            .build());
+
+    @Test
+    public void given_items_when_encodeAndDecode_then_sameItemsInEveryFormat() throws IOException {
+        for (ItemsFormat format : ItemsFormat.values()) {
+            // given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            // when
+            format.encode(ITEMS, out);
+            List<DeliveryItem> decoded = format.decode(new ByteArrayInputStream(out.toByteArray()));
+
+            // then
+            assertEquals(format.name(), ITEMS, decoded);
+        }
+    }
+
+    @Test
+    public void given_gzip_when_encode_then_smallerThanJson() throws IOException {
+        // given
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        ByteArrayOutputStream jsonGzip = new ByteArrayOutputStream();
+
+        // when
+        ItemsFormat.JSON.encode(ITEMS, json);
+        ItemsFormat.JSON_GZIP.encode(ITEMS, jsonGzip);
+
+        // then
+        assertTrue(jsonGzip.size() < json.size());
+    }
+
+    @Test
+    public void given_noMarker_when_fromMarker_then_json() {
+        // when
+        ItemsFormat format = ItemsFormat.fromMarker(null);
+
+        // then
+        assertEquals(ItemsFormat.JSON, format);
+    }
+
+    @Test
+    public void given_marker_when_fromMarker_then_itsFormat() {
+        for (ItemsFormat format : ItemsFormat.values()) {
+            assertEquals(format, ItemsFormat.fromMarker(format.getMarker()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void given_unknownMarker_when_fromMarker_then_throwException() {
+        ItemsFormat.fromMarker("zstd");
+    }
+}
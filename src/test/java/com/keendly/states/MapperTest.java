@@ -0,0 +1,78 @@
+package com.keendly.states;
+
+import static org.junit.Assert.*;
+
+import com.keendly.adaptor.model.FeedEntry;
+import com.keendly.model.Delivery;
+import com.keendly.model.DeliveryItem;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MapperTest {
+
+    @Test
+    public void given_entries_when_toDeliveryItems_then_mapArticles() {
+        // given
+        Delivery delivery = delivery("feed/1");
+        FeedEntry entry = entry("article/1", new Date(1500000000000L));
+
+        // when
+        List<DeliveryItem> items = Mapper.toDeliveryItems(delivery,
+            Collections.singletonMap("feed/1", Collections.singletonList(entry)));
+
+        // then
+        assertEquals(1, items.size());
+        assertEquals("article/1", items.get(0).getArticles().get(0).getId());
+        assertEquals(Long.valueOf(1500000000000L), items.get(0).getArticles().get(0).getTimestamp());
+    }
+
+    @Test
+    public void given_entryWithoutDate_when_toDeliveryItems_then_noTimestamp() {
+        // given
+        Delivery delivery = delivery("feed/1");
+        FeedEntry entry = entry("article/1", null);
+
+        // when
+        List<DeliveryItem> items = Mapper.toDeliveryItems(delivery,
+            Collections.singletonMap("feed/1", Collections.singletonList(entry)));
+
+        // then
+        assertEquals(1, items.get(0).getArticles().size());
+        assertNull(items.get(0).getArticles().get(0).getTimestamp());
+    }
+
+    @Test
+    public void given_noEntries_when_toDeliveryItems_then_skipFeed() {
+        // given
+        Delivery delivery = delivery("feed/1", "feed/2");
+
+        // when
+        List<DeliveryItem> items = Mapper.toDeliveryItems(delivery,
+            Collections.singletonMap("feed/2", Collections.singletonList(entry("article/1", new Date()))));
+
+        // then
+        assertEquals(1, items.size());
+        assertEquals("feed/2", items.get(0).getFeedId());
+    }
+
+    private static Delivery delivery(String... feedIds) {
+        return Delivery.builder()
+            .items(Arrays.stream(feedIds)
+                .map(feedId -> DeliveryItem.builder().feedId(feedId).title(feedId).build())
+                .collect(Collectors.toList()))
+            .build();
+    }
+
+    private static FeedEntry entry(String id, Date published) {
+        FeedEntry entry = new FeedEntry();
+        entry.setId(id);
+        entry.setUrl("http://example.com/" + id);
+        entry.setPublished(published);
+        return entry;
+    }
+}
@@ -0,0 +1,149 @@
+package com.keendly.states;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class S3UploadTest {
+
+    private static final int PORT = 8089;
+    private static final String BUCKET = "keendly";
+    private static final String KEY = "messages/items.json";
+    private static final String PATH = "/" + BUCKET + "/" + KEY;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+    private AmazonS3 s3 = AmazonS3ClientBuilder.standard()
+        .withEndpointConfiguration(new EndpointConfiguration("http://localhost:" + PORT, "eu-west-1"))
+        .withPathStyleAccessEnabled(true)
+        .withCredentials(new AWSStaticCredentialsProvider(new AnonymousAWSCredentials()))
+        .build();
+
+    @BeforeClass
+    public static void disableChecksums() {
+        // the stand-in doesn't compute ETags
+        System.setProperty("com.amazonaws.services.s3.disablePutObjectMD5Validation", "true");
+    }
+
+    @Test
+    public void given_smallObject_when_upload_then_putWithKnownLength() {
+        // given
+        givenThat(put(urlEqualTo(PATH))
+            .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"etag\"")));
+        String json = "[{\"feedId\":\"feed/1\"}]";
+
+        // when
+        S3Upload.upload(s3, BUCKET, KEY, "application/json", null, out -> out.write(json.getBytes()));
+
+        // then
+        verify(putRequestedFor(urlEqualTo(PATH))
+            .withHeader("Content-Length", equalTo(Integer.toString(json.length())))
+            .withHeader("Content-Type", equalTo("application/json"))
+            .withRequestBody(equalTo(json)));
+        verify(0, postRequestedFor(urlPathEqualTo(PATH)));
+    }
+
+    @Test
+    public void given_contentEncoding_when_upload_then_putWithIt() {
+        // given
+        givenThat(put(urlEqualTo(PATH))
+            .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"etag\"")));
+        String json = "[{\"feedId\":\"feed/1\"}]";
+
+        // when
+        S3Upload.upload(s3, BUCKET, KEY, "application/json", "gzip", out -> {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(json.getBytes());
+            gzip.finish();
+        });
+
+        // then
+        LoggedRequest request = findAll(putRequestedFor(urlEqualTo(PATH))).get(0);
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        // the stand-in inflates gzip encoded bodies
+        assertEquals(json, request.getBodyAsString());
+    }
+
+    @Test
+    public void given_objectBiggerThanPart_when_upload_then_uploadParts() throws Exception {
+        // given
+        stubMultipartUpload();
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(Math.random()).append("\"}");
+        }
+        String content = json.append("]").toString();
+
+        // when
+        S3Upload.upload(s3, BUCKET, KEY, "application/json", null,
+            out -> out.write(content.getBytes(StandardCharsets.UTF_8)), 4096);
+
+        // then
+        verify(postRequestedFor(urlEqualTo(PATH + "?uploads")));
+        verify(postRequestedFor(urlEqualTo(PATH + "?uploadId=upload1")));
+
+        List<LoggedRequest> parts = findAll(putRequestedFor(urlPathEqualTo(PATH)));
+        assertTrue(parts.size() > 1);
+        parts.sort(Comparator.comparing(part -> Integer.valueOf(part.queryParameter("partNumber").firstValue())));
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        for (LoggedRequest part : parts) {
+            uploaded.write(part.getBody());
+        }
+        assertEquals(content, new String(uploaded.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void given_writeFails_when_upload_then_abort() {
+        // given
+        stubMultipartUpload();
+
+        // when
+        try {
+            S3Upload.upload(s3, BUCKET, KEY, "application/json", null, out -> {
+                out.write(new byte[10000]);
+                throw new IOException("serialization failed");
+            }, 4096);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // then
+        verify(deleteRequestedFor(urlEqualTo(PATH + "?uploadId=upload1")));
+        verify(0, postRequestedFor(urlEqualTo(PATH + "?uploadId=upload1")));
+    }
+
+    private static void stubMultipartUpload() {
+        givenThat(post(urlEqualTo(PATH + "?uploads"))
+            .willReturn(aResponse().withStatus(200).withBody(
+                "<InitiateMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + KEY + "</Key>"
+                    + "<UploadId>upload1</UploadId></InitiateMultipartUploadResult>")));
+        givenThat(put(urlPathEqualTo(PATH))
+            .withQueryParam("uploadId", equalTo("upload1"))
+            .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"part\"")));
+        givenThat(post(urlEqualTo(PATH + "?uploadId=upload1"))
+            .willReturn(aResponse().withStatus(200).withBody(
+                "<CompleteMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + KEY + "</Key>"
+                    + "<ETag>\"etag\"</ETag></CompleteMultipartUploadResult>")));
+        givenThat(delete(urlEqualTo(PATH + "?uploadId=upload1"))
+            .willReturn(aResponse().withStatus(204)));
+    }
+}
@@ -0,0 +1,35 @@
+package com.keendly.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DbUtilsTest {
+
+    @Test
+    public void given_environment_when_poolName_then_userAndDatabase() {
+        // given
+        DbUtils.Environment environment = DbUtils.Environment.builder()
+            .url("jdbc:postgresql://db.example.com:5432/keendly?password=secret&ssl=true")
+            .user("api")
+            .password("secret")
+            .build();
+
+        // when
+        String poolName = DbUtils.poolName(environment);
+
+        // then
+        assertEquals("keendly-db:api@db.example.com:5432/keendly", poolName);
+    }
+
+    @Test
+    public void given_otherUser_when_poolName_then_otherPool() {
+        // given
+        DbUtils.Environment api = DbUtils.Environment.builder().url("jdbc:postgresql://db/keendly").user("api").build();
+        DbUtils.Environment worker =
+            DbUtils.Environment.builder().url("jdbc:postgresql://db/keendly").user("worker").build();
+
+        // then
+        assertNotEquals(DbUtils.poolName(api), DbUtils.poolName(worker));
+    }
+}
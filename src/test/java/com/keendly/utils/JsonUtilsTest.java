@@ -0,0 +1,50 @@
+package com.keendly.utils;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableSet;
+import com.keendly.utils.JsonUtils.StreamPage;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class JsonUtilsTest {
+
+    @Test
+    public void given_streamPage_when_asStreamPage_then_mapItemsAndReadContinuation() {
+        // given
+        String json = "{\"id\":\"feed/1\",\"updated\":{\"nested\":[1,2]},"
+            + "\"items\":[{\"id\":\"1\",\"title\":\"first\",\"content\":{\"content\":\"skipped\"}},"
+            + "{\"id\":\"2\",\"title\":\"second\"},{\"id\":\"3\"}],"
+            + "\"continuation\":\"next\"}";
+
+        // when
+        StreamPage<String> page = JsonUtils.asStreamPage(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "items", ImmutableSet.of("id", "title"),
+            item -> {
+                assertFalse(item.has("content"));
+                return item.has("title") ? item.get("id").asText() + ":" + item.get("title").asText() : null;
+            });
+
+        // then
+        assertEquals(Arrays.asList("1:first", "2:second"), page.getItems());
+        assertEquals("next", page.getContinuation());
+    }
+
+    @Test
+    public void given_noItems_when_asStreamPage_then_returnEmptyPage() {
+        // given
+        String json = "{\"id\":\"feed/1\"}";
+
+        // when
+        StreamPage<String> page = JsonUtils.asStreamPage(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "items", ImmutableSet.of("id"),
+            item -> item.get("id").asText());
+
+        // then
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getContinuation());
+    }
+}